@@ -44,12 +44,17 @@ public class PermissionManager {
         add("GET", "^/api/products/all$", "product.read");
         add("GET", "^/api/products/get/.*", "product.read");
         add("GET", "^/api/products/all/active$", "product.read");
+        add("GET", "^/api/products/all/stream$", "product.read");
+        add("GET", "^/api/products/all/active/stream$", "product.read");
         add("POST", "^/api/products/add$", "product.create");
         add("PUT", "^/api/products/update$", "product.update");
         add("DELETE", "^/api/products/delete/.*", "product.delete");
         add("GET", "^/api/products/price-history/.*", "product.read");
         add("GET", "^/api/products/cache/product/ean/.*", "product.read");
         add("GET", "^/api/products/best-selling$", "product.read");
+        add("GET", "^/api/products/top-sellers$", "product.read");
+        add("GET", "^/api/products/search$", "product.read");
+        add("GET", "^/api/changes/stream$", "product.read");
 
         // Coupon Controller
         add("POST", "^/api/coupon/add$", "coupons.create");
@@ -69,6 +74,8 @@ public class PermissionManager {
         add("GET", "^/api/stock/all$", "product.read");
         add("POST", "^/api/stock/add$", "product.update");
         add("PUT", "^/api/stock/update$", "product.update");
+        add("PUT", "^/api/stock/[^/]+/decrease$", "kasse");
+        add("PUT", "^/api/stock/[^/]+/(increase|quantity)$", "product.update");
         add("DELETE", "^/api/stock/delete/.*", "product.delete");
 
         // Urlaubsantrag Controller
@@ -82,12 +89,24 @@ public class PermissionManager {
 
         // Order Controller
         add("GET", "^/api/order/between$", "finances");
+        add("GET", "^/api/order/report/(daily|hourly|employees)$", "finances");
+        add("GET", "^/api/order/export$", "finances");
 
         // Kasse Controller
         add("POST", "^/api/kassa/checkout$", "kasse");
+        add("POST", "^/api/kassa/checkout/batch$", "kasse");
+        add("GET", "^/api/kassa/bootstrap$", "kasse");
 
         // Checkout Controller
         add("POST", "^/api/checkout/create-checkout-session$", "kasse");
+        add("POST", "^/api/checkout/complete/[^/]+$", "kasse");
+
+        // Stripe Webhook Controller - stripe authenticates with the signature of the event
+        add("POST", "^/api/stripe/webhook$", "*");
+
+        // Actuator
+        add("GET", "^/actuator/health$", "*");
+        add("GET", "^/actuator/metrics(/.*)?$", "admin");
     }
 
     private void add(String method, String pathPattern, String permission) {
@@ -0,0 +1,57 @@
+package ip.project.backend.backend.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import ip.project.backend.backend.service.ChangeFeedService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/changes")
+public class ChangeFeedController {
+
+    private final Logger logger = LoggerFactory.getLogger(ChangeFeedController.class);
+    private final ChangeFeedService changeFeedService;
+
+    @Autowired
+    public ChangeFeedController(ChangeFeedService changeFeedService) {
+        this.changeFeedService = changeFeedService;
+    }
+
+    /**
+     * server-sent events with every product, price and stock change, so terminals do not have to poll
+     *
+     * @param lastEventId id of the last event the terminal received, sent by the browser on a reconnect
+     * @return returns the event stream
+     */
+    @Operation(summary = "Stream product and stock changes", description = "Server-sent events with the events product.added, product.updated, product.deleted and stock.updated. The data is a ChangeEventDto. On a reconnect the missed events are sent again; if they are no longer available a resync event tells the terminal to reload the products and stock.")
+    @ApiResponse(responseCode = "200", description = "Event stream opened.")
+    @ApiResponse(responseCode = "503", description = "Too many terminals are connected. Retry later.")
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamChanges(@Parameter(description = "Id of the last received event") @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        Optional<SseEmitter> emitter = changeFeedService.subscribe(lastEventId);
+        if (emitter.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .build();
+        }
+        logger.info("Terminal subscribed to change feed, {} connected", changeFeedService.getSubscriberCount());
+        // proxies like nginx must not buffer the stream
+        return ResponseEntity.ok()
+                .header("X-Accel-Buffering", "no")
+                .body(emitter.get());
+    }
+}
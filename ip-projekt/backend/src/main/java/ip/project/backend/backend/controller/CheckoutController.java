@@ -6,7 +6,10 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import ip.project.backend.backend.modeldto.CheckoutDto;
 import ip.project.backend.backend.service.CheckoutService;
+import ip.project.backend.backend.util.InsufficientStockException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -19,6 +22,8 @@ public class CheckoutController {
 
     private final CheckoutService checkoutService;
 
+    private static final int RETRY_AFTER_SECONDS = 30;
+
     @Autowired
     public CheckoutController(CheckoutService checkoutService) {
         this.checkoutService = checkoutService;
@@ -27,15 +32,51 @@ public class CheckoutController {
     @Operation(summary = "Create Checkout Session", description = "Creates a new checkout session with the provided products")
     @ApiResponse(responseCode = "200", description = "Checkout session created successfully, returns session ID")
     @ApiResponse(responseCode = "400", description = "Error creating checkout session")
+    @ApiResponse(responseCode = "409", description = "Not enough stock available for at least one product")
+    @ApiResponse(responseCode = "503", description = "Stripe is currently not reachable, card payment is unavailable")
     @PostMapping("/create-checkout-session")
     public ResponseEntity<String> createCheckoutSession(
             @Parameter(description = "List of products with quantities to checkout", required = true)
             @RequestBody CheckoutDto products) {
-        Optional<String> sessionId = checkoutService.createCheckout(products);
+        // fail fast instead of waiting for stripe, the register can still take cash
+        if (!checkoutService.isCardPaymentAvailable()) {
+            return cardPaymentUnavailable();
+        }
+        Optional<String> sessionId;
+        try {
+            sessionId = checkoutService.createCheckout(products);
+        } catch (InsufficientStockException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
         if (sessionId.isPresent()) {
             return ResponseEntity.ok(sessionId.get());
+        } else if (!checkoutService.isCardPaymentAvailable()) {
+            return cardPaymentUnavailable();
         } else {
             return ResponseEntity.status(400).body("Error creating checkout session");
         }
     }
+
+    @Operation(summary = "Complete Checkout Session", description = "Called when the customer returns from the payment. If Stripe reports the session as paid, the reserved products are taken from stock. Repeated calls do not change the stock again.")
+    @ApiResponse(responseCode = "200", description = "Session is paid and the stock was taken")
+    @ApiResponse(responseCode = "409", description = "Session is not paid")
+    @ApiResponse(responseCode = "503", description = "Stripe is currently not reachable")
+    @PostMapping("/complete/{sessionId}")
+    public ResponseEntity<String> completeCheckoutSession(
+            @Parameter(description = "Id of the Stripe checkout session", required = true)
+            @PathVariable("sessionId") String sessionId) {
+        Optional<Boolean> paid = checkoutService.completeCheckout(sessionId);
+        if (paid.isEmpty()) {
+            return cardPaymentUnavailable();
+        }
+        return paid.get()
+                ? ResponseEntity.ok("Checkout completed")
+                : ResponseEntity.status(HttpStatus.CONFLICT).body("Checkout is not paid");
+    }
+
+    private ResponseEntity<String> cardPaymentUnavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS))
+                .body("Card payment is currently unavailable");
+    }
 }
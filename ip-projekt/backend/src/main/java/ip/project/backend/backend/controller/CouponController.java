@@ -18,6 +18,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import ip.project.backend.backend.modeldto.CouponDto;
 import ip.project.backend.backend.modeldto.NewCouponDto;
 import ip.project.backend.backend.service.CouponService;
+import ip.project.backend.backend.util.StripeGateway;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 
@@ -54,7 +55,11 @@ public class CouponController {
         List<CouponDto> allCoupons = this.couponService.getAllCoupons();
 
         if (!allCoupons.isEmpty()) {
-            return ResponseEntity.ok(allCoupons); // Return the first coupon for simplicity
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (this.couponService.isServingStaleData()) {
+                response.header(StripeGateway.STALE_DATA_HEADER, "true");
+            }
+            return response.body(allCoupons);
         }
         return ResponseEntity.noContent().build();
     }
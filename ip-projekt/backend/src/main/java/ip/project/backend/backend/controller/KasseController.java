@@ -7,11 +7,21 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import ip.project.backend.backend.mapper.OrderMapper;
+import ip.project.backend.backend.model.Employee;
+import ip.project.backend.backend.model.OrderLineItem;
 import ip.project.backend.backend.modeldto.OrderDto;
+import ip.project.backend.backend.modeldto.PosBootstrapDto;
+import ip.project.backend.backend.modeldto.SyncOrderResultDto;
+import ip.project.backend.backend.modeldto.SyncOrdersDto;
 import ip.project.backend.backend.service.OrderService;
+import ip.project.backend.backend.service.PosBootstrapService;
+import ip.project.backend.backend.service.TopSellerService;
+import ip.project.backend.backend.util.StripeGateway;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.validator.constraints.Length;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,22 +40,57 @@ public class KasseController {
     private static final Logger logger = LoggerFactory.getLogger(KasseController.class);
 
     private static final String SUCCESS = "success";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
 
     private final OrderService orderService;
+    private final PosBootstrapService posBootstrapService;
+    private final TopSellerService topSellerService;
 
     @Autowired
-    public KasseController(OrderService orderService) {
+    public KasseController(OrderService orderService, PosBootstrapService posBootstrapService, TopSellerService topSellerService) {
         this.orderService = orderService;
+        this.posBootstrapService = posBootstrapService;
+        this.topSellerService = topSellerService;
+    }
+
+    @Operation(
+            summary = "Startdaten der Kasse laden",
+            description = "Liefert aktive Produkte mit Lagerbestand (nach ProductID verknüpft), Coupons und die Zugriffsrechte des angemeldeten Mitarbeiters in einer Antwort. Ersetzt die einzelnen Aufrufe beim Start der Kasse."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Startdaten geladen",
+                    content = @Content(mediaType = "application/json")),
+            @ApiResponse(responseCode = "401", description = "Kein angemeldeter Mitarbeiter")
+    })
+    @GetMapping("/bootstrap")
+    public ResponseEntity<PosBootstrapDto> bootstrap(@Parameter(hidden = true) @RequestAttribute(value = "currentUser", required = false) Employee employee) {
+        // the auth filter already loaded the employee, no second lookup
+        if (employee == null) {
+            return ResponseEntity.status(401).build();
+        }
+
+        PosBootstrapDto bootstrap = posBootstrapService.bootstrap(employee);
+        logger.info("Bootstrap for employee {}: {} products", employee.getEmployeeId(), bootstrap.getProducts().size());
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (bootstrap.isStale()) {
+            response.header(StripeGateway.STALE_DATA_HEADER, "true");
+        }
+        return response.body(bootstrap);
     }
 
     @Operation(
             summary = "Kassiervorgang abschließen",
-            description = "Erstellt eine neue Bestellung mit zufällig generierter Bestell-ID, Produktnamen, Gesamtpreis, Datum und Mitarbeiter-ID."
+            description = "Erstellt eine neue Bestellung mit Produktnamen, Gesamtpreis, Datum und Mitarbeiter-ID. "
+                    + "Die Kasse sendet einen Idempotency-Key, der als Bestell-ID verwendet wird: wird derselbe Vorgang wiederholt, "
+                    + "wird die bereits gespeicherte Bestellung zurückgegeben statt eine zweite anzulegen. Ohne Key wird eine zufällige ID erzeugt."
     )
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Bestellung erfolgreich erstellt",
+            @ApiResponse(responseCode = "200", description = "Bestellung erfolgreich erstellt oder bereits vorhanden (replayed = true)",
                     content = @Content(mediaType = "application/json")),
-            @ApiResponse(responseCode = "400", description = "Ungültige Eingabe oder Bestellung existiert bereits",
+            @ApiResponse(responseCode = "400", description = "Ungültige Eingabe",
+                    content = @Content(mediaType = "application/json")),
+            @ApiResponse(responseCode = "409", description = "Der Idempotency-Key wurde bereits für eine andere Bestellung verwendet",
                     content = @Content(mediaType = "application/json")),
             @ApiResponse(responseCode = "500", description = "Serverfehler beim Verarbeiten der Bestellung",
                     content = @Content(mediaType = "application/json"))
@@ -53,13 +98,16 @@ public class KasseController {
     @PostMapping("/checkout")
     public ResponseEntity<Map<String, Object>> checkout(
             @Parameter(description = "DTO mit Bestelldaten", required = true)
-            @NotNull @Valid @RequestBody OrderDto orderDto) {
+            @NotNull @Valid @RequestBody OrderDto orderDto,
+            @Parameter(description = "Eindeutiger Schlüssel des Kassiervorgangs, bei Wiederholungen gleich")
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) @Length(max = 100) String idempotencyKey) {
 
         logger.info("Checkout request received with {} products", 
                 orderDto.getProductNames() != null ? orderDto.getProductNames().size() : 0);
 
         try {
-            String orderId = UUID.randomUUID().toString();
+            // without key (older terminals) every request is a new order
+            String orderId = idempotencyKey != null && !idempotencyKey.isBlank() ? idempotencyKey : UUID.randomUUID().toString();
             List<String> productNames = orderDto.getProductNames();
             BigDecimal totalPrice = orderDto.getTotalPrice();
             Date date = orderDto.getDate();
@@ -68,19 +116,30 @@ public class KasseController {
             logger.debug("Processing checkout: orderId={}, products={}, totalPrice={}, employeeId={}", 
                     orderId, productNames.size(), totalPrice, employeeId);
 
-            if (orderService.orderExists(orderId)) {
-                logger.warn("Checkout failed: Order with ID {} already exists", orderId);
-                return ResponseEntity.status(400).body(Map.of(
+            // one insert, the unique index on orderId detects a retried checkout
+            List<OrderLineItem> lineItems = OrderMapper.INSTANCE.lineItemDtosToLineItems(orderDto.getLineItems());
+            OrderService.PlacedOrder placed = orderService.placeOrder(orderId, productNames, totalPrice, date, employeeId, lineItems);
+            if (placed.isConflicting()) {
+                logger.warn("Checkout failed: Order ID {} already used for a different order", orderId);
+                return ResponseEntity.status(409).body(Map.of(
                         SUCCESS, false,
                         "error", "An order with this ID already exists"
                 ));
             }
 
-            orderService.createOrder(orderId, productNames, totalPrice, date, employeeId);
-            logger.info("Order created successfully: orderId={}, totalPrice={}, employeeId={}", 
-                    orderId, totalPrice, employeeId);
+            if (placed.isCreated()) {
+                logger.info("Order created successfully: orderId={}, totalPrice={}, employeeId={}", 
+                        orderId, totalPrice, employeeId);
+                topSellerService.recordSale(date, lineItems, productNames);
+            } else {
+                logger.info("Checkout retried, returning existing order: orderId={}", orderId);
+            }
 
-            return ResponseEntity.ok(Map.of(SUCCESS, true));
+            return ResponseEntity.ok(Map.of(
+                    SUCCESS, true,
+                    "orderId", orderId,
+                    "replayed", !placed.isCreated()
+            ));
 
         } catch (Exception e) {
             logger.error("Error processing checkout: {}", e.getMessage(), e);
@@ -90,4 +149,42 @@ public class KasseController {
             ));
         }
     }
+
+    @Operation(
+            summary = "Offline-Verkäufe synchronisieren",
+            description = "Speichert bis zu " + SyncOrdersDto.MAX_ORDERS + " Verkäufe einer Kasse, die offline war, in einer Anfrage. "
+                    + "Jeder Verkauf hat einen Idempotency-Key: bereits gespeicherte Verkäufe werden nicht erneut angelegt. "
+                    + "Liefert pro Verkauf ein Ergebnis (CREATED, REPLAYED, CONFLICT oder FAILED) in derselben Reihenfolge."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Verkäufe verarbeitet, Ergebnis pro Verkauf",
+                    content = @Content(mediaType = "application/json")),
+            @ApiResponse(responseCode = "400", description = "Ungültige Eingabe oder zu viele Verkäufe",
+                    content = @Content(mediaType = "application/json")),
+            @ApiResponse(responseCode = "500", description = "Serverfehler, die Kasse soll die Verkäufe erneut senden",
+                    content = @Content(mediaType = "application/json"))
+    })
+    @PostMapping("/checkout/batch")
+    public ResponseEntity<List<SyncOrderResultDto>> syncOrders(
+            @Parameter(description = "Verkäufe mit Idempotency-Key", required = true)
+            @NotNull @Valid @RequestBody SyncOrdersDto syncOrdersDto) {
+
+        logger.info("Order sync received with {} orders", syncOrdersDto.getOrders().size());
+        try {
+            List<SyncOrderResultDto> results = orderService.syncOrders(syncOrdersDto.getOrders());
+            // results are in the order of the request, only new sales are counted
+            for (int i = 0; i < results.size(); i++) {
+                if (SyncOrderResultDto.CREATED.equals(results.get(i).getStatus())) {
+                    OrderDto order = syncOrdersDto.getOrders().get(i).getOrder();
+                    topSellerService.recordSale(order.getDate(),
+                            OrderMapper.INSTANCE.lineItemDtosToLineItems(order.getLineItems()), order.getProductNames());
+                }
+            }
+            return ResponseEntity.ok(results);
+        } catch (Exception e) {
+            // nothing is lost, every order is sent again with the same key
+            logger.error("Error syncing orders: {}", e.getMessage(), e);
+            return ResponseEntity.status(500).build();
+        }
+    }
 }
@@ -7,18 +7,33 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import ip.project.backend.backend.mapper.OrderMapper;
 import ip.project.backend.backend.model.Order;
+import ip.project.backend.backend.modeldto.SalesReportDto;
 import ip.project.backend.backend.service.OrderService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.ZoneId;
 import java.util.Date;
 import java.util.List;
 
@@ -29,11 +44,19 @@ public class OrderController {
 
     private static final Logger logger = LoggerFactory.getLogger(OrderController.class);
 
+    private static final String DEFAULT_TIMEZONE = "Europe/Berlin";
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
+    private static final String CSV_HEADER = "orderId,date,employeeId,totalPrice,productNames\n";
+
     private final OrderService orderService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, ObjectMapper objectMapper) {
         this.orderService = orderService;
+        this.objectMapper = objectMapper;
     }
 
     @Operation(
@@ -76,4 +99,174 @@ public class OrderController {
             throw e;
         }
     }
+
+    @Operation(
+            summary = "Umsatz pro Tag",
+            description = "Umsatz, Anzahl Bestellungen und durchschnittlicher Warenkorb pro Tag im angegebenen Zeitraum. Wird in der Datenbank berechnet."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Bericht erstellt"),
+            @ApiResponse(responseCode = "400", description = "Ungültige Anfrageparameter", content = @Content)
+    })
+    @GetMapping("/report/daily")
+    public ResponseEntity<List<SalesReportDto>> getDailyReport(
+            @Parameter(description = "Startzeitpunkt im ISO 8601 Format", required = true)
+            @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date start,
+            @Parameter(description = "Endzeitpunkt im ISO 8601 Format", required = true)
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date end,
+            @Parameter(description = "Optionale Mitarbeiter-ID zur Filterung")
+            @RequestParam(value = "employeeId", required = false) Integer employeeId,
+            @Parameter(description = "Zeitzone der Tage, z.B. Europe/Berlin")
+            @RequestParam(value = "timezone", defaultValue = DEFAULT_TIMEZONE) String timezone) {
+        return report(start, end, employeeId, OrderService.ReportGrouping.DAY, timezone);
+    }
+
+    @Operation(
+            summary = "Umsatz pro Stunde",
+            description = "Umsatz, Anzahl Bestellungen und durchschnittlicher Warenkorb pro Tagesstunde (0-23) im angegebenen Zeitraum. Wird in der Datenbank berechnet."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Bericht erstellt"),
+            @ApiResponse(responseCode = "400", description = "Ungültige Anfrageparameter", content = @Content)
+    })
+    @GetMapping("/report/hourly")
+    public ResponseEntity<List<SalesReportDto>> getHourlyReport(
+            @Parameter(description = "Startzeitpunkt im ISO 8601 Format", required = true)
+            @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date start,
+            @Parameter(description = "Endzeitpunkt im ISO 8601 Format", required = true)
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date end,
+            @Parameter(description = "Optionale Mitarbeiter-ID zur Filterung")
+            @RequestParam(value = "employeeId", required = false) Integer employeeId,
+            @Parameter(description = "Zeitzone der Stunden, z.B. Europe/Berlin")
+            @RequestParam(value = "timezone", defaultValue = DEFAULT_TIMEZONE) String timezone) {
+        return report(start, end, employeeId, OrderService.ReportGrouping.HOUR, timezone);
+    }
+
+    @Operation(
+            summary = "Umsatz pro Mitarbeiter",
+            description = "Umsatz, Anzahl Bestellungen und durchschnittlicher Warenkorb pro Mitarbeiter im angegebenen Zeitraum. Wird in der Datenbank berechnet."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Bericht erstellt"),
+            @ApiResponse(responseCode = "400", description = "Ungültige Anfrageparameter", content = @Content)
+    })
+    @GetMapping("/report/employees")
+    public ResponseEntity<List<SalesReportDto>> getEmployeeReport(
+            @Parameter(description = "Startzeitpunkt im ISO 8601 Format", required = true)
+            @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date start,
+            @Parameter(description = "Endzeitpunkt im ISO 8601 Format", required = true)
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date end) {
+        return report(start, end, null, OrderService.ReportGrouping.EMPLOYEE, DEFAULT_TIMEZONE);
+    }
+
+    private ResponseEntity<List<SalesReportDto>> report(Date start, Date end, Integer employeeId, OrderService.ReportGrouping grouping, String timezone) {
+        if (start.after(end)) {
+            logger.warn("Report requested with start {} after end {}", start, end);
+            return ResponseEntity.badRequest().build();
+        }
+        ZoneId zone;
+        try {
+            zone = ZoneId.of(timezone);
+        } catch (DateTimeException e) {
+            logger.warn("Report requested with unknown time zone {}", timezone);
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(orderService.getSalesReport(start, end, employeeId, grouping, zone));
+    }
+
+    @Operation(
+            summary = "Bestellungen exportieren",
+            description = "Streamt alle Bestellungen im angegebenen Zeitraum als CSV oder NDJSON (eine Bestellung pro Zeile), sortiert nach Datum. "
+                    + "Die Bestellungen werden direkt aus der Datenbank geschrieben und nie als Ganzes geladen, auch für ganze Quartale."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Bestellungen werden gestreamt"),
+            @ApiResponse(responseCode = "400", description = "Ungültige Anfrageparameter", content = @Content)
+    })
+    @GetMapping(value = "/export", produces = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<StreamingResponseBody> exportOrders(
+            @Parameter(description = "Startzeitpunkt im ISO 8601 Format", required = true)
+            @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date start,
+            @Parameter(description = "Endzeitpunkt im ISO 8601 Format", required = true)
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date end,
+            @Parameter(description = "Optionale Mitarbeiter-ID zur Filterung")
+            @RequestParam(value = "employeeId", required = false) Integer employeeId,
+            @Parameter(description = "csv oder ndjson")
+            @RequestParam(value = "format", defaultValue = "csv") String format) {
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if ((!csv && !"ndjson".equalsIgnoreCase(format)) || start.after(end)) {
+            logger.warn("Export requested with format {} between {} and {}", format, start, end);
+            return ResponseEntity.badRequest().build();
+        }
+
+        logger.info("Exporting orders between {} and {} as {}", start, end, csv ? "csv" : "ndjson");
+        String filename = "orders-" + start.toInstant() + "-" + end.toInstant() + (csv ? ".csv" : ".ndjson");
+        return ResponseEntity.ok()
+                .contentType(csv ? CSV : NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .body(out -> writeOrders(start, end, employeeId, csv, out));
+    }
+
+    // writes every order as soon as the cursor returns it, flushed in batches
+    void writeOrders(Date start, Date end, Integer employeeId, boolean csv, OutputStream out) throws IOException {
+        BufferedOutputStream buffered = new BufferedOutputStream(out);
+        if (csv) {
+            buffered.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+        }
+        int[] written = {0};
+        try {
+            orderService.streamOrdersInPeriod(start, end, employeeId, order -> {
+                try {
+                    if (csv) {
+                        buffered.write(csvRow(order).getBytes(StandardCharsets.UTF_8));
+                    } else {
+                        buffered.write(objectMapper.writeValueAsBytes(ndjsonRow(order)));
+                        buffered.write('\n');
+                    }
+                    if (++written[0] % 100 == 0) {
+                        buffered.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        buffered.flush();
+        logger.info("Exported {} orders", written[0]);
+    }
+
+    // the public fields of the order plus its orderId, internal fields like the mongo id stay out of the export
+    ObjectNode ndjsonRow(Order order) {
+        ObjectNode row = objectMapper.createObjectNode();
+        row.put("orderId", order.getOrderId());
+        row.setAll((ObjectNode) objectMapper.valueToTree(OrderMapper.INSTANCE.orderToDto(order)));
+        return row;
+    }
+
+    static String csvRow(Order order) {
+        StringBuilder row = new StringBuilder(128);
+        row.append(csvValue(order.getOrderId())).append(',')
+                .append(order.getDate() != null ? order.getDate().toInstant() : "").append(',')
+                .append(order.getEmployeeId() != null ? order.getEmployeeId() : "").append(',')
+                .append(order.getTotalPrice() != null ? order.getTotalPrice().toPlainString() : "").append(',')
+                .append(csvValue(order.getProducts() != null ? String.join("|", order.getProducts()) : null))
+                .append('\n');
+        return row.toString();
+    }
+
+    // quotes values with separators, quotes or line breaks; a leading formula character is escaped for spreadsheets
+    static String csvValue(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        if ("=+-@".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
 }
@@ -1,12 +1,21 @@
 package ip.project.backend.backend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import ip.project.backend.backend.modeldto.PriceHistoryDto;
 import ip.project.backend.backend.modeldto.ProductDto;
 import ip.project.backend.backend.modeldto.RespBestSellingProductDto;
+import ip.project.backend.backend.modeldto.TopSellerDto;
+import ip.project.backend.backend.service.CatalogSnapshot;
 import ip.project.backend.backend.service.ProductService;
+import ip.project.backend.backend.service.TopSellerService;
+import ip.project.backend.backend.util.SerializedSnapshot;
+import ip.project.backend.backend.util.StripeGateway;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -16,53 +25,66 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
-import org.springframework.cache.annotation.*;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 
 @RestController
 @RequestMapping("/api/products")
-@EnableCaching
 public class ProductController {
 
     private final Logger logger = LoggerFactory.getLogger(ProductController.class);
     private final ProductService productService;
+    private final TopSellerService topSellerService;
     private final CacheManager cacheManager;
+    private final ObjectMapper objectMapper;
+
+    // serialized bodies of the last AllProducts snapshot and ActiveProducts list
+    private final AtomicReference<SerializedSnapshot> serializedAllProducts = new AtomicReference<>();
+    private final AtomicReference<SerializedSnapshot> serializedActiveProducts = new AtomicReference<>();
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
 
     @Autowired
-    public ProductController(ProductService productService, CacheManager cacheManager) {
+    public ProductController(ProductService productService, TopSellerService topSellerService, CacheManager cacheManager, ObjectMapper objectMapper) {
         this.productService = productService;
+        this.topSellerService = topSellerService;
         this.cacheManager = cacheManager;
+        this.objectMapper = objectMapper;
     }
 
-    @Operation(summary = "Get all Products", description = "Retrieves all products from the database. Returns a list of ProductDto objects.")
-    @ApiResponse(responseCode = "200", description = "Products found and returned. No success message provided.")
+    @Operation(summary = "Get all Products", description = "Retrieves all products from the database. Returns a list of ProductDto objects. The body is gzip'd if the client accepts it, with If-None-Match the client gets 304 while the catalog is unchanged.")
+    @ApiResponse(responseCode = "200", description = "Products found and returned. No success message provided.",
+            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = ProductDto.class))))
     @ApiResponse(responseCode = "204", description = "No products found. Error message provided.")
+    @ApiResponse(responseCode = "304", description = "The catalog did not change since the ETag sent in If-None-Match.")
     @GetMapping("/all")
-    public ResponseEntity<List<ProductDto>> getAllProducts() {
+    public ResponseEntity<byte[]> getAllProducts(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                 @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         logger.info("Getting all products");
-        Cache cache = cacheManager.getCache("AllProducts");
-
-        if (cache == null || cache.get("all") == null) {
-            logger.info("AllProducts cache is empty or missing. Loading from service.");
-            getAllProductsToCache();
-        }
-
-        @SuppressWarnings("unchecked")
-        List<ProductDto> cachedProducts = cache.get("all", List.class);
-        if (cachedProducts == null || cachedProducts.isEmpty()) {
+        CatalogSnapshot snapshot = getCatalogSnapshot();
+        if (snapshot.isEmpty()) {
             logger.info("No products found in cache");
             return ResponseEntity.noContent().build();
         }
 
         logger.info("Returning products from cache");
-        return ResponseEntity.ok(cachedProducts);
+        return serialized(serializedAllProducts, snapshot, snapshot.getProducts()).toResponse(staleHeaders(), ifNoneMatch, acceptEncoding);
     }
 
     @Operation(summary = "Get specific Product", description = "Retrieves a product by its ProductID. Returns a ProductDto object.")
@@ -70,17 +92,17 @@ public class ProductController {
     @ApiResponse(responseCode = "204", description = "Product not found.")
     @GetMapping("/get/{id}")
     public ResponseEntity<ProductDto> getProduct(@Parameter(description = "ProductID Integer", required = true) @NotNull @NotBlank @PathVariable("id") String productId) {
-        Cache cache = cacheManager.getCache("AllProducts");
-
-        if (cache == null || cache.get("all") == null) {
-            logger.info("AllProducts cache is empty or missing. Loading from service.");
-            getAllProductsToCache();
+        Optional<ProductDto> fromSnapshot = getCatalogSnapshot().findById(productId);
+        if (fromSnapshot.isPresent()) {
+            return okMarkedIfStale().body(fromSnapshot.get());
         }
 
-        ProductDto cached = cache.get(productId, ProductDto.class);
+        // products which are not part of the snapshot yet are cached by id
+        Cache cache = cacheManager.getCache("AllProducts");
+        ProductDto cached = cache != null ? cache.get(productId, ProductDto.class) : null;
         if (cached != null) {
             logger.info("Product found in cache for id {}", productId);
-            return ResponseEntity.ok(cached);
+            return okMarkedIfStale().body(cached);
         }
 
         Optional<ProductDto> product = productService.getProductById(productId);
@@ -91,36 +113,49 @@ public class ProductController {
             if (cache != null) {
                 cache.put(productId, product.get());
             }
-            return ResponseEntity.ok(product.get());
+            return okMarkedIfStale().body(product.get());
         }
     }
 
-    @Operation(summary = "Get all active products", description = "Retrieves all products that are marked as active.")
-    @ApiResponse(responseCode = "200", description = "Active products found and returned.")
+    @Operation(summary = "Get all active products", description = "Retrieves all products that are marked as active. The body is gzip'd if the client accepts it, with If-None-Match the client gets 304 while the list is unchanged.")
+    @ApiResponse(responseCode = "200", description = "Active products found and returned.",
+            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = ProductDto.class))))
     @ApiResponse(responseCode = "204", description = "No active products found.")
+    @ApiResponse(responseCode = "304", description = "The list did not change since the ETag sent in If-None-Match.")
     @ApiResponse(responseCode = "400", description = "An error occurred during the process.")
     @GetMapping("/all/active")
-    public ResponseEntity<List<ProductDto>> getActiveProducts() {
+    public ResponseEntity<byte[]> getActiveProducts(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         Cache cache = cacheManager.getCache("ActiveProducts");
-        if (cache != null) {
-            @SuppressWarnings("unchecked")
-            List<ProductDto> cached = cache.get("all", List.class);
-            if (cached != null) {
-                return ResponseEntity.ok(cached);
-            }
-        }
-
-        List<ProductDto> products = productService.getAllProducts();
+        // only one request loads the list on a miss, the others wait for its result
+        List<ProductDto> products = cache != null
+                ? cache.get("all", productService::getActiveProducts)
+                : productService.getActiveProducts();
         if (products == null) {
             return ResponseEntity.badRequest().build();
         }
         if (products.isEmpty()) {
             logger.info("No active products found");
         }
-        if (cache != null) {
-            cache.put("all", products);
-        }
-        return ResponseEntity.ok(products);
+        return serialized(serializedActiveProducts, products, products).toResponse(staleHeaders(), ifNoneMatch, acceptEncoding);
+    }
+
+    @Operation(summary = "Stream all products", description = "Streams every product of the catalog as newline delimited JSON (one ProductDto per line). The catalog is not buffered, so this also works for very large catalogs.")
+    @ApiResponse(responseCode = "200", description = "Products are streamed as application/x-ndjson.")
+    @GetMapping(value = "/all/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAllProducts() {
+        return okMarkedIfStale()
+                .contentType(NDJSON)
+                .body(out -> writeProductsAsNdjson(false, out));
+    }
+
+    @Operation(summary = "Stream all active products", description = "Streams every active product as newline delimited JSON (one ProductDto per line).")
+    @ApiResponse(responseCode = "200", description = "Active products are streamed as application/x-ndjson.")
+    @GetMapping(value = "/all/active/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamActiveProducts() {
+        return okMarkedIfStale()
+                .contentType(NDJSON)
+                .body(out -> writeProductsAsNdjson(true, out));
     }
 
     @PostMapping("/add")
@@ -135,7 +170,7 @@ public class ProductController {
         if (response.get().startsWith("prod_")) {
             logger.info("Product added successfully");
 
-            evictCaches(productDto.getProductId());
+            evictProductCaches(response.get());
 
             return ResponseEntity.ok(response.get());
         } else {
@@ -153,7 +188,7 @@ public class ProductController {
         if (response.isEmpty()) {
             logger.info("Product updated successfully");
 
-            evictCaches(productDto.getProductId());
+            evictProductCaches(productDto.getProductId());
 
             return ResponseEntity.ok("Product updated successfully");
         } else {
@@ -171,7 +206,7 @@ public class ProductController {
         if (response.isEmpty()) {
             logger.info("Product deleted successfully");
 
-            evictCaches(productId);
+            evictProductCaches(productId);
 
             return ResponseEntity.ok("Product deleted successfully");
         } else {
@@ -202,6 +237,11 @@ public class ProductController {
         // Load from service if not found in cache
         Optional<List<PriceHistoryDto>> response = productService.getPriceHistory(productId);
         if (response.isEmpty()) {
+            Optional<List<PriceHistoryDto>> lastKnown = productService.getLastKnownPriceHistory(productId);
+            if (lastKnown.isPresent()) {
+                logger.warn("Price history could not be loaded, serving last known price history of {}", productId);
+                return ResponseEntity.ok().header(StripeGateway.STALE_DATA_HEADER, "true").body(lastKnown.get());
+            }
             logger.info("Some error occurred while getting price history");
             return ResponseEntity.badRequest().build();
         } else if (response.get().isEmpty()) {
@@ -216,6 +256,26 @@ public class ProductController {
         }
     }
 
+    @Operation(summary = "Search products", description = "Searches name, description and upcCode of the cached catalog. Every word of the query has to match as whole word, as prefix or with one typo. Returns the best matches first.")
+    @ApiResponse(responseCode = "200", description = "Matching products returned, best match first.")
+    @ApiResponse(responseCode = "204", description = "No product matches the query.")
+    @ApiResponse(responseCode = "400", description = "The query is empty.")
+    @GetMapping("/search")
+    public ResponseEntity<List<ProductDto>> searchProducts(
+            @Parameter(description = "Text of the search box", required = true) @RequestParam("q") @Length(max = 200) String query,
+            @Parameter(description = "Maximum number of results (1-100)") @RequestParam(value = "limit", defaultValue = "20") int limit,
+            @Parameter(description = "Only return active products") @RequestParam(value = "activeOnly", defaultValue = "true") boolean activeOnly) {
+        if (query == null || query.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<ProductDto> found = getCatalogSnapshot().getSearchIndex().search(query, Math.clamp(limit, 1, 100), activeOnly);
+        if (found.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+        return okMarkedIfStale().body(found);
+    }
+
     @Operation(
             summary = "Get product by EAN from cache",
             description = "Searches for a product with the given EAN in the 'AllProducts' cache and returns it if found."
@@ -227,23 +287,9 @@ public class ProductController {
             @Parameter(description = "EAN of the product", required = true)
             @PathVariable @Length(min = 0, max = 255) String ean) {
 
-        Cache cache = cacheManager.getCache("AllProducts");
-
-        if (cache == null || cache.get("all") == null) {
-            logger.info("AllProducts cache is empty or missing. Loading from service.");
-            getAllProductsToCache();
-        }
-
-        List<ProductDto> cachedProducts = cache.get("all", List.class);
-        if (cachedProducts == null || cachedProducts.isEmpty()) {
-            cachedProducts = productService.getAllProducts(); // fallback
-            cache.put("all", cachedProducts);
-        }
-
-        return cachedProducts.stream()
-                .filter(p -> ean.equals(p.getUpcCode()))
-                .findFirst()
-                .map(ResponseEntity::ok)
+        // hash lookup in the upcCode index of the snapshot
+        return getCatalogSnapshot().findByUpcCode(ean)
+                .map(product -> okMarkedIfStale().body(product))
                 .orElse(ResponseEntity.noContent().build());
     }
 
@@ -266,26 +312,143 @@ public class ProductController {
         }
     }
 
-    // Loads all products into the cache
-    private void getAllProductsToCache() {
-        List<ProductDto> productDtos = productService.getAllProducts();
+    @Operation(summary = "Get live top sellers", description = "Returns the products with the most units sold in the last 15 minutes (15m), the last hour (1h) or today (today), most first. "
+            + "Counted in memory from the sales of the registers since the start of this instance. Quantities are upper bounds, maxError is how much they may be too high.")
+    @ApiResponse(responseCode = "200", description = "Top sellers returned, empty if nothing was sold in the window.")
+    @ApiResponse(responseCode = "400", description = "Unknown window.")
+    @GetMapping("/top-sellers")
+    public ResponseEntity<List<TopSellerDto>> getTopSellers(
+            @Parameter(description = "Window: 15m, 1h or today") @RequestParam(value = "window", defaultValue = "15m") String window,
+            @Parameter(description = "Maximum number of products") @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        TopSellerService.Window parsed;
+        try {
+            parsed = TopSellerService.Window.fromParam(window);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(topSellerService.getTopSellers(parsed, Math.clamp(limit, 1, topSellerService.getCapacity())));
+    }
+
+    // Writes one product per line and flushes regularly, so clients can start rendering before the last product is read
+    void writeProductsAsNdjson(boolean activeOnly, OutputStream out) throws IOException {
+        BufferedOutputStream buffered = new BufferedOutputStream(out);
+        int[] written = {0};
+        try {
+            productService.streamProducts(activeOnly, product -> {
+                try {
+                    buffered.write(objectMapper.writeValueAsBytes(product));
+                    buffered.write('\n');
+                    if (++written[0] % 100 == 0) {
+                        buffered.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        buffered.flush();
+        logger.info("Streamed {} products", written[0]);
+    }
+
+    // Returns the serialized body of the cached value. It is built once per cached object: a reload or a patch
+    // of the cache puts a new object, so the next request builds the body again
+    private SerializedSnapshot serialized(AtomicReference<SerializedSnapshot> holder, Object source, List<ProductDto> products) {
+        SerializedSnapshot current = holder.get();
+        if (current != null && current.isFor(source)) {
+            return current;
+        }
+        try {
+            SerializedSnapshot built = SerializedSnapshot.of(source, products, objectMapper);
+            holder.set(built);
+            logger.info("Serialized {} products, etag {}", products.size(), built.getEtag());
+            return built;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // 200 response, marked with the stale header if the catalog could not be synchronized with stripe
+    private ResponseEntity.BodyBuilder okMarkedIfStale() {
+        return ResponseEntity.ok().headers(staleHeaders());
+    }
+
+    private HttpHeaders staleHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        if (productService.isCatalogStale()) {
+            headers.set(StripeGateway.STALE_DATA_HEADER, "true");
+        }
+        return headers;
+    }
+
+    // Returns the catalog snapshot (product list with id and upcCode index) from the cache.
+    // On a miss only one request loads it (single flight), concurrent requests wait for that load instead of starting their own
+    CatalogSnapshot getCatalogSnapshot() {
         Cache targetCache = cacheManager.getCache("AllProducts");
-        if (targetCache != null) {
-            targetCache.put("all", productDtos);
-            for (ProductDto product : productDtos) {
-                targetCache.put(product.getProductId(), product);
-            }
+        if (targetCache == null) {
+            return CatalogSnapshot.of(productService.getAllProducts());
         }
+        CatalogSnapshot snapshot = targetCache.get("all", () -> {
+            logger.info("AllProducts cache is empty. Loading from service.");
+            return CatalogSnapshot.of(productService.getAllProducts());
+        });
+        return snapshot != null ? snapshot : CatalogSnapshot.of(List.of());
     }
 
-    // Clears relevant caches when product is added, updated or deleted
-    private void evictCaches(String productId) {
+    // Updates the caches after a product was added, updated or deleted. The product is read again from the catalog mirror
+    // and replaced in the cached lists, only its own entries are evicted. The catalog does not have to be reloaded
+    void evictProductCaches(String productId) {
+        Optional<ProductDto> current = productService.getProductById(productId);
+
         Optional.ofNullable(cacheManager.getCache("AllProducts")).ifPresent(cache -> {
             cache.evict(productId);
-            cache.evict("all");
+            patchAllEntry(cache, old -> patchSnapshot((CatalogSnapshot) old, productId, current));
+        });
+        Optional.ofNullable(cacheManager.getCache("ActiveProducts")).ifPresent(cache ->
+                patchAllEntry(cache, old -> {
+                    @SuppressWarnings("unchecked")
+                    List<ProductDto> products = (List<ProductDto>) old;
+                    // a deleted or archived product stays in the mirror as inactive, it leaves the active list
+                    Optional<ProductDto> active = current.filter(ProductDto::isActive);
+                    return patchSnapshot(CatalogSnapshot.of(products), productId, active).getProducts();
+                }));
+        Optional.ofNullable(cacheManager.getCache("PriceHistory")).ifPresent(cache -> cache.evict(productId));
+        Optional.ofNullable(cacheManager.getCache("PriceToProductId")).ifPresent(cache -> {
+            ConcurrentMap<Object, Object> entries = asMap(cache);
+            if (entries != null) {
+                entries.values().removeIf(productId::equals);
+            } else {
+                cache.clear();
+            }
         });
         Optional.ofNullable(cacheManager.getCache("AllStock")).ifPresent(cache -> cache.evict(productId));
-        Optional.ofNullable(cacheManager.getCache("ActiveProducts")).ifPresent(Cache::clear);
-        Optional.ofNullable(cacheManager.getCache("PriceToProductId")).ifPresent(Cache::clear);
+    }
+
+    private static CatalogSnapshot patchSnapshot(CatalogSnapshot snapshot, String productId, Optional<ProductDto> current) {
+        return current.map(snapshot::withProduct).orElseGet(() -> snapshot.withoutProduct(productId));
+    }
+
+    // Replaces the "all" entry atomically, a concurrent patch or load cannot get lost.
+    // If the entry is not cached nothing happens, if the cache has no map view the entry is evicted
+    private void patchAllEntry(Cache cache, UnaryOperator<Object> patch) {
+        ConcurrentMap<Object, Object> entries = asMap(cache);
+        if (entries == null) {
+            cache.evict("all");
+            return;
+        }
+        entries.computeIfPresent("all", (key, old) -> patch.apply(old));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentMap<Object, Object> asMap(Cache cache) {
+        Object nativeCache = cache.getNativeCache();
+        if (nativeCache instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeineCache) {
+            return (ConcurrentMap<Object, Object>) caffeineCache.asMap();
+        }
+        if (nativeCache instanceof ConcurrentMap<?, ?> map) {
+            return (ConcurrentMap<Object, Object>) map;
+        }
+        return null;
     }
 }
@@ -4,6 +4,7 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import ip.project.backend.backend.modeldto.StockDto;
+import ip.project.backend.backend.service.StockReservationService;
 import ip.project.backend.backend.service.StockService;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
@@ -12,19 +13,19 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/stock")
-@EnableCaching
 public class StockController {
     private final Logger logger = LoggerFactory.getLogger(StockController.class);
     private final StockService stockService;
+    private final StockReservationService stockReservationService;
 
 
     /**
@@ -52,8 +53,22 @@ public class StockController {
     }
 
     @Autowired
-    public StockController(StockService stockService) {
+    public StockController(StockService stockService, StockReservationService stockReservationService) {
         this.stockService = stockService;
+        this.stockReservationService = stockReservationService;
+    }
+
+    /**
+     * units which can still be sold: stock minus the units reserved by open card checkouts
+     *
+     * @param productIds products to look up
+     * @return returns the available units per product id, products without stock are missing
+     */
+    @Operation(summary = "Get available to sell", description = "Stock minus the units reserved by open Stripe checkout sessions, per product id. Products without stock are not in the result.")
+    @ApiResponse(responseCode = "200", description = "Available units per product id")
+    @GetMapping("/available")
+    public ResponseEntity<Map<String, Integer>> getAvailableToSell(@Parameter(description = "Product ids to look up", required = true) @RequestParam("productIds") List<String> productIds) {
+        return ResponseEntity.ok(stockReservationService.getAvailableToSell(productIds));
     }
 
     /**
@@ -114,7 +129,7 @@ public class StockController {
     @ApiResponse(responseCode = "400", description = "Stock not updated. Error message provided")
 
     @PutMapping("/update")
-    @CacheEvict(value = "AllStock", key = "#stockDto.productId")
+    @CacheEvict(value = "AllStock", allEntries = true)
     public ResponseEntity<String> updateStock(@Parameter(description = "updated Stock object", required = true) @Valid @NotNull @RequestBody StockDto stockDto) {
 
         Optional<String> answer = stockService.updateStock(stockDto);
@@ -128,12 +143,81 @@ public class StockController {
         }
     }
 
+    /**
+     * takes units from stock, only if enough units are in stock
+     *
+     * @param productId product id of the stock
+     * @param amount    units to take
+     * @return returns the stock after the change, 409 if not enough units are available
+     */
+    @Operation(summary = "Decrease stock", description = "Takes units from stock in one atomic database operation. Fails with 409 instead of going below zero or taking units reserved for open checkouts, so two registers selling the last unit cannot both succeed.")
+    @ApiResponse(responseCode = "200", description = "Stock decreased. Returning the new stock")
+    @ApiResponse(responseCode = "400", description = "Amount is not positive")
+    @ApiResponse(responseCode = "404", description = "No stock for this product")
+    @ApiResponse(responseCode = "409", description = "Not enough units in stock or the units are reserved")
+    @PutMapping("/{id}/decrease")
+    @CacheEvict(value = "AllStock", allEntries = true)
+    public ResponseEntity<StockDto> decreaseStock(@Parameter(description = "ProductID of the stock", required = true) @NotNull @PathVariable("id") String productId,
+                                                  @Parameter(description = "Units to take", required = true) @RequestParam("amount") int amount) {
+        if (amount <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<StockDto> stock = stockService.decreaseStock(productId, amount);
+        if (stock.isPresent()) {
+            return ResponseEntity.ok(stock.get());
+        }
+        // only read again on failure, to tell a missing stock from a too low one
+        return stockService.getStockByProductId(productId).isPresent()
+                ? ResponseEntity.status(409).build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * adds units to stock
+     *
+     * @param productId product id of the stock
+     * @param amount    units to add
+     * @return returns the stock after the change
+     */
+    @Operation(summary = "Increase stock", description = "Adds units to stock in one atomic database operation. A missing stock is created.")
+    @ApiResponse(responseCode = "200", description = "Stock increased. Returning the new stock")
+    @ApiResponse(responseCode = "400", description = "Amount is not positive")
+    @PutMapping("/{id}/increase")
+    @CacheEvict(value = "AllStock", allEntries = true)
+    public ResponseEntity<StockDto> increaseStock(@Parameter(description = "ProductID of the stock", required = true) @NotNull @PathVariable("id") String productId,
+                                                  @Parameter(description = "Units to add", required = true) @RequestParam("amount") int amount) {
+        if (amount <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(stockService.increaseStock(productId, amount));
+    }
+
+    /**
+     * sets the quantity of a stock
+     *
+     * @param productId product id of the stock
+     * @param quantity  new quantity
+     * @return returns the stock after the change
+     */
+    @Operation(summary = "Set stock quantity", description = "Sets the quantity in one atomic database operation, e.g. after counting. A missing stock is created.")
+    @ApiResponse(responseCode = "200", description = "Quantity set. Returning the new stock")
+    @ApiResponse(responseCode = "400", description = "Quantity is negative")
+    @PutMapping("/{id}/quantity")
+    @CacheEvict(value = "AllStock", allEntries = true)
+    public ResponseEntity<StockDto> setStockQuantity(@Parameter(description = "ProductID of the stock", required = true) @NotNull @PathVariable("id") String productId,
+                                                     @Parameter(description = "New quantity", required = true) @RequestParam("quantity") int quantity) {
+        if (quantity < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(stockService.setStockQuantity(productId, quantity));
+    }
+
     @Operation(summary = "Delete stock", description = "Delete stock from database")
     @ApiResponse(responseCode = "200", description = "Stock deleted successfully")
     @ApiResponse(responseCode = "400", description = "Stock not deleted. Error message provided")
 
     @DeleteMapping("/delete/{id}")
-    @CacheEvict(value = "AllStock", key = "#productId")
+    @CacheEvict(value = "AllStock", allEntries = true)
     public ResponseEntity<String> deleteStock(@Parameter(description = "ProductID of the stock to delete", required = true, example = "1") @NotNull @PathVariable("id") String productId) {
         Optional<String> response = stockService.deleteStock(productId);
         if (response.isEmpty()) {
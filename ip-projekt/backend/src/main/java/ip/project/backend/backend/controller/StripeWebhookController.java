@@ -0,0 +1,56 @@
+package ip.project.backend.backend.controller;
+
+import com.stripe.exception.SignatureVerificationException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import ip.project.backend.backend.service.StripeWebhookService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/stripe")
+public class StripeWebhookController {
+
+    private final Logger logger = LoggerFactory.getLogger(StripeWebhookController.class);
+    private final StripeWebhookService stripeWebhookService;
+
+    @Autowired
+    public StripeWebhookController(StripeWebhookService stripeWebhookService) {
+        this.stripeWebhookService = stripeWebhookService;
+    }
+
+    /**
+     * endpoint for stripe webhooks. only checks the signature and queues the event, it is handled asynchronously
+     *
+     * @param payload   raw body of the event
+     * @param signature Stripe-Signature header
+     * @return returns 200 once the event is queued
+     */
+    @Operation(summary = "Stripe webhook", description = "Receives Stripe events. The signature is checked and the event is queued, it is handled asynchronously. Handles checkout.session.completed, checkout.session.async_payment_succeeded and checkout.session.expired.")
+    @ApiResponse(responseCode = "200", description = "Event queued")
+    @ApiResponse(responseCode = "400", description = "Signature missing or invalid")
+    @ApiResponse(responseCode = "503", description = "Queue is full, Stripe retries the event later")
+    @PostMapping("/webhook")
+    public ResponseEntity<Void> receiveWebhook(@RequestBody String payload,
+                                               @RequestHeader(value = "Stripe-Signature", required = false) String signature) {
+        if (signature == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return stripeWebhookService.accept(payload, signature)
+                    ? ResponseEntity.ok().build()
+                    : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (SignatureVerificationException e) {
+            logger.warn("Rejected Stripe webhook: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
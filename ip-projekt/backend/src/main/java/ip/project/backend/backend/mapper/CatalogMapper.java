@@ -0,0 +1,17 @@
+package ip.project.backend.backend.mapper;
+
+import ip.project.backend.backend.model.CatalogProduct;
+import ip.project.backend.backend.modeldto.ProductDto;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.factory.Mappers;
+
+@Mapper
+public interface CatalogMapper {
+    CatalogMapper INSTANCE = Mappers.getMapper(CatalogMapper.class);
+
+    ProductDto catalogToDto(CatalogProduct catalogProduct);
+
+    @Mapping(target = "syncedAt", ignore = true)
+    CatalogProduct dtoToCatalog(ProductDto productDto);
+}
@@ -0,0 +1,25 @@
+package ip.project.backend.backend.mapper;
+
+import ip.project.backend.backend.model.Order;
+import ip.project.backend.backend.model.OrderLineItem;
+import ip.project.backend.backend.modeldto.OrderDto;
+import ip.project.backend.backend.modeldto.OrderLineItemDto;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.factory.Mappers;
+
+import java.util.List;
+
+@Mapper
+public interface OrderMapper {
+    OrderMapper INSTANCE = Mappers.getMapper(OrderMapper.class);
+
+    OrderLineItem lineItemDtoToLineItem(OrderLineItemDto lineItemDto);
+
+    OrderLineItemDto lineItemToDto(OrderLineItem lineItem);
+
+    List<OrderLineItem> lineItemDtosToLineItems(List<OrderLineItemDto> lineItemDtos);
+
+    @Mapping(source = "products", target = "productNames")
+    OrderDto orderToDto(Order order);
+}
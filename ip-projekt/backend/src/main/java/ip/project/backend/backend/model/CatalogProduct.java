@@ -0,0 +1,156 @@
+package ip.project.backend.backend.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * local mirror of a stripe product together with its current price.
+ * the stripe product id is used as document id, so upserts are idempotent
+ */
+@Document(collection = "catalog")
+public class CatalogProduct {
+
+    @Id
+    private String productId;
+    private String productName;
+    private String productDescription;
+    private BigDecimal listPrice;
+    private BigDecimal costPrice;
+    @Indexed
+    private String upcCode;
+    private Long created;
+    private Long updated;
+    @Indexed
+    private boolean active;
+    private String currency;
+    private boolean taxIncludedInPrice;
+    private String priceId;
+    private Date syncedAt; // last time this entry was written from stripe or a local write
+
+    public CatalogProduct() {
+    }
+
+    public CatalogProduct(String productId, String productName, String productDescription, BigDecimal listPrice, BigDecimal costPrice, String upcCode, Long created, Long updated, boolean active, String currency, boolean taxIncludedInPrice, String priceId, Date syncedAt) {
+        this.productId = productId;
+        this.productName = productName;
+        this.productDescription = productDescription;
+        this.listPrice = listPrice;
+        this.costPrice = costPrice;
+        this.upcCode = upcCode;
+        this.created = created;
+        this.updated = updated;
+        this.active = active;
+        this.currency = currency;
+        this.taxIncludedInPrice = taxIncludedInPrice;
+        this.priceId = priceId;
+        this.syncedAt = syncedAt;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public String getProductDescription() {
+        return productDescription;
+    }
+
+    public void setProductDescription(String productDescription) {
+        this.productDescription = productDescription;
+    }
+
+    public BigDecimal getListPrice() {
+        return listPrice;
+    }
+
+    public void setListPrice(BigDecimal listPrice) {
+        this.listPrice = listPrice;
+    }
+
+    public BigDecimal getCostPrice() {
+        return costPrice;
+    }
+
+    public void setCostPrice(BigDecimal costPrice) {
+        this.costPrice = costPrice;
+    }
+
+    public String getUpcCode() {
+        return upcCode;
+    }
+
+    public void setUpcCode(String upcCode) {
+        this.upcCode = upcCode;
+    }
+
+    public Long getCreated() {
+        return created;
+    }
+
+    public void setCreated(Long created) {
+        this.created = created;
+    }
+
+    public Long getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(Long updated) {
+        this.updated = updated;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public boolean isTaxIncludedInPrice() {
+        return taxIncludedInPrice;
+    }
+
+    public void setTaxIncludedInPrice(boolean taxIncludedInPrice) {
+        this.taxIncludedInPrice = taxIncludedInPrice;
+    }
+
+    public String getPriceId() {
+        return priceId;
+    }
+
+    public void setPriceId(String priceId) {
+        this.priceId = priceId;
+    }
+
+    public Date getSyncedAt() {
+        return syncedAt;
+    }
+
+    public void setSyncedAt(Date syncedAt) {
+        this.syncedAt = syncedAt;
+    }
+}
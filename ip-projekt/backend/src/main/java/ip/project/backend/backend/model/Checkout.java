@@ -2,6 +2,8 @@ package ip.project.backend.backend.model;
 
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceCreator;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
@@ -13,18 +15,31 @@ public class Checkout {
     @Id
     private ObjectId id;
 
+    @Indexed
     private String sessionId;
 
     private Date date;
 
     private List<ProductWithId> products;
 
+    private String reservationId; // stock held for this checkout, null for checkouts before reservations existed
+
+    private boolean committed; // stock was taken after the payment
+
+    private List<Integer> takenLines; // indexes of the products whose stock is taken, a failed commit continues after them
+
     public Checkout(String sessionId, Date date, List<ProductWithId> products) {
         this.sessionId = sessionId;
         this.date = date;
         this.products = products;
     }
 
+    @PersistenceCreator
+    public Checkout(String sessionId, Date date, List<ProductWithId> products, String reservationId) {
+        this(sessionId, date, products);
+        this.reservationId = reservationId;
+    }
+
     public String getSessionId() {
         return sessionId;
     }
@@ -48,4 +63,28 @@ public class Checkout {
     public void setProducts(List<ProductWithId> products) {
         this.products = products;
     }
+
+    public String getReservationId() {
+        return reservationId;
+    }
+
+    public void setReservationId(String reservationId) {
+        this.reservationId = reservationId;
+    }
+
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public void setCommitted(boolean committed) {
+        this.committed = committed;
+    }
+
+    public List<Integer> getTakenLines() {
+        return takenLines;
+    }
+
+    public void setTakenLines(List<Integer> takenLines) {
+        this.takenLines = takenLines;
+    }
 }
@@ -3,6 +3,8 @@ package ip.project.backend.backend.model;
 import io.swagger.v3.oas.models.security.SecurityScheme;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.math.BigDecimal;
@@ -11,15 +13,25 @@ import java.util.List;
 import java.util.Objects;
 
 @Document(collection = "order")
+// reports match on the date range, per employee with the employee first
+@CompoundIndex(name = "employee_date", def = "{'employeeId': 1, 'date': 1}")
 public class Order {
 
     @Id
     private ObjectId id;
+    @Indexed(unique = true)
     private String orderId;
     private List<String> productNames;
     private BigDecimal totalPrice;
+    @Indexed
     private Date date;
     private Integer employeeId;
+    private List<OrderLineItem> lineItems;
+    // true if the line items were derived from productNames and today's catalog prices by the migration
+    private Boolean lineItemsEstimated;
+    // true once the line items are counted in sales_daily
+    @Indexed
+    private Boolean rolledUp;
 
     public Order(){}
 
@@ -31,6 +43,11 @@ public class Order {
         this.employeeId = employeeId;
     }
 
+    public Order(String orderId, List<String> productNames, BigDecimal totalPrice, Date date, Integer employeeId, List<OrderLineItem> lineItems){
+        this(orderId, productNames, totalPrice, date, employeeId);
+        this.lineItems = lineItems;
+    }
+
     public ObjectId getId(){
         return id;
     }
@@ -69,5 +86,25 @@ public class Order {
         this.employeeId = employeeId;
     }
 
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
+    }
+
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
+    }
+
+    public Boolean getLineItemsEstimated() {
+        return lineItemsEstimated;
+    }
+
+    public void setLineItemsEstimated(Boolean lineItemsEstimated) {
+        this.lineItemsEstimated = lineItemsEstimated;
+    }
+
+    public Boolean getRolledUp(){
+        return rolledUp;
+    }
 
+    public void setRolledUp(Boolean rolledUp){this.rolledUp = rolledUp;}
 }
@@ -0,0 +1,93 @@
+package ip.project.backend.backend.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Objects;
+
+/**
+ * one product of an order. prices are in cents, so revenue and margin can be summed in mongo without rounding errors
+ */
+public class OrderLineItem {
+
+    private String productId;
+    private String productName;
+    private int quantity;
+    private Long unitPriceCents;
+    private Long costPriceCents;
+
+    public OrderLineItem() {}
+
+    public OrderLineItem(String productId, String productName, int quantity, Long unitPriceCents, Long costPriceCents) {
+        this.productId = productId;
+        this.productName = productName;
+        this.quantity = quantity;
+        this.unitPriceCents = unitPriceCents;
+        this.costPriceCents = costPriceCents;
+    }
+
+    /**
+     * converts a price in euros to cents
+     *
+     * @param price price in euros, may be null
+     * @return returns the price in cents, null if the price is null
+     */
+    public static Long toCents(BigDecimal price) {
+        return price == null ? null : price.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public Long getUnitPriceCents() {
+        return unitPriceCents;
+    }
+
+    public void setUnitPriceCents(Long unitPriceCents) {
+        this.unitPriceCents = unitPriceCents;
+    }
+
+    public Long getCostPriceCents() {
+        return costPriceCents;
+    }
+
+    public void setCostPriceCents(Long costPriceCents) {
+        this.costPriceCents = costPriceCents;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof OrderLineItem that)) return false;
+        return quantity == that.quantity
+                && Objects.equals(productId, that.productId)
+                && Objects.equals(productName, that.productName)
+                && Objects.equals(unitPriceCents, that.unitPriceCents)
+                && Objects.equals(costPriceCents, that.costPriceCents);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(productId, productName, quantity, unitPriceCents, costPriceCents);
+    }
+}
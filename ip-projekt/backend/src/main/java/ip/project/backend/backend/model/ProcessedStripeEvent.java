@@ -0,0 +1,92 @@
+package ip.project.backend.backend.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * stripe event which was already handled. stripe delivers events at least once and retries for up to three days,
+ * the event id as document id lets only the first delivery through. old entries are removed by a ttl index.
+ * an event whose handling failed keeps its payload and signature until a retry handled it
+ */
+@Document(collection = "stripe_event")
+public class ProcessedStripeEvent {
+
+    @Id
+    private String eventId;
+    private String type;
+    @Indexed(expireAfter = "30d")
+    private Date receivedAt;
+    private String payload;
+    private String signature;
+    private int attempts;
+    // next retry of a failed event, null once it is handled
+    @Indexed(sparse = true)
+    private Date retryAt;
+
+    public ProcessedStripeEvent() {}
+
+    public ProcessedStripeEvent(String eventId, String type, Date receivedAt) {
+        this.eventId = eventId;
+        this.type = type;
+        this.receivedAt = receivedAt;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Date getReceivedAt() {
+        return receivedAt;
+    }
+
+    public void setReceivedAt(Date receivedAt) {
+        this.receivedAt = receivedAt;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public void setSignature(String signature) {
+        this.signature = signature;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getRetryAt() {
+        return retryAt;
+    }
+
+    public void setRetryAt(Date retryAt) {
+        this.retryAt = retryAt;
+    }
+}
@@ -0,0 +1,84 @@
+package ip.project.backend.backend.model;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * units and revenue of one product on one day. maintained incrementally while orders are written,
+ * so sales of a date range are read from one document per product and day instead of every order
+ */
+@Document(collection = "sales_daily")
+@CompoundIndex(name = "day_product", def = "{'day': 1, 'productId': 1}", unique = true)
+public class SalesDaily {
+
+    @Id
+    private ObjectId id;
+    private String productId;
+    // start of the day in the zone of the shop
+    private Date day;
+    private String productName;
+    private long quantity;
+    private long revenueCents;
+
+    public SalesDaily() {}
+
+    public SalesDaily(String productId, Date day, String productName, long quantity, long revenueCents) {
+        this.productId = productId;
+        this.day = day;
+        this.productName = productName;
+        this.quantity = quantity;
+        this.revenueCents = revenueCents;
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public void setId(ObjectId id) {
+        this.id = id;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public Date getDay() {
+        return day;
+    }
+
+    public void setDay(Date day) {
+        this.day = day;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(long quantity) {
+        this.quantity = quantity;
+    }
+
+    public long getRevenueCents() {
+        return revenueCents;
+    }
+
+    public void setRevenueCents(long revenueCents) {
+        this.revenueCents = revenueCents;
+    }
+}
@@ -9,6 +9,7 @@ public class Stock {
 
     @Id
     private ObjectId _id;
+    // unique index, created by StockIndexMigration after older duplicates are merged
     private String productId;
     private Integer quantity;
     private boolean repurchased;
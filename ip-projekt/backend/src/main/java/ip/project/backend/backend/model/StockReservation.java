@@ -0,0 +1,77 @@
+package ip.project.backend.backend.model;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * units of a product held for an open stripe checkout session. mongo deletes the document at expiresAt,
+ * so a session which is never paid gives its units back without a cleanup job
+ */
+@Document(collection = "stock_reservation")
+// available to sell sums the live reservations of a product
+@CompoundIndex(name = "product_expires", def = "{'productId': 1, 'expiresAt': 1}")
+public class StockReservation {
+
+    @Id
+    private ObjectId id;
+    @Indexed
+    private String reservationId; // shared by all products of one checkout
+    private String productId;
+    private int quantity;
+    @Indexed(expireAfter = "0s")
+    private Date expiresAt;
+
+    public StockReservation() {}
+
+    public StockReservation(String reservationId, String productId, int quantity, Date expiresAt) {
+        this.reservationId = reservationId;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.expiresAt = expiresAt;
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public void setId(ObjectId id) {
+        this.id = id;
+    }
+
+    public String getReservationId() {
+        return reservationId;
+    }
+
+    public void setReservationId(String reservationId) {
+        this.reservationId = reservationId;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,67 @@
+package ip.project.backend.backend.modeldto;
+
+/**
+ * one change pushed to the terminals over the change feed.
+ * the type is also used as sse event name, the payload is the new state (ProductDto or StockDto) or null if deleted
+ */
+public class ChangeEventDto {
+
+    public static final String PRODUCT_ADDED = "product.added";
+    public static final String PRODUCT_UPDATED = "product.updated";
+    public static final String PRODUCT_DELETED = "product.deleted";
+    public static final String STOCK_UPDATED = "stock.updated";
+
+    private long sequence;
+    private String type;
+    private String productId;
+    private long timestamp;
+    private Object payload;
+
+    public ChangeEventDto(long sequence, String type, String productId, long timestamp, Object payload) {
+        this.sequence = sequence;
+        this.type = type;
+        this.productId = productId;
+        this.timestamp = timestamp;
+        this.payload = payload;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+    public void setPayload(Object payload) {
+        this.payload = payload;
+    }
+}
@@ -1,6 +1,7 @@
 package ip.project.backend.backend.modeldto;
 
 import io.swagger.v3.oas.models.security.SecurityScheme;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
@@ -29,6 +30,10 @@ public class OrderDto {
     @NotNull(message = "Kassierer Id ist erforderlich")
     private Integer employeeId;
 
+    // optional for older terminals, their orders get line items from the migration
+    @Valid
+    private List<OrderLineItemDto> lineItems;
+
     public OrderDto() {}
 
     public OrderDto( List<String> productNames, BigDecimal totalPrice, Date date, Integer employeeId){
@@ -77,5 +82,11 @@ public class OrderDto {
         this.employeeId = employeeId;
     }
 
+    public List<OrderLineItemDto> getLineItems() {
+        return lineItems;
+    }
 
+    public void setLineItems(List<OrderLineItemDto> lineItems) {
+        this.lineItems = lineItems;
+    }
 }
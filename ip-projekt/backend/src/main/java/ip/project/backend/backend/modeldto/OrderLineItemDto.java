@@ -0,0 +1,75 @@
+package ip.project.backend.backend.modeldto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+
+public class OrderLineItemDto {
+
+    @NotBlank(message = "Produkt Id ist erforderlich")
+    private String productId;
+
+    private String productName;
+
+    @NotNull(message = "Menge ist erforderlich")
+    @Min(value = 1, message = "Menge muss mindestens 1 sein")
+    private Integer quantity;
+
+    @NotNull(message = "Stückpreis ist erforderlich")
+    @PositiveOrZero(message = "Stückpreis darf nicht negativ sein")
+    private Long unitPriceCents;
+
+    @PositiveOrZero(message = "Einkaufspreis darf nicht negativ sein")
+    private Long costPriceCents;
+
+    public OrderLineItemDto() {}
+
+    public OrderLineItemDto(String productId, String productName, Integer quantity, Long unitPriceCents, Long costPriceCents) {
+        this.productId = productId;
+        this.productName = productName;
+        this.quantity = quantity;
+        this.unitPriceCents = unitPriceCents;
+        this.costPriceCents = costPriceCents;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Long getUnitPriceCents() {
+        return unitPriceCents;
+    }
+
+    public void setUnitPriceCents(Long unitPriceCents) {
+        this.unitPriceCents = unitPriceCents;
+    }
+
+    public Long getCostPriceCents() {
+        return costPriceCents;
+    }
+
+    public void setCostPriceCents(Long costPriceCents) {
+        this.costPriceCents = costPriceCents;
+    }
+}
@@ -0,0 +1,63 @@
+package ip.project.backend.backend.modeldto;
+
+import java.util.List;
+
+/**
+ * everything a register needs on start in one response: products with stock, coupons and the access rights of the employee
+ */
+public class PosBootstrapDto {
+
+    private Integer employeeId;
+    private List<String> accessRights;
+    private List<PosProductDto> products;
+    private List<CouponDto> coupons; // null if the employee may not read coupons
+    private boolean stale; // true if products or coupons could not be synchronized with stripe
+
+    public PosBootstrapDto(Integer employeeId, List<String> accessRights, List<PosProductDto> products, List<CouponDto> coupons, boolean stale) {
+        this.employeeId = employeeId;
+        this.accessRights = accessRights;
+        this.products = products;
+        this.coupons = coupons;
+        this.stale = stale;
+    }
+
+    public Integer getEmployeeId() {
+        return employeeId;
+    }
+
+    public void setEmployeeId(Integer employeeId) {
+        this.employeeId = employeeId;
+    }
+
+    public List<String> getAccessRights() {
+        return accessRights;
+    }
+
+    public void setAccessRights(List<String> accessRights) {
+        this.accessRights = accessRights;
+    }
+
+    public List<PosProductDto> getProducts() {
+        return products;
+    }
+
+    public void setProducts(List<PosProductDto> products) {
+        this.products = products;
+    }
+
+    public List<CouponDto> getCoupons() {
+        return coupons;
+    }
+
+    public void setCoupons(List<CouponDto> coupons) {
+        this.coupons = coupons;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public void setStale(boolean stale) {
+        this.stale = stale;
+    }
+}
@@ -0,0 +1,31 @@
+package ip.project.backend.backend.modeldto;
+
+/**
+ * product of the pos bootstrap with its stock already joined by productId. stock is null if none is recorded
+ */
+public class PosProductDto {
+
+    private ProductDto product;
+    private StockDto stock;
+
+    public PosProductDto(ProductDto product, StockDto stock) {
+        this.product = product;
+        this.stock = stock;
+    }
+
+    public ProductDto getProduct() {
+        return product;
+    }
+
+    public void setProduct(ProductDto product) {
+        this.product = product;
+    }
+
+    public StockDto getStock() {
+        return stock;
+    }
+
+    public void setStock(StockDto stock) {
+        this.stock = stock;
+    }
+}
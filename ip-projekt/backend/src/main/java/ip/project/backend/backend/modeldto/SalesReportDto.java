@@ -0,0 +1,55 @@
+package ip.project.backend.backend.modeldto;
+
+import java.math.BigDecimal;
+
+/**
+ * revenue of one group of a sales report, e.g. one day, one hour of the day or one employee
+ */
+public class SalesReportDto {
+
+    private String key; // day as yyyy-MM-dd, hour of the day 0-23 or employee id
+    private BigDecimal revenue;
+    private long orderCount;
+    private BigDecimal averageBasket;
+
+    public SalesReportDto() {}
+
+    public SalesReportDto(String key, BigDecimal revenue, long orderCount, BigDecimal averageBasket) {
+        this.key = key;
+        this.revenue = revenue;
+        this.orderCount = orderCount;
+        this.averageBasket = averageBasket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(BigDecimal revenue) {
+        this.revenue = revenue;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public void setOrderCount(long orderCount) {
+        this.orderCount = orderCount;
+    }
+
+    public BigDecimal getAverageBasket() {
+        return averageBasket;
+    }
+
+    public void setAverageBasket(BigDecimal averageBasket) {
+        this.averageBasket = averageBasket;
+    }
+}
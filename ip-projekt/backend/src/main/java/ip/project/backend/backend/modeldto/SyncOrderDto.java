@@ -0,0 +1,43 @@
+package ip.project.backend.backend.modeldto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import org.hibernate.validator.constraints.Length;
+
+/**
+ * one sale of a register which was offline, with the idempotency key the register created for it
+ */
+public class SyncOrderDto {
+
+    @NotBlank(message = "Idempotency Key ist erforderlich")
+    @Length(max = 100)
+    private String idempotencyKey;
+
+    @NotNull(message = "Bestellung ist erforderlich")
+    @Valid
+    private OrderDto order;
+
+    public SyncOrderDto() {}
+
+    public SyncOrderDto(String idempotencyKey, OrderDto order) {
+        this.idempotencyKey = idempotencyKey;
+        this.order = order;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public OrderDto getOrder() {
+        return order;
+    }
+
+    public void setOrder(OrderDto order) {
+        this.order = order;
+    }
+}
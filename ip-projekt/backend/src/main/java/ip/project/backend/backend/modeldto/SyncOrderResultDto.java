@@ -0,0 +1,46 @@
+package ip.project.backend.backend.modeldto;
+
+/**
+ * result of one synchronized sale
+ */
+public class SyncOrderResultDto {
+
+    public static final String CREATED = "CREATED"; // stored now
+    public static final String REPLAYED = "REPLAYED"; // was already stored, nothing written
+    public static final String CONFLICT = "CONFLICT"; // key already used for a different order
+    public static final String FAILED = "FAILED"; // not stored, the register should send it again
+
+    private String idempotencyKey;
+    private String status;
+    private String error;
+
+    public SyncOrderResultDto(String idempotencyKey, String status, String error) {
+        this.idempotencyKey = idempotencyKey;
+        this.status = status;
+        this.error = error;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,34 @@
+package ip.project.backend.backend.modeldto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * batch of offline sales, synchronized in one request
+ */
+public class SyncOrdersDto {
+
+    public static final int MAX_ORDERS = 1000;
+
+    @NotEmpty(message = "Keine Bestellungen übergeben")
+    @Size(max = MAX_ORDERS, message = "Maximal " + MAX_ORDERS + " Bestellungen pro Anfrage")
+    @Valid
+    private List<SyncOrderDto> orders;
+
+    public SyncOrdersDto() {}
+
+    public SyncOrdersDto(List<SyncOrderDto> orders) {
+        this.orders = orders;
+    }
+
+    public List<SyncOrderDto> getOrders() {
+        return orders;
+    }
+
+    public void setOrders(List<SyncOrderDto> orders) {
+        this.orders = orders;
+    }
+}
@@ -0,0 +1,50 @@
+package ip.project.backend.backend.modeldto;
+
+public class TopSellerDto {
+
+    private String productId; // null for sales of registers which only send product names
+    private String productName;
+    private long quantity; // upper bound of the units sold in the window
+    private long maxError; // quantity may be up to this many units too high
+
+    public TopSellerDto() {}
+
+    public TopSellerDto(String productId, String productName, long quantity, long maxError) {
+        this.productId = productId;
+        this.productName = productName;
+        this.quantity = quantity;
+        this.maxError = maxError;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(long quantity) {
+        this.quantity = quantity;
+    }
+
+    public long getMaxError() {
+        return maxError;
+    }
+
+    public void setMaxError(long maxError) {
+        this.maxError = maxError;
+    }
+}
@@ -0,0 +1,18 @@
+package ip.project.backend.backend.repository;
+
+import ip.project.backend.backend.model.CatalogProduct;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Repository
+public interface CatalogRepository extends MongoRepository<CatalogProduct, String> {
+    List<CatalogProduct> findAllByActiveTrue();
+    Stream<CatalogProduct> streamAllBy();
+    Stream<CatalogProduct> streamAllByActiveTrue();
+    boolean existsByUpcCode(String upcCode);
+    List<CatalogProduct> findByProductNameIn(Collection<String> productNames);
+}
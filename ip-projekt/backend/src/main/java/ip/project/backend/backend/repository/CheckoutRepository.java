@@ -5,7 +5,9 @@ import org.bson.types.ObjectId;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 public interface CheckoutRepository extends MongoRepository<Checkout, ObjectId> {
-
+    Optional<Checkout> findBySessionId(String sessionId);
 }
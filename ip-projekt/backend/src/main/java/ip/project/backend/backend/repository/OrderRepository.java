@@ -5,6 +5,7 @@ import org.bson.types.ObjectId;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -12,6 +13,7 @@ import java.util.Optional;
 //@Repository
 public interface OrderRepository extends MongoRepository<Order, String> {
     Optional<Order> findOrderByOrderId(String orderId);
+    List<Order> findByOrderIdIn(Collection<String> orderIds);
     List<Order> getByDateBetween(Date start, Date end);
     List<Order> getByDateBetweenAndEmployeeId(Date start, Date end, Integer employeeId);
 
@@ -0,0 +1,18 @@
+package ip.project.backend.backend.repository;
+
+import ip.project.backend.backend.model.ProcessedStripeEvent;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface ProcessedStripeEventRepository extends MongoRepository<ProcessedStripeEvent, String>, ProcessedStripeEventRepositoryCustom {
+
+    /**
+     * @param now current time
+     * @return returns the oldest failed events which are due for a retry
+     */
+    List<ProcessedStripeEvent> findTop100ByRetryAtLessThanEqualOrderByRetryAtAsc(Date now);
+}
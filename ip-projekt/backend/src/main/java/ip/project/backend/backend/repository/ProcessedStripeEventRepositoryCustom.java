@@ -0,0 +1,37 @@
+package ip.project.backend.backend.repository;
+
+import java.util.Date;
+
+/**
+ * retry state of failed stripe events. every method is a single update of the marker document
+ */
+public interface ProcessedStripeEventRepositoryCustom {
+
+    /**
+     * keeps a failed event for a retry
+     *
+     * @param eventId   id of the event
+     * @param payload   raw payload of the event
+     * @param signature Stripe-Signature header the payload was delivered with
+     * @param attempts  number of failed attempts so far
+     * @param retryAt   time of the next attempt
+     */
+    void scheduleRetry(String eventId, String payload, String signature, int attempts, Date retryAt);
+
+    /**
+     * claims a due retry, so only one instance runs it
+     *
+     * @param eventId    id of the event
+     * @param retryAt    retry time the caller read, the claim fails if it changed since
+     * @param leaseUntil the event is due again at this time if the instance dies during the retry
+     * @return returns true if this caller got the retry
+     */
+    boolean claimRetry(String eventId, Date retryAt, Date leaseUntil);
+
+    /**
+     * marks a retried event as handled, the marker stays to skip later deliveries
+     *
+     * @param eventId id of the event
+     */
+    void markHandled(String eventId);
+}
@@ -0,0 +1,47 @@
+package ip.project.backend.backend.repository;
+
+import ip.project.backend.backend.model.ProcessedStripeEvent;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+
+class ProcessedStripeEventRepositoryCustomImpl implements ProcessedStripeEventRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    ProcessedStripeEventRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void scheduleRetry(String eventId, String payload, String signature, int attempts, Date retryAt) {
+        Update update = new Update()
+                .set("payload", payload)
+                .set("signature", signature)
+                .set("attempts", attempts)
+                .set("retryAt", retryAt);
+        mongoTemplate.updateFirst(byEventId(eventId), update, ProcessedStripeEvent.class);
+    }
+
+    @Override
+    public boolean claimRetry(String eventId, Date retryAt, Date leaseUntil) {
+        Query query = new Query(Criteria.where("_id").is(eventId).and("retryAt").is(retryAt));
+        return mongoTemplate.updateFirst(query, new Update().set("retryAt", leaseUntil), ProcessedStripeEvent.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public void markHandled(String eventId) {
+        Update update = new Update()
+                .unset("payload")
+                .unset("signature")
+                .unset("retryAt");
+        mongoTemplate.updateFirst(byEventId(eventId), update, ProcessedStripeEvent.class);
+    }
+
+    private static Query byEventId(String eventId) {
+        return new Query(Criteria.where("_id").is(eventId));
+    }
+}
@@ -5,9 +5,12 @@ import org.bson.types.ObjectId;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface StockRepository extends MongoRepository<Stock, ObjectId> {
+public interface StockRepository extends MongoRepository<Stock, ObjectId>, StockRepositoryCustom {
     Optional<Stock> findStockByProductId(String productId);
+    List<Stock> findByProductIdIn(Collection<String> productIds);
 }
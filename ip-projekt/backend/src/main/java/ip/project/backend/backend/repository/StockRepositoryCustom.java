@@ -0,0 +1,55 @@
+package ip.project.backend.backend.repository;
+
+import ip.project.backend.backend.model.Stock;
+
+import java.util.Optional;
+
+/**
+ * atomic stock changes. every method is one findAndModify, so concurrent registers never overwrite each other
+ */
+public interface StockRepositoryCustom {
+
+    /**
+     * decreases the quantity, but only if at least amount is in stock
+     *
+     * @param productId product of the stock
+     * @param amount    units to take, greater than 0
+     * @return returns the stock after the change, empty if there is no stock or not enough units
+     */
+    Optional<Stock> decrementQuantity(String productId, int amount);
+
+    /**
+     * decreases the quantity without checking it, e.g. for units which are already paid. the quantity
+     * may go below zero, which shows an oversold product. a missing stock is not created
+     *
+     * @param productId product of the stock
+     * @param amount    units to take, greater than 0
+     * @return returns the stock after the change, empty if there is no stock
+     */
+    Optional<Stock> takeQuantity(String productId, int amount);
+
+    /**
+     * increases the quantity, a missing stock is created with the amount
+     *
+     * @param productId product of the stock
+     * @param amount    units to add, greater than 0
+     * @return returns the stock after the change
+     */
+    Stock incrementQuantity(String productId, int amount);
+
+    /**
+     * sets the quantity, a missing stock is created
+     *
+     * @param productId product of the stock
+     * @param quantity  new quantity
+     * @return returns the stock after the change
+     */
+    Stock setQuantity(String productId, int quantity);
+
+    /**
+     * sets quantity and repurchase flags, a missing stock is created
+     *
+     * @return returns the stock after the change
+     */
+    Stock upsertStock(String productId, int quantity, boolean repurchased, boolean shouldBeRepurchased);
+}
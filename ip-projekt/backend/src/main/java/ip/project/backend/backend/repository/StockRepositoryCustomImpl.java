@@ -0,0 +1,72 @@
+package ip.project.backend.backend.repository;
+
+import ip.project.backend.backend.model.Stock;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Optional;
+
+class StockRepositoryCustomImpl implements StockRepositoryCustom {
+
+    private static final FindAndModifyOptions RETURN_NEW = FindAndModifyOptions.options().returnNew(true);
+    private static final FindAndModifyOptions UPSERT = FindAndModifyOptions.options().returnNew(true).upsert(true);
+
+    private final MongoTemplate mongoTemplate;
+
+    StockRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Optional<Stock> decrementQuantity(String productId, int amount) {
+        // the guard is part of the match, so two registers can never both take the last unit
+        Query query = new Query(Criteria.where("productId").is(productId).and("quantity").gte(amount));
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, new Update().inc("quantity", -amount), RETURN_NEW, Stock.class));
+    }
+
+    @Override
+    public Optional<Stock> takeQuantity(String productId, int amount) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(byProductId(productId), new Update().inc("quantity", -amount), RETURN_NEW, Stock.class));
+    }
+
+    @Override
+    public Stock incrementQuantity(String productId, int amount) {
+        Update update = new Update().inc("quantity", amount)
+                .setOnInsert("repurchased", false)
+                .setOnInsert("shouldBeRepurchased", false);
+        return upsert(productId, update);
+    }
+
+    @Override
+    public Stock setQuantity(String productId, int quantity) {
+        Update update = new Update().set("quantity", quantity)
+                .setOnInsert("repurchased", false)
+                .setOnInsert("shouldBeRepurchased", false);
+        return upsert(productId, update);
+    }
+
+    @Override
+    public Stock upsertStock(String productId, int quantity, boolean repurchased, boolean shouldBeRepurchased) {
+        Update update = new Update().set("quantity", quantity)
+                .set("repurchased", repurchased)
+                .set("shouldBeRepurchased", shouldBeRepurchased);
+        return upsert(productId, update);
+    }
+
+    private Stock upsert(String productId, Update update) {
+        try {
+            return mongoTemplate.findAndModify(byProductId(productId), update, UPSERT, Stock.class);
+        } catch (DuplicateKeyException e) {
+            // a concurrent upsert inserted the document first, the retry matches it and updates instead
+            return mongoTemplate.findAndModify(byProductId(productId), update, UPSERT, Stock.class);
+        }
+    }
+
+    private static Query byProductId(String productId) {
+        return new Query(Criteria.where("productId").is(productId));
+    }
+}
@@ -0,0 +1,11 @@
+package ip.project.backend.backend.repository;
+
+import ip.project.backend.backend.model.StockReservation;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StockReservationRepository extends MongoRepository<StockReservation, ObjectId> {
+    long deleteByReservationId(String reservationId);
+}
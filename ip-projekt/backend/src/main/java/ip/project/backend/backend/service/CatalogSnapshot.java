@@ -0,0 +1,128 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.modeldto.ProductDto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * immutable view of the whole catalog with hash indexes by productId and by upcCode.
+ * cached as one value under the "all" key of AllProducts, so list and indexes are always replaced together
+ * and a barcode scan is a single map lookup
+ */
+public final class CatalogSnapshot {
+
+    private final List<ProductDto> products;
+    private final Map<String, ProductDto> byId;
+    private final Map<String, ProductDto> byUpcCode;
+
+    // built on the first search, a changed catalog is a new snapshot with a new index
+    private volatile ProductSearchIndex searchIndex;
+
+    private CatalogSnapshot(List<ProductDto> products, Map<String, ProductDto> byId, Map<String, ProductDto> byUpcCode) {
+        this.products = products;
+        this.byId = byId;
+        this.byUpcCode = byUpcCode;
+    }
+
+    /**
+     * builds the indexes for the given products. if two products share a upcCode the first one wins
+     *
+     * @param products all products of the catalog
+     * @return returns the snapshot
+     */
+    public static CatalogSnapshot of(List<ProductDto> products) {
+        List<ProductDto> copy = products == null ? List.of() : List.copyOf(products);
+        Map<String, ProductDto> byId = new HashMap<>(Math.max(16, copy.size() * 2));
+        Map<String, ProductDto> byUpcCode = new HashMap<>(Math.max(16, copy.size() * 2));
+        for (ProductDto product : copy) {
+            if (product.getProductId() != null) {
+                byId.putIfAbsent(product.getProductId(), product);
+            }
+            if (product.getUpcCode() != null) {
+                byUpcCode.putIfAbsent(product.getUpcCode(), product);
+            }
+        }
+        return new CatalogSnapshot(copy, Collections.unmodifiableMap(byId), Collections.unmodifiableMap(byUpcCode));
+    }
+
+    /**
+     * returns a new snapshot in which the product replaces the one with the same productId (same position)
+     * or is appended if it is new. indexes are rebuilt, so a changed upcCode does not leave an old index entry
+     *
+     * @param product product to insert or replace
+     * @return returns the new snapshot, this snapshot is not changed
+     */
+    public CatalogSnapshot withProduct(ProductDto product) {
+        List<ProductDto> changed = new ArrayList<>(products.size() + 1);
+        boolean replaced = false;
+        for (ProductDto existing : products) {
+            if (!replaced && existing.getProductId() != null && existing.getProductId().equals(product.getProductId())) {
+                changed.add(product);
+                replaced = true;
+            } else {
+                changed.add(existing);
+            }
+        }
+        if (!replaced) {
+            changed.add(product);
+        }
+        return of(changed);
+    }
+
+    /**
+     * returns a new snapshot without the product with the given productId
+     *
+     * @param productId id of the product to remove
+     * @return returns the new snapshot, this snapshot is not changed
+     */
+    public CatalogSnapshot withoutProduct(String productId) {
+        if (!byId.containsKey(productId)) {
+            return this;
+        }
+        return of(products.stream()
+                .filter(existing -> !productId.equals(existing.getProductId()))
+                .toList());
+    }
+
+    public List<ProductDto> getProducts() {
+        return products;
+    }
+
+    public Optional<ProductDto> findById(String productId) {
+        return productId == null ? Optional.empty() : Optional.ofNullable(byId.get(productId));
+    }
+
+    public Optional<ProductDto> findByUpcCode(String upcCode) {
+        return upcCode == null ? Optional.empty() : Optional.ofNullable(byUpcCode.get(upcCode));
+    }
+
+    /**
+     * returns the search index of this snapshot, builds it on the first call
+     */
+    public ProductSearchIndex getSearchIndex() {
+        ProductSearchIndex index = searchIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = searchIndex;
+                if (index == null) {
+                    index = ProductSearchIndex.build(products);
+                    searchIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    public boolean isEmpty() {
+        return products.isEmpty();
+    }
+}
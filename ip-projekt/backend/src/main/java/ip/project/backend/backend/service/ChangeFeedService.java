@@ -0,0 +1,275 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.modeldto.ChangeEventDto;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * pushes product, price and stock changes to the connected terminals as server-sent events.
+ * connections are async servlet requests, so an idle terminal holds no thread. every terminal has its own bounded
+ * queue which is drained on a virtual thread, so a slow terminal never holds up the others; a terminal which falls
+ * more than the queue size behind gets a "resync" event instead of the events it could not take. the last events
+ * are kept, so a terminal which reconnects with Last-Event-ID only gets what it missed, or a "resync" event if that
+ * is no longer available. event ids are "epoch-sequence", so after a restart of the backend the old ids lead to a
+ * resync as well
+ */
+@Service
+public class ChangeFeedService {
+
+    public static final String RESYNC_EVENT = "resync";
+
+    private final Logger logger = LoggerFactory.getLogger(ChangeFeedService.class);
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<ChangeEventDto> history = new ArrayDeque<>();
+    private final Executor sender;
+    private final int maxSubscribers;
+    // slots taken by connected terminals, taken before the check so concurrent connects can not exceed the maximum
+    private final AtomicInteger connected = new AtomicInteger();
+    private final int historySize;
+    private final int queueSize;
+    private final long emitterTimeoutMs;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private long sequence;
+
+    @Autowired
+    public ChangeFeedService(@Value("${changes.max-subscribers:500}") int maxSubscribers,
+                             @Value("${changes.history-size:1000}") int historySize,
+                             @Value("${changes.subscriber-queue-size:100}") int queueSize,
+                             @Value("${changes.emitter-timeout-ms:1800000}") long emitterTimeoutMs) {
+        this(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("change-feed-", 0).factory()),
+                maxSubscribers, historySize, queueSize, emitterTimeoutMs);
+    }
+
+    ChangeFeedService(Executor sender, int maxSubscribers, int historySize, int queueSize, long emitterTimeoutMs) {
+        this.sender = sender;
+        this.maxSubscribers = maxSubscribers;
+        this.historySize = historySize;
+        this.queueSize = queueSize;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+    }
+
+    /**
+     * publishes a change to all connected terminals. returns right away, the events are sent by the queues of the
+     * terminals
+     *
+     * @param type      event type, one of the constants in {@link ChangeEventDto}
+     * @param productId product the change belongs to
+     * @param payload   new state of the product or stock, null if it was deleted
+     */
+    public void publish(String type, String productId, Object payload) {
+        // sequence, history and queue order have to match, otherwise a reconnecting terminal could miss an event
+        synchronized (history) {
+            ChangeEventDto event = new ChangeEventDto(++sequence, type, productId, System.currentTimeMillis(), payload);
+            history.addLast(event);
+            while (history.size() > historySize) {
+                history.removeFirst();
+            }
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    /**
+     * connects a terminal to the feed
+     *
+     * @param lastEventId id of the last event the terminal has seen, null on the first connect
+     * @return returns the emitter, empty if the maximum number of terminals is connected
+     */
+    public Optional<SseEmitter> subscribe(String lastEventId) {
+        if (connected.incrementAndGet() > maxSubscribers) {
+            connected.decrementAndGet();
+            logger.warn("Change feed is full ({} subscribers), rejecting terminal", subscribers.size());
+            return Optional.empty();
+        }
+
+        SseEmitter emitter = createEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+
+        synchronized (history) {
+            long lastSeen = parseSequence(lastEventId);
+            List<ChangeEventDto> missed = lastEventId == null ? List.of() : history.stream()
+                    .filter(event -> event.getSequence() > lastSeen)
+                    .toList();
+            // no gap means the oldest kept event directly follows the last seen one
+            boolean gap = lastEventId != null && (lastSeen < 0 || lastSeen > sequence
+                    || (lastSeen < sequence && (missed.isEmpty() || missed.get(0).getSequence() != lastSeen + 1)));
+            // added and filled under the lock, so the terminal gets every event exactly once and in order
+            subscribers.add(subscriber);
+            if (gap) {
+                subscriber.resync(sequence);
+            } else {
+                missed.forEach(subscriber::offer);
+            }
+        }
+        return Optional.of(emitter);
+    }
+
+    /**
+     * sends a comment to every terminal, so proxies do not close idle connections and dead ones are noticed
+     */
+    @Scheduled(fixedDelayString = "${changes.heartbeat-ms:25000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeat();
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> {
+            subscriber.close();
+            subscriber.emitter.complete();
+        });
+        if (sender instanceof ExecutorService executorService) {
+            executorService.shutdown();
+        }
+    }
+
+    SseEmitter createEmitter(long timeoutMs) {
+        return new SseEmitter(timeoutMs);
+    }
+
+    // sequence of an event id of this instance, -1 if the id is unknown or from an earlier run
+    long parseSequence(String eventId) {
+        if (eventId == null || !eventId.startsWith(epoch + "-")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(epoch.length() + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    private SseEmitter.SseEventBuilder toSse(ChangeEventDto event) {
+        return SseEmitter.event()
+                .id(eventId(event.getSequence()))
+                .name(event.getType())
+                .data(event, MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * queue of one terminal. at most one sender drains it at a time, so the events of a terminal stay in order
+     */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final ArrayDeque<SseEmitter.SseEventBuilder> queue = new ArrayDeque<>();
+        private boolean draining;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        // removes the terminal and frees its slot, only once however often the emitter reports its end
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscribers.remove(this);
+                connected.decrementAndGet();
+            }
+        }
+
+        private void offer(ChangeEventDto event) {
+            synchronized (this) {
+                if (queue.size() >= queueSize) {
+                    // the terminal is too slow, it reloads everything up to this event instead
+                    logger.info("Terminal fell {} events behind, sending resync", queue.size());
+                    queue.clear();
+                    queue.addLast(resyncEvent(event.getSequence()));
+                } else {
+                    queue.addLast(toSse(event));
+                }
+            }
+            startDraining();
+        }
+
+        private void resync(long current) {
+            synchronized (this) {
+                queue.clear();
+                queue.addLast(resyncEvent(current));
+            }
+            startDraining();
+        }
+
+        private void heartbeat() {
+            synchronized (this) {
+                // queued events keep the connection busy anyway
+                if (!queue.isEmpty()) {
+                    return;
+                }
+                queue.addLast(SseEmitter.event().comment("heartbeat"));
+            }
+            startDraining();
+        }
+
+        private SseEmitter.SseEventBuilder resyncEvent(long current) {
+            return SseEmitter.event().id(eventId(current)).name(RESYNC_EVENT).data("");
+        }
+
+        private void startDraining() {
+            synchronized (this) {
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            sender.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                SseEmitter.SseEventBuilder event;
+                synchronized (this) {
+                    event = queue.pollFirst();
+                    if (event == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    // the terminal is gone, it reconnects with its Last-Event-ID
+                    close();
+                    synchronized (this) {
+                        queue.clear();
+                        draining = false;
+                    }
+                    emitter.completeWithError(e);
+                    return;
+                }
+            }
+        }
+    }
+}
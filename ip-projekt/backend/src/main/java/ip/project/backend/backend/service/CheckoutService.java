@@ -8,10 +8,17 @@ import ip.project.backend.backend.model.ProductWithId;
 import ip.project.backend.backend.modeldto.CheckoutDto;
 import ip.project.backend.backend.modeldto.ProductWithQuantity;
 import ip.project.backend.backend.repository.CheckoutRepository;
-import ip.project.backend.backend.util.StripeConnection;
+import ip.project.backend.backend.util.InsufficientStockException;
+import ip.project.backend.backend.util.StripeGateway;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -23,23 +30,36 @@ import java.util.Optional;
 public class CheckoutService {
 
     private static final String SUCCESS_URL = "http://localhost:3000/checkout/success";
+    // stripe accepts session expiries between 30 minutes and 24 hours
+    private static final int MIN_SESSION_MINUTES = 31;
+    private static final int MAX_SESSION_MINUTES = 24 * 60;
     private final CheckoutRepository checkoutRepository;
-    private final StripeConnection stripeConnection;
+    private final StripeGateway stripeGateway;
+    private final StockReservationService stockReservationService;
+    private final StockService stockService;
+    private final MongoTemplate mongoTemplate;
+    private final int sessionMinutes;
     private static final Logger logger = LoggerFactory.getLogger(CheckoutService.class);
 
 
     @Autowired
-    public CheckoutService(CheckoutRepository checkoutRepository, StripeConnection stripeConnection) {
+    public CheckoutService(CheckoutRepository checkoutRepository, StripeGateway stripeGateway, StockReservationService stockReservationService,
+                           StockService stockService, MongoTemplate mongoTemplate,
+                           @Value("${checkout.session-minutes:35}") int sessionMinutes) {
         this.checkoutRepository = checkoutRepository;
-        this.stripeConnection = stripeConnection;
-
+        this.stripeGateway = stripeGateway;
+        this.stockReservationService = stockReservationService;
+        this.stockService = stockService;
+        this.mongoTemplate = mongoTemplate;
+        this.sessionMinutes = Math.clamp(sessionMinutes, MIN_SESSION_MINUTES, MAX_SESSION_MINUTES);
     }
 
 
     /**
-     * creates a checkout session for stripe
+     * creates a checkout session for stripe. the products are reserved until the session expires
      * @param checkoutDto the checkout object which should be saved
      * @return returns Optional List with Client Secret and Session id
+     * @throws InsufficientStockException if a product has not enough units available to sell
      */
     public Optional<String> createCheckout(CheckoutDto checkoutDto) {
         if (checkoutDto.getProducts().isEmpty()) {
@@ -49,6 +69,10 @@ public class CheckoutService {
 
         List<SessionCreateParams.LineItem> lineItem = createLineItems(checkoutDto);
 
+        // reserved before the session exists, so a customer never pays for units which are gone
+        Date expiresAt = new Date(System.currentTimeMillis() + sessionMinutes * 60_000L);
+        String reservationId = stockReservationService.reserve(checkoutDto.getProducts(), expiresAt);
+
         SessionCreateParams params = SessionCreateParams.builder()
                 .setCustomerEmail("nofill@localhost.local")
                 .addAllLineItem(lineItem)
@@ -56,21 +80,115 @@ public class CheckoutService {
                 .setMode(SessionCreateParams.Mode.PAYMENT)
                 .setAllowPromotionCodes(true) // enable coupon codes
                 .setReturnUrl(SUCCESS_URL)
+                .setClientReferenceId(reservationId)
+                .setExpiresAt(expiresAt.getTime() / 1000)
                 .build();
 
         try {
-            // Nutzt jetzt deinen Stripe-Client über StripeConnection
-            Session session = stripeConnection.getStripeClient().checkout().sessions().create(params);
+            Session session = stripeGateway.write(client -> client.checkout().sessions().create(params));
             logger.info("Created checkout session: {}", session.getId());
-            insertCheckout(checkoutDto, session.getId());
+            insertCheckout(checkoutDto, session.getId(), reservationId);
 
             return Optional.of(session.getClientSecret());
         } catch (StripeException e) {
             logger.error("Error creating Stripe checkout session: {}", e.getMessage());
+            stockReservationService.release(reservationId);
             return Optional.empty();
         }
     }
 
+    /**
+     * takes the products of a paid checkout from stock and releases its reservation.
+     * every line is claimed on the checkout before its stock is taken, so a repeated call or a late webhook never
+     * takes a line twice. the checkout is marked committed after the last line, if taking stock fails the claim of
+     * that line is given back and the commit can simply be called again
+     *
+     * @param sessionId id of the stripe checkout session
+     * @return returns true if the checkout was committed by this call
+     */
+    public boolean commitCheckout(String sessionId) {
+        Optional<Checkout> found = checkoutRepository.findBySessionId(sessionId);
+        if (found.isEmpty() || found.get().isCommitted()) {
+            logger.info("Checkout {} is unknown or already committed", sessionId);
+            return false;
+        }
+        Checkout checkout = found.get();
+        List<ProductWithId> products = checkout.getProducts();
+        for (int line = 0; line < products.size(); line++) {
+            Query unclaimed = new Query(Criteria.where("sessionId").is(sessionId).and("takenLines").ne(line));
+            if (mongoTemplate.updateFirst(unclaimed, new Update().addToSet("takenLines", line), Checkout.class).getModifiedCount() == 0) {
+                continue;
+            }
+            try {
+                stockService.takeReservedStock(products.get(line).getProductId(), products.get(line).getQuantity());
+            } catch (RuntimeException e) {
+                mongoTemplate.updateFirst(new Query(Criteria.where("sessionId").is(sessionId)), new Update().pull("takenLines", line), Checkout.class);
+                throw e;
+            }
+        }
+
+        Query uncommitted = new Query(Criteria.where("sessionId").is(sessionId).and("committed").ne(true));
+        if (mongoTemplate.updateFirst(uncommitted, new Update().set("committed", true), Checkout.class).getModifiedCount() == 0) {
+            logger.info("Checkout {} was committed concurrently", sessionId);
+            return false;
+        }
+        // the stock is taken before the reservation is released, so the units are never available twice
+        if (checkout.getReservationId() != null) {
+            stockReservationService.release(checkout.getReservationId());
+        }
+        logger.info("Committed checkout {} with {} products", sessionId, products.size());
+        return true;
+    }
+
+    /**
+     * releases the reservation of a checkout session which expired without payment,
+     * so its units can be sold before the ttl index removes the reservation
+     *
+     * @param sessionId id of the stripe checkout session
+     */
+    public void expireCheckout(String sessionId) {
+        checkoutRepository.findBySessionId(sessionId)
+                .filter(checkout -> !checkout.isCommitted() && checkout.getReservationId() != null)
+                .ifPresent(checkout -> {
+                    stockReservationService.release(checkout.getReservationId());
+                    logger.info("Checkout {} expired, reservation released", sessionId);
+                });
+    }
+
+    /**
+     * commits the checkout if stripe reports the session as paid, called when the customer returns from the payment
+     *
+     * @param sessionId id of the stripe checkout session
+     * @return returns true if the session is paid, empty if stripe or the database could not be reached
+     */
+    public Optional<Boolean> completeCheckout(String sessionId) {
+        try {
+            Session session = stripeGateway.read(client -> client.checkout().sessions().retrieve(sessionId));
+            if (!"paid".equals(session.getPaymentStatus())) {
+                logger.info("Checkout {} is not paid yet, payment status {}", sessionId, session.getPaymentStatus());
+                return Optional.of(false);
+            }
+            commitCheckout(sessionId);
+            return Optional.of(true);
+        } catch (StripeException e) {
+            logger.error("Error retrieving Stripe checkout session {}: {}", sessionId, e.getMessage());
+            return Optional.empty();
+        } catch (DataAccessException e) {
+            // the lines taken so far stay claimed, the next call finishes the commit
+            logger.error("Could not commit checkout {}: {}", sessionId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * card payment needs stripe. while stripe is not reachable the register should fall back to cash
+     *
+     * @return returns false while calls to stripe fail fast
+     */
+    public boolean isCardPaymentAvailable() {
+        return stripeGateway.isAvailable();
+    }
+
     /**
      * creates the line items for the stripe checkout session
      * @param checkoutDto checkout object
@@ -100,6 +218,16 @@ public class CheckoutService {
      * @param sessionId current sessionId
      */
     public void insertCheckout(CheckoutDto checkoutDto, String sessionId) {
+        insertCheckout(checkoutDto, sessionId, null);
+    }
+
+    /**
+     * inserts checkout into db
+     * @param checkoutDto objekt which holds all products which have been sold
+     * @param sessionId current sessionId
+     * @param reservationId reservation of the products, null if nothing was reserved
+     */
+    public void insertCheckout(CheckoutDto checkoutDto, String sessionId, String reservationId) {
         logger.info("Inserting checkout with session ID: {} and {} products", 
                 sessionId, checkoutDto.getProducts().size());
 
@@ -114,7 +242,7 @@ public class CheckoutService {
                 })
                 .toList();
 
-        Checkout checkout = new Checkout(sessionId, new Date(), products);
+        Checkout checkout = new Checkout(sessionId, new Date(), products, reservationId);
         logger.debug("Created checkout object with session ID: {} and {} products", 
                 sessionId, products.size());
 
@@ -8,7 +8,7 @@ import com.stripe.param.CouponListParams;
 import com.stripe.param.PromotionCodeCreateParams;
 import ip.project.backend.backend.modeldto.CouponDto;
 import ip.project.backend.backend.modeldto.NewCouponDto;
-import ip.project.backend.backend.util.StripeConnection;
+import ip.project.backend.backend.util.StripeGateway;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,16 +26,19 @@ import static ip.project.backend.backend.util.StripeUtils.createCouponParams;
 public class CouponService {
 
     private final Logger logger = LoggerFactory.getLogger(CouponService.class);
-    private final StripeConnection stripeConnection;
+    private final StripeGateway stripeGateway;
 
     // to fasten up checks with stripe we keep a local copy of the coupons to avoid unnecessary calls
     // this is updated if a coupon is created, updated or deleted
     private List<CouponDto> couponDtoList = null;
 
+    // true if the last refresh from stripe failed, the local copy is then served as last known state
+    private volatile boolean couponsStale = false;
+
 
     @Autowired
-    public CouponService(StripeConnection stripeConnection) {
-        this.stripeConnection = stripeConnection;
+    public CouponService(StripeGateway stripeGateway) {
+        this.stripeGateway = stripeGateway;
     }
 
 
@@ -81,7 +84,7 @@ public class CouponService {
 
         try {
             // Create the coupon
-            Coupon coupon = stripeConnection.getStripeClient().coupons().create(params);
+            Coupon coupon = stripeGateway.write(client -> client.coupons().create(params));
 
             // Create the promotion code with the same name as the coupon
             PromotionCodeCreateParams promotionCodeParams = PromotionCodeCreateParams.builder()
@@ -89,7 +92,7 @@ public class CouponService {
                     .setCode(newCouponDto.getName())
                     .build();
 
-            stripeConnection.getStripeClient().promotionCodes().create(promotionCodeParams);
+            stripeGateway.write(client -> client.promotionCodes().create(promotionCodeParams));
 
             addNewCouponToList(coupon);
         } catch (StripeException e) {
@@ -104,13 +107,14 @@ public class CouponService {
     /**
      * Returns a list of all coupons
      * This method retrieves all coupons from the local cache if available, otherwise it fetches them from Stripe.
+     * If the last refresh failed, it is tried again once Stripe is reachable. Until then the last known coupons are returned.
      *
      * @return a list of CouponDto objects representing all coupons
      */
     public List<CouponDto> getAllCoupons() {
 
         // check if local cache is available and return
-        if (couponDtoList != null) {
+        if (couponDtoList != null && (!couponsStale || !stripeGateway.isAvailable())) {
             return couponDtoList;
         }
 
@@ -134,7 +138,7 @@ public class CouponService {
 
         try {
             // remove from stripe
-            stripeConnection.getStripeClient().coupons().delete(couponDto.get().getId());
+            stripeGateway.write(client -> client.coupons().delete(couponDto.get().getId()));
 
             // remove from local cache
             couponDtoList.remove(couponDto.get());
@@ -154,7 +158,7 @@ public class CouponService {
      */
     void mapCollectionToDtoObject(StripeCollection<Coupon> collection) {
         this.couponDtoList = collection.getData()
-                .parallelStream()
+                .stream()
                 .map(coupon -> {
                     CouponDto dto = new CouponDto();
                     dto.setId(coupon.getId());
@@ -181,7 +185,7 @@ public class CouponService {
             couponDtoList = new ArrayList<>();
         }
         return couponDtoList
-                .parallelStream()
+                .stream()
                 .filter(coupon -> coupon.getName().equals(name))
                 .findFirst();
     }
@@ -255,17 +259,28 @@ public class CouponService {
     /**
      * Fetches all coupons from Stripe and updates the local cache.
      * used when the application starts and the cache is not initialized. therefore it is not called frequently
+     * if stripe fails the current local copy is kept
      */
     void getCouponsFromStripe() {
         CouponListParams params = CouponListParams.builder().setLimit(100L).build();
         try {
-            StripeCollection<Coupon> coupons = stripeConnection.getStripeClient().coupons().list(params);
+            StripeCollection<Coupon> coupons = stripeGateway.read(client -> client.coupons().list(params));
             mapCollectionToDtoObject(coupons);
-
+            couponsStale = false;
         } catch (StripeException e) {
-            logger.error(e.getMessage());
-            couponDtoList = new ArrayList<>();
+            logger.error("Could not load coupons from Stripe, keeping last known coupons: {}", e.getMessage());
+            if (couponDtoList == null) {
+                couponDtoList = new ArrayList<>();
+            }
+            couponsStale = true;
         }
     }
 
+    /**
+     * @return returns true if the coupons could not be refreshed from stripe and the last known state is served
+     */
+    public boolean isServingStaleData() {
+        return couponsStale;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.model.CatalogProduct;
+import ip.project.backend.backend.model.Order;
+import ip.project.backend.backend.model.OrderLineItem;
+import ip.project.backend.backend.repository.CatalogRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * adds line items to orders which only have product names, i.e. orders stored before line items existed and orders
+ * of terminals which do not send them yet. names are looked up in the catalog, equal names become one line item with
+ * their count as quantity and today's prices. such orders are marked with lineItemsEstimated, since the price at the
+ * time of the sale is not known anymore. runs in batches and only writes orders which still have no line items,
+ * so it can be interrupted and run on several instances
+ */
+@Service
+public class OrderLineItemMigration {
+
+    private final Logger logger = LoggerFactory.getLogger(OrderLineItemMigration.class);
+    private final MongoTemplate mongoTemplate;
+    private final CatalogRepository catalogRepository;
+    private final SalesRollupService salesRollupService;
+    private final boolean enabled;
+    private final int batchSize;
+
+    @Autowired
+    public OrderLineItemMigration(MongoTemplate mongoTemplate, CatalogRepository catalogRepository, SalesRollupService salesRollupService,
+                                  @Value("${orders.line-item-migration.enabled:true}") boolean enabled,
+                                  @Value("${orders.line-item-migration.batch-size:500}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.catalogRepository = catalogRepository;
+        this.salesRollupService = salesRollupService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${orders.line-item-migration.interval-ms:600000}", initialDelayString = "${orders.line-item-migration.initial-delay-ms:60000}")
+    public void migrateScheduled() {
+        // migrated orders are counted in the sales rollup right away instead of on its next run
+        if (enabled && migrate() > 0) {
+            salesRollupService.rollUpPending();
+        }
+    }
+
+    /**
+     * migrates all orders without line items
+     *
+     * @return returns the number of migrated orders
+     */
+    public int migrate() {
+        int migrated = 0;
+        while (true) {
+            Query query = new Query(unmigrated()).limit(batchSize);
+            query.fields().include("productNames");
+            List<Order> orders = mongoTemplate.find(query, Order.class);
+            if (orders.isEmpty()) {
+                break;
+            }
+
+            Map<String, CatalogProduct> catalogByName = loadCatalog(orders);
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Order.class);
+            for (Order order : orders) {
+                // a terminal or another instance may have written line items in the meantime
+                Query unmigrated = new Query(Criteria.where("_id").is(order.getId()).and("lineItems").exists(false));
+                bulk.updateOne(unmigrated, new Update()
+                        .set("lineItems", deriveLineItems(order.getProducts(), catalogByName))
+                        .set("lineItemsEstimated", true));
+            }
+            try {
+                bulk.execute();
+            } catch (BulkOperationException e) {
+                // the failed orders are selected again on the next run
+                logger.error("Line item migration failed for {} orders: {}", e.getErrors().size(), e.getMessage());
+                break;
+            }
+            migrated += orders.size();
+            if (orders.size() < batchSize) {
+                break;
+            }
+        }
+        if (migrated > 0) {
+            logger.info("Added line items to {} orders", migrated);
+        }
+        return migrated;
+    }
+
+    // orders without line items are never rolled up, so the rolledUp index narrows the query to the orders which
+    // are not in the rollup yet instead of scanning the whole collection on every run
+    static Criteria unmigrated() {
+        return Criteria.where("rolledUp").in(false, null).and("lineItems").exists(false);
+    }
+
+    private Map<String, CatalogProduct> loadCatalog(List<Order> orders) {
+        Set<String> names = new HashSet<>();
+        for (Order order : orders) {
+            if (order.getProducts() != null) {
+                names.addAll(order.getProducts());
+            }
+        }
+        Map<String, CatalogProduct> catalogByName = new HashMap<>();
+        for (CatalogProduct product : catalogRepository.findByProductNameIn(names)) {
+            // names are not unique, the active product is the one which is sold today
+            catalogByName.merge(product.getProductName(), product, (first, second) -> first.isActive() ? first : second);
+        }
+        return catalogByName;
+    }
+
+    // one line item per distinct name, in the order the names were scanned
+    static List<OrderLineItem> deriveLineItems(List<String> productNames, Map<String, CatalogProduct> catalogByName) {
+        if (productNames == null) {
+            return List.of();
+        }
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (String name : productNames) {
+            quantities.merge(name, 1, Integer::sum);
+        }
+        List<OrderLineItem> lineItems = new ArrayList<>(quantities.size());
+        quantities.forEach((name, quantity) -> {
+            CatalogProduct product = catalogByName.get(name);
+            // unknown products keep their name, so they still count for quantities
+            lineItems.add(product == null
+                    ? new OrderLineItem(null, name, quantity, null, null)
+                    : new OrderLineItem(product.getProductId(), name, quantity,
+                            OrderLineItem.toCents(product.getListPrice()), OrderLineItem.toCents(product.getCostPrice())));
+        });
+        return lineItems;
+    }
+}
@@ -1,15 +1,46 @@
 package ip.project.backend.backend.service;
 
+import com.mongodb.bulk.BulkWriteError;
+import ip.project.backend.backend.mapper.OrderMapper;
 import ip.project.backend.backend.model.Order;
+import ip.project.backend.backend.model.OrderLineItem;
+import ip.project.backend.backend.modeldto.OrderDto;
+import ip.project.backend.backend.modeldto.SalesReportDto;
+import ip.project.backend.backend.modeldto.SyncOrderDto;
+import ip.project.backend.backend.modeldto.SyncOrderResultDto;
 import ip.project.backend.backend.repository.OrderRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.aggregation.Fields;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Service for managing order-related operations.
@@ -21,11 +52,21 @@ public class OrderService {
 
     private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
 
+    // mongo error code of a unique index violation
+    private static final int DUPLICATE_KEY = 11000;
+
+    // orders per cursor batch of an export, bounds the memory of a running export
+    static final int EXPORT_BATCH_SIZE = 500;
+
     private final OrderRepository orderRepository;
+    private final MongoTemplate mongoTemplate;
+    private final SalesRollupService salesRollupService;
 
     @Autowired
-    public OrderService(OrderRepository orderRepository) {
+    public OrderService(OrderRepository orderRepository, MongoTemplate mongoTemplate, SalesRollupService salesRollupService) {
         this.orderRepository = orderRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.salesRollupService = salesRollupService;
     }
 
     /**
@@ -70,6 +111,151 @@ public class OrderService {
         }
     }
 
+    /**
+     * Stores a new order with a single insert. The unique index on orderId rejects a second order with the same ID,
+     * in that case the stored order is returned instead, so a retried checkout does not create a duplicate.
+     *
+     * @param orderId The idempotency key of the checkout, used as order ID
+     * @param products List of product names included in the order
+     * @param totalPrice The total price of the order
+     * @param date The date when the order was created
+     * @param employeeId The ID of the employee who created the order
+     * @param lineItems The products with quantity and prices, null for terminals which only send product names
+     * @return The stored order, and whether it was created by this call
+     */
+    public PlacedOrder placeOrder(final String orderId, final List<String> products, final BigDecimal totalPrice, final Date date, final Integer employeeId, final List<OrderLineItem> lineItems) {
+        Order order = new Order(orderId, products, totalPrice, date, employeeId, lineItems);
+        // orders without line items are added to the sales rollup after the line item migration
+        order.setRolledUp(lineItems != null);
+        try {
+            Order savedOrder = orderRepository.insert(order);
+            logger.info("Order with ID: {} created successfully", orderId);
+            if (lineItems != null) {
+                salesRollupService.record(List.of(savedOrder));
+            }
+            return new PlacedOrder(savedOrder, true, false);
+        } catch (DuplicateKeyException e) {
+            Order existing = orderRepository.findOrderByOrderId(orderId).orElseThrow(() -> e);
+            boolean conflicting = !sameOrder(existing, order);
+            if (conflicting) {
+                logger.warn("Order ID {} was already used for a different order", orderId);
+            } else {
+                logger.info("Order with ID: {} already exists, returning stored order", orderId);
+            }
+            return new PlacedOrder(existing, false, conflicting);
+        }
+    }
+
+    /**
+     * Stores the sales of a register which was offline. All new orders are written with one unordered bulk insert,
+     * so one failing order does not stop the others. Orders whose key is already stored are replays and are not
+     * written again, the same applies to a key which is sent twice in the batch.
+     *
+     * @param orders The sales with their idempotency keys
+     * @return One result per sale, in the order of the request
+     */
+    public List<SyncOrderResultDto> syncOrders(final List<SyncOrderDto> orders) {
+        SyncOrderResultDto[] results = new SyncOrderResultDto[orders.size()];
+        Order[] byIndex = new Order[orders.size()];
+        Map<String, Integer> firstIndexByKey = new HashMap<>();
+        List<Order> toInsert = new ArrayList<>();
+        List<Integer> insertIndexes = new ArrayList<>();
+
+        for (int i = 0; i < orders.size(); i++) {
+            SyncOrderDto sync = orders.get(i);
+            OrderDto dto = sync.getOrder();
+            byIndex[i] = new Order(sync.getIdempotencyKey(), dto.getProductNames(), dto.getTotalPrice(), dto.getDate(), dto.getEmployeeId(),
+                    OrderMapper.INSTANCE.lineItemDtosToLineItems(dto.getLineItems()));
+            byIndex[i].setRolledUp(byIndex[i].getLineItems() != null);
+            // a key sent twice in the batch is only inserted once and resolved below
+            if (firstIndexByKey.putIfAbsent(sync.getIdempotencyKey(), i) == null) {
+                toInsert.add(byIndex[i]);
+                insertIndexes.add(i);
+            }
+        }
+
+        Set<Integer> duplicates = new HashSet<>();
+        if (!toInsert.isEmpty()) {
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Order.class).insert(toInsert).execute();
+            } catch (BulkOperationException e) {
+                for (BulkWriteError error : e.getErrors()) {
+                    int index = insertIndexes.get(error.getIndex());
+                    if (error.getCode() == DUPLICATE_KEY) {
+                        duplicates.add(index);
+                    } else {
+                        logger.error("Could not sync order {}: {}", byIndex[index].getOrderId(), error.getMessage());
+                        results[index] = new SyncOrderResultDto(byIndex[index].getOrderId(), SyncOrderResultDto.FAILED, error.getMessage());
+                    }
+                }
+            }
+        }
+
+        // one query for all keys which were already stored
+        if (!duplicates.isEmpty()) {
+            Map<String, Order> stored = new HashMap<>();
+            List<String> keys = duplicates.stream().map(index -> byIndex[index].getOrderId()).toList();
+            orderRepository.findByOrderIdIn(keys).forEach(order -> stored.put(order.getOrderId(), order));
+            for (int index : duplicates) {
+                results[index] = compareWithStored(byIndex[index], stored.get(byIndex[index].getOrderId()));
+            }
+        }
+
+        int created = 0;
+        List<Order> rolledUp = new ArrayList<>();
+        for (int index : insertIndexes) {
+            if (results[index] == null) {
+                results[index] = new SyncOrderResultDto(byIndex[index].getOrderId(), SyncOrderResultDto.CREATED, null);
+                created++;
+                if (byIndex[index].getLineItems() != null) {
+                    rolledUp.add(byIndex[index]);
+                }
+            }
+        }
+        salesRollupService.record(rolledUp);
+
+        // keys sent twice in the batch get the result of their first occurrence
+        for (int i = 0; i < orders.size(); i++) {
+            if (results[i] == null) {
+                int first = firstIndexByKey.get(orders.get(i).getIdempotencyKey());
+                results[i] = compareWithFirst(byIndex[i], byIndex[first], results[first]);
+            }
+        }
+
+        logger.info("Synced {} orders: {} created, {} already stored or failed", orders.size(), created, orders.size() - created);
+        return List.of(results);
+    }
+
+    private static SyncOrderResultDto compareWithStored(Order order, Order stored) {
+        if (stored == null) {
+            return new SyncOrderResultDto(order.getOrderId(), SyncOrderResultDto.FAILED, "Duplicate key but no stored order found");
+        }
+        if (!sameOrder(stored, order)) {
+            return new SyncOrderResultDto(order.getOrderId(), SyncOrderResultDto.CONFLICT, "An order with this ID already exists");
+        }
+        return new SyncOrderResultDto(order.getOrderId(), SyncOrderResultDto.REPLAYED, null);
+    }
+
+    private static SyncOrderResultDto compareWithFirst(Order order, Order first, SyncOrderResultDto firstResult) {
+        if (!sameOrder(first, order)) {
+            return new SyncOrderResultDto(order.getOrderId(), SyncOrderResultDto.CONFLICT, "An order with this ID already exists");
+        }
+        if (SyncOrderResultDto.CREATED.equals(firstResult.getStatus()) || SyncOrderResultDto.REPLAYED.equals(firstResult.getStatus())) {
+            return new SyncOrderResultDto(order.getOrderId(), SyncOrderResultDto.REPLAYED, null);
+        }
+        return new SyncOrderResultDto(order.getOrderId(), firstResult.getStatus(), firstResult.getError());
+    }
+
+    // a retry sends the same order again, anything else reuses the key by mistake
+    private static boolean sameOrder(Order existing, Order retried) {
+        return Objects.equals(existing.getEmployeeId(), retried.getEmployeeId())
+                && Objects.equals(existing.getProducts(), retried.getProducts())
+                && (existing.getLineItems() == null || retried.getLineItems() == null
+                    || existing.getLineItems().equals(retried.getLineItems()))
+                && existing.getTotalPrice() != null && retried.getTotalPrice() != null
+                && existing.getTotalPrice().compareTo(retried.getTotalPrice()) == 0;
+    }
+
     /**
      * Retrieves all orders created within a specified time period.
      *
@@ -112,4 +298,132 @@ public class OrderService {
             throw e;
         }
     }
+
+    /**
+     * Streams the orders of a period one at a time, sorted by date. Backed by a Mongo cursor which fetches
+     * {@value #EXPORT_BATCH_SIZE} orders per batch, so the period is never held in memory as a whole.
+     *
+     * @param start The start date of the period (inclusive)
+     * @param end The end date of the period (inclusive)
+     * @param employeeId Optional ID of the employee whose orders are streamed
+     * @param consumer Receives every order
+     * @return The number of streamed orders
+     */
+    public long streamOrdersInPeriod(final Date start, final Date end, final Integer employeeId, final Consumer<Order> consumer) {
+        Criteria criteria = Criteria.where("date").gte(start).lte(end);
+        if (employeeId != null) {
+            criteria = criteria.and("employeeId").is(employeeId);
+        }
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "date"))
+                .cursorBatchSize(EXPORT_BATCH_SIZE);
+
+        long count = 0;
+        try (Stream<Order> orders = mongoTemplate.stream(query, Order.class)) {
+            for (Order order : (Iterable<Order>) orders::iterator) {
+                consumer.accept(order);
+                count++;
+            }
+        }
+        logger.info("Streamed {} orders between {} and {}", count, start, end);
+        return count;
+    }
+
+    /**
+     * Sums the orders of a period in the database, so only one row per group is returned instead of every order.
+     * The match uses the index on date, or on employeeId and date if an employee is given.
+     *
+     * @param start The start date of the period (inclusive)
+     * @param end The end date of the period (inclusive)
+     * @param employeeId Optional ID of the employee whose orders are summed
+     * @param grouping Whether to group by day, hour of the day or employee
+     * @param zone Time zone of the days and hours
+     * @return Revenue, order count and average basket per group, sorted by group
+     */
+    public List<SalesReportDto> getSalesReport(final Date start, final Date end, final Integer employeeId, final ReportGrouping grouping, final ZoneId zone) {
+        logger.info("Creating {} sales report between {} and {}{}", grouping, start, end,
+                employeeId != null ? " for employee ID: " + employeeId : "");
+
+        Criteria criteria = Criteria.where("date").gte(start).lte(end);
+        if (employeeId != null) {
+            criteria = criteria.and("employeeId").is(employeeId);
+        }
+        // totalPrice is stored as string by older versions, $toDecimal sums both strings and decimals exactly
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.project()
+                        .and(groupKey(grouping, zone)).as("key")
+                        .and(ConvertOperators.valueOf("totalPrice").convertToDecimal()).as("amount"),
+                Aggregation.group("key")
+                        .sum("amount").as("revenue")
+                        .count().as("orderCount")
+                        .avg("amount").as("averageBasket"),
+                Aggregation.sort(Sort.Direction.ASC, Fields.UNDERSCORE_ID));
+
+        List<SalesReportDto> report = mongoTemplate.aggregate(aggregation, Order.class, Document.class).getMappedResults().stream()
+                .map(OrderService::toSalesReport)
+                .toList();
+        logger.info("Sales report has {} rows", report.size());
+        return report;
+    }
+
+    private static AggregationExpression groupKey(ReportGrouping grouping, ZoneId zone) {
+        DateOperators.Timezone timezone = DateOperators.Timezone.valueOf(zone.getId());
+        return switch (grouping) {
+            case DAY -> DateOperators.dateOf("date").withTimezone(timezone).toString("%Y-%m-%d");
+            case HOUR -> DateOperators.dateOf("date").withTimezone(timezone).hour();
+            case EMPLOYEE -> ConvertOperators.valueOf("employeeId").convertToInt();
+        };
+    }
+
+    private static SalesReportDto toSalesReport(Document row) {
+        BigDecimal average = decimal(row.get("averageBasket"));
+        return new SalesReportDto(
+                String.valueOf(row.get(Fields.UNDERSCORE_ID)),
+                decimal(row.get("revenue")),
+                ((Number) row.get("orderCount")).longValue(),
+                average != null ? average.setScale(2, RoundingMode.HALF_UP) : null);
+    }
+
+    private static BigDecimal decimal(Object value) {
+        if (value instanceof Decimal128 decimal) {
+            return decimal.bigDecimalValue();
+        }
+        return value instanceof Number number ? new BigDecimal(number.toString()) : null;
+    }
+
+    /**
+     * Groups of {@link #getSalesReport}.
+     */
+    public enum ReportGrouping {
+        DAY, HOUR, EMPLOYEE
+    }
+
+    /**
+     * Result of {@link #placeOrder}: the stored order, whether it was created now and whether the
+     * order ID was already used for a different order.
+     */
+    public static final class PlacedOrder {
+        private final Order order;
+        private final boolean created;
+        private final boolean conflicting;
+
+        public PlacedOrder(Order order, boolean created, boolean conflicting) {
+            this.order = order;
+            this.created = created;
+            this.conflicting = conflicting;
+        }
+
+        public Order getOrder() {
+            return order;
+        }
+
+        public boolean isCreated() {
+            return created;
+        }
+
+        public boolean isConflicting() {
+            return conflicting;
+        }
+    }
 }
@@ -0,0 +1,111 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.model.Employee;
+import ip.project.backend.backend.modeldto.CouponDto;
+import ip.project.backend.backend.modeldto.PosBootstrapDto;
+import ip.project.backend.backend.modeldto.PosProductDto;
+import ip.project.backend.backend.modeldto.ProductDto;
+import ip.project.backend.backend.modeldto.StockDto;
+import ip.project.backend.backend.util.CacheConfig;
+import ip.project.backend.backend.util.StripeExecutor;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * collects everything a register needs on start. products, stock and coupons are loaded in parallel,
+ * products come from the same cache as /api/products/all/active
+ */
+@Service
+public class PosBootstrapService {
+
+    private final Logger logger = LoggerFactory.getLogger(PosBootstrapService.class);
+    private final ProductService productService;
+    private final StockService stockService;
+    private final CouponService couponService;
+    private final CacheManager cacheManager;
+    private final StripeExecutor stripeExecutor;
+
+    // mongo and cache reads, the coupons go to stripe and use the stripe executor
+    private final ExecutorService loadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Autowired
+    public PosBootstrapService(ProductService productService, StockService stockService, CouponService couponService, CacheManager cacheManager, StripeExecutor stripeExecutor) {
+        this.productService = productService;
+        this.stockService = stockService;
+        this.couponService = couponService;
+        this.cacheManager = cacheManager;
+        this.stripeExecutor = stripeExecutor;
+    }
+
+    /**
+     * loads the bootstrap data for the given employee. coupons are only included if the employee may read them
+     *
+     * @param employee employee of the request, already loaded by the auth filter
+     * @return returns the bootstrap data
+     */
+    public PosBootstrapDto bootstrap(Employee employee) {
+        List<String> accessRights = employee.getRolePermissions();
+        boolean canReadCoupons = accessRights.contains("admin") || accessRights.contains("coupons.read");
+
+        CompletableFuture<List<ProductDto>> products = CompletableFuture.supplyAsync(this::loadActiveProducts, loadExecutor);
+        CompletableFuture<List<StockDto>> stock = CompletableFuture.supplyAsync(stockService::getAllStock, loadExecutor);
+        CompletableFuture<List<CouponDto>> coupons = canReadCoupons
+                ? stripeExecutor.submit(couponService::getAllCoupons)
+                : CompletableFuture.completedFuture(null);
+
+        List<PosProductDto> joined = join(products.join(), stock.join());
+
+        boolean couponsFailed = false;
+        List<CouponDto> couponList;
+        try {
+            couponList = coupons.join();
+        } catch (RuntimeException e) {
+            // the register can start without coupons, they are loaded again on the next bootstrap
+            logger.error("Could not load coupons for bootstrap: {}", e.getMessage());
+            couponList = List.of();
+            couponsFailed = true;
+        }
+
+        boolean stale = productService.isCatalogStale() || couponsFailed || (canReadCoupons && couponService.isServingStaleData());
+        return new PosBootstrapDto(employee.getEmployeeId(), accessRights, joined, couponList, stale);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loadExecutor.shutdown();
+    }
+
+    private List<ProductDto> loadActiveProducts() {
+        Cache cache = cacheManager.getCache(CacheConfig.ACTIVE_PRODUCTS);
+        List<ProductDto> products = cache != null
+                ? cache.get(CacheConfig.ALL_KEY, productService::getActiveProducts)
+                : productService.getActiveProducts();
+        return products != null ? products : List.of();
+    }
+
+    // joins every product with its stock by productId
+    static List<PosProductDto> join(List<ProductDto> products, List<StockDto> stock) {
+        Map<String, StockDto> stockByProductId = new HashMap<>(Math.max(16, stock.size() * 2));
+        for (StockDto entry : stock) {
+            stockByProductId.put(entry.getProductId(), entry);
+        }
+        List<PosProductDto> joined = new ArrayList<>(products.size());
+        for (ProductDto product : products) {
+            joined.add(new PosProductDto(product, stockByProductId.get(product.getProductId())));
+        }
+        return joined;
+    }
+}
@@ -0,0 +1,286 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.modeldto.ProductDto;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * immutable inverted index over name, description and upcCode of the products of one {@link CatalogSnapshot}.
+ * terms are kept sorted, so a prefix is a binary search. typos (one wrong, missing, extra or swapped character)
+ * are found through a map from every term with one character deleted to the terms, no scan over all terms is needed
+ */
+public final class ProductSearchIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // fields a term was found in, as bit flags
+    private static final int NAME = 1;
+    private static final int DESCRIPTION = 2;
+    private static final int UPC = 4;
+
+    // shorter words would match too many other words with one typo
+    private static final int MIN_FUZZY_LENGTH = 4;
+
+    private final List<ProductDto> products;
+    private final String[] terms;
+    private final int[][] postings; // product indexes per term, ascending
+    private final byte[][] fields; // field flags per posting
+    private final Map<String, int[]> deletes; // term with one character deleted -> term indexes
+
+    private ProductSearchIndex(List<ProductDto> products, String[] terms, int[][] postings, byte[][] fields, Map<String, int[]> deletes) {
+        this.products = products;
+        this.terms = terms;
+        this.postings = postings;
+        this.fields = fields;
+        this.deletes = deletes;
+    }
+
+    /**
+     * builds the index for the products
+     *
+     * @param products products to index, the list is not copied
+     * @return returns the index
+     */
+    public static ProductSearchIndex build(List<ProductDto> products) {
+        Map<String, Map<Integer, Integer>> builder = new HashMap<>();
+        for (int i = 0; i < products.size(); i++) {
+            ProductDto product = products.get(i);
+            addTerms(builder, i, product.getProductName(), NAME);
+            addTerms(builder, i, product.getProductDescription(), DESCRIPTION);
+            addTerms(builder, i, product.getUpcCode(), UPC);
+        }
+
+        String[] terms = builder.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[][] postings = new int[terms.length][];
+        byte[][] fields = new byte[terms.length][];
+        Map<String, List<Integer>> deleteBuilder = new HashMap<>();
+        for (int t = 0; t < terms.length; t++) {
+            // LinkedHashMap keeps the product indexes ascending
+            Map<Integer, Integer> docs = builder.get(terms[t]);
+            postings[t] = new int[docs.size()];
+            fields[t] = new byte[docs.size()];
+            int p = 0;
+            for (Map.Entry<Integer, Integer> doc : docs.entrySet()) {
+                postings[t][p] = doc.getKey();
+                fields[t][p] = doc.getValue().byteValue();
+                p++;
+            }
+            if (terms[t].length() >= MIN_FUZZY_LENGTH) {
+                for (String deleted : singleDeletes(terms[t])) {
+                    deleteBuilder.computeIfAbsent(deleted, key -> new ArrayList<>(2)).add(t);
+                }
+            }
+        }
+
+        Map<String, int[]> deletes = new HashMap<>(Math.max(16, deleteBuilder.size() * 2));
+        deleteBuilder.forEach((key, value) -> deletes.put(key, value.stream().mapToInt(Integer::intValue).toArray()));
+        return new ProductSearchIndex(products, terms, postings, fields, deletes);
+    }
+
+    /**
+     * searches the products. every word of the query has to match: the whole word, as prefix of a word
+     * or with one typo. name and upcCode matches rank higher than description matches, exact before prefix before typo
+     *
+     * @param query      text of the search box
+     * @param limit      maximum number of results
+     * @param activeOnly only return active products
+     * @return returns the best matching products, best first
+     */
+    public List<ProductDto> search(String query, int limit, boolean activeOnly) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0 || products.isEmpty()) {
+            return List.of();
+        }
+
+        float[] scores = new float[products.size()];
+        int[] matchedTokens = new int[products.size()];
+        for (int q = 0; q < tokens.size(); q++) {
+            float[] tokenScores = new float[products.size()];
+            scoreToken(tokens.get(q), tokenScores);
+            for (int doc = 0; doc < tokenScores.length; doc++) {
+                // a product only stays a candidate if it matched every token before
+                if (tokenScores[doc] > 0 && matchedTokens[doc] == q) {
+                    matchedTokens[doc]++;
+                    scores[doc] += tokenScores[doc];
+                }
+            }
+        }
+
+        // min heap of the best results so far, the worst one is replaced first
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, (a, b) -> compare(scores, b, a));
+        for (int doc = 0; doc < scores.length; doc++) {
+            if (matchedTokens[doc] != tokens.size() || (activeOnly && !products.get(doc).isActive())) {
+                continue;
+            }
+            best.add(doc);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        ProductDto[] result = new ProductDto[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = products.get(best.poll());
+        }
+        return List.of(result);
+    }
+
+    public int termCount() {
+        return terms.length;
+    }
+
+    // negative if a ranks before b
+    private int compare(float[] scores, int a, int b) {
+        int byScore = Float.compare(scores[b], scores[a]);
+        if (byScore != 0) {
+            return byScore;
+        }
+        // shorter names are closer to what was typed
+        int byLength = Integer.compare(nameLength(a), nameLength(b));
+        return byLength != 0 ? byLength : Integer.compare(a, b);
+    }
+
+    private int nameLength(int doc) {
+        String name = products.get(doc).getProductName();
+        return name == null ? Integer.MAX_VALUE : name.length();
+    }
+
+    private void scoreToken(String token, float[] tokenScores) {
+        // exact match and prefix: all terms in [token, token + max char)
+        int from = lowerBound(token);
+        for (int t = from; t < terms.length && terms[t].startsWith(token); t++) {
+            float quality = terms[t].length() == token.length() ? 3f : 2f;
+            addPostings(t, quality, tokenScores);
+        }
+
+        // barcodes with a typo are a different product
+        if (token.length() < MIN_FUZZY_LENGTH || token.chars().allMatch(Character::isDigit)) {
+            return;
+        }
+        // one typo: token and term share a version with at most one character deleted
+        Set<Integer> candidates = new HashSet<>();
+        collectDeleteCandidates(token, candidates);
+        int exact = Arrays.binarySearch(terms, token);
+        for (String deleted : singleDeletes(token)) {
+            collectDeleteCandidates(deleted, candidates);
+            int t = Arrays.binarySearch(terms, deleted);
+            if (t >= 0) {
+                candidates.add(t);
+            }
+        }
+        for (int t : candidates) {
+            if (t != exact && !terms[t].startsWith(token) && isOneEditApart(token, terms[t])) {
+                addPostings(t, 1f, tokenScores);
+            }
+        }
+    }
+
+    private void collectDeleteCandidates(String key, Set<Integer> candidates) {
+        int[] termIndexes = deletes.get(key);
+        if (termIndexes != null) {
+            for (int t : termIndexes) {
+                candidates.add(t);
+            }
+        }
+    }
+
+    private void addPostings(int term, float quality, float[] tokenScores) {
+        int[] docs = postings[term];
+        byte[] flags = fields[term];
+        for (int p = 0; p < docs.length; p++) {
+            float score = quality * fieldWeight(flags[p]);
+            if (score > tokenScores[docs[p]]) {
+                tokenScores[docs[p]] = score;
+            }
+        }
+    }
+
+    private static float fieldWeight(int flags) {
+        if ((flags & (NAME | UPC)) != 0) {
+            return 3f;
+        }
+        return 1f;
+    }
+
+    private int lowerBound(String token) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].compareTo(token) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void addTerms(Map<String, Map<Integer, Integer>> builder, int doc, String text, int field) {
+        for (String term : tokenize(text)) {
+            builder.computeIfAbsent(term, key -> new LinkedHashMap<>(4)).merge(doc, field, (a, b) -> a | b);
+        }
+    }
+
+    // lower case words without diacritics, so "Müsli" is found with "musli"
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFD)).replaceAll("");
+        List<String> tokens = new ArrayList<>();
+        for (String token : SEPARATORS.split(normalized)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static List<String> singleDeletes(String term) {
+        List<String> result = new ArrayList<>(term.length());
+        for (int i = 0; i < term.length(); i++) {
+            result.add(term.substring(0, i) + term.substring(i + 1));
+        }
+        return result;
+    }
+
+    // optimal string alignment distance <= 1: one substitution, insertion, deletion or swap of neighbours
+    static boolean isOneEditApart(String a, String b) {
+        int lengthDifference = a.length() - b.length();
+        if (Math.abs(lengthDifference) > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (lengthDifference == 0) {
+            if (i == a.length()) {
+                return true;
+            }
+            // substitution
+            if (a.regionMatches(i + 1, b, i + 1, a.length() - i - 1)) {
+                return true;
+            }
+            // swap of two neighbours
+            return i + 1 < a.length() && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                    && a.regionMatches(i + 2, b, i + 2, a.length() - i - 2);
+        }
+        String longer = lengthDifference > 0 ? a : b;
+        String shorter = lengthDifference > 0 ? b : a;
+        return longer.regionMatches(i + 1, shorter, i, shorter.length() - i);
+    }
+}
@@ -2,42 +2,71 @@ package ip.project.backend.backend.service;
 
 import com.stripe.exception.StripeException;
 import com.stripe.model.*;
-import com.stripe.model.checkout.Session;
-import com.stripe.model.checkout.SessionCollection;
 import com.stripe.param.*;
-import com.stripe.param.checkout.SessionListLineItemsParams;
-import com.stripe.param.checkout.SessionListParams;
-import ip.project.backend.backend.model.Checkout;
-import ip.project.backend.backend.model.Order;
-import ip.project.backend.backend.model.ProductWithId;
+import ip.project.backend.backend.mapper.CatalogMapper;
+import ip.project.backend.backend.model.CatalogProduct;
+import ip.project.backend.backend.modeldto.ChangeEventDto;
 import ip.project.backend.backend.modeldto.PriceHistoryDto;
 import ip.project.backend.backend.modeldto.ProductDto;
 import ip.project.backend.backend.modeldto.ProductPriceDto;
 import ip.project.backend.backend.modeldto.RespBestSellingProductDto;
-import ip.project.backend.backend.repository.OrderRepository;
-import ip.project.backend.backend.util.StripeConnection;
+import ip.project.backend.backend.repository.CatalogRepository;
+import ip.project.backend.backend.util.StripeExecutor;
+import ip.project.backend.backend.util.StripeGateway;
+import ip.project.backend.backend.util.StripePriceCache;
 import ip.project.backend.backend.util.StripeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class ProductService {
 
     private final Logger logger = LoggerFactory.getLogger(ProductService.class);
-    private final StripeConnection stripeConnection;
-    private final OrderRepository orderRepository;
+    private final StripeGateway stripeGateway;
+    private final CatalogRepository catalogRepository;
+    private final StripePriceCache priceCache;
+    private final StripeExecutor stripeExecutor;
+    private final ChangeFeedService changeFeedService;
+    private final SalesRollupService salesRollupService;
+
+    // stripe search queries accept at most 10 clauses
+    private static final int PRICE_SEARCH_CLAUSE_LIMIT = 10;
+
+    // last successfully loaded price histories, served while stripe is not reachable
+    private static final int LAST_KNOWN_PRICE_HISTORY_ENTRIES = 1000;
+    private final Map<String, List<PriceHistoryDto>> lastKnownPriceHistory = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<PriceHistoryDto>> eldest) {
+            return size() > LAST_KNOWN_PRICE_HISTORY_ENTRIES;
+        }
+    });
+
+    // true if the last catalog reconcile could not load every page from stripe
+    private volatile boolean catalogSyncFailed = false;
+
+    // reconcile which is currently running, null if none
+    private final AtomicReference<CompletableFuture<List<ProductDto>>> runningReconcile = new AtomicReference<>();
 
     @Autowired
-    public ProductService(StripeConnection stripeConnection, OrderRepository orderRepository) {
-        this.stripeConnection = stripeConnection;
-        this.orderRepository = orderRepository;
+    public ProductService(StripeGateway stripeGateway, CatalogRepository catalogRepository, StripePriceCache priceCache, StripeExecutor stripeExecutor, ChangeFeedService changeFeedService, SalesRollupService salesRollupService) {
+        this.stripeGateway = stripeGateway;
+        this.catalogRepository = catalogRepository;
+        this.priceCache = priceCache;
+        this.stripeExecutor = stripeExecutor;
+        this.changeFeedService = changeFeedService;
+        this.salesRollupService = salesRollupService;
     }
 
 
@@ -50,7 +79,8 @@ public class ProductService {
     public Optional<ProductPriceDto> getPriceToProduct(String productId) {
         ProductPriceDto productPriceDto = null;
         try {
-            Product product = stripeConnection.getStripeClient().products().retrieve(productId);
+            // default price is expanded, so product and price come back in one request
+            Product product = stripeGateway.retrieveProduct(productId, retrieveWithDefaultPrice());
             if (product == null) {
                 logger.error("Product not found for ID: {}", productId);
                 return Optional.empty();
@@ -60,7 +90,12 @@ public class ProductService {
                 logger.error("No default price found for product ID: {}", productId);
                 return Optional.empty();
             }
-            Price price = stripeConnection.getStripeClient().prices().retrieve(priceId);
+            Price price = product.getDefaultPriceObject();
+            if (price != null) {
+                priceCache.put(price);
+            } else {
+                price = priceCache.get(priceId);
+            }
             if (price == null || price.getId() == null) {
                 logger.error("Price not found for ID: {}", priceId);
                 return Optional.empty();
@@ -79,84 +114,54 @@ public class ProductService {
 
 
     /**
-     * return all products from Stripe
+     * return all products from the local catalog mirror.
+     * if the mirror is still empty (first start) it is filled from stripe once
      *
      * @return list of ProductDto objects
      */
     public List<ProductDto> getAllProducts() {
-        List<ProductDto> productDtos = new ArrayList<>();
-
-        StripeCollection<Product> stripeProducts;
-        try {
-            ProductListParams listParams = ProductListParams.builder()
-                    .setLimit(100L) // Limit auf 100 Produkte
-                    .build();
-
-            stripeProducts = stripeConnection.getStripeClient().products().list(listParams);
-        } catch (StripeException e) {
-            logger.error("Failed to fetch products: {}", e.getMessage());
-            return productDtos;
-        }
-
-        if (stripeProducts == null || stripeProducts.getData() == null || stripeProducts.getData().isEmpty()) {
-            logger.warn("No products found in Stripe.");
-            return productDtos;
+        List<CatalogProduct> mirrored = catalogRepository.findAll();
+        if (mirrored.isEmpty()) {
+            logger.info("Catalog mirror is empty. Loading products from Stripe.");
+            return reconcileCatalog();
         }
-
-        productDtos = stripeProducts.getData().parallelStream()
-                .map(this::mapStripeProductToProductDto)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
+        return mirrored.stream()
+                .map(CatalogMapper.INSTANCE::catalogToDto)
                 .toList();
-
-        return productDtos;
     }
 
     /**
-     * get all active products from stripe
+     * get all active products from the local catalog mirror
      *
      * @return retruns list of all active products
      */
     public List<ProductDto> getActiveProducts() {
-        List<ProductDto> productDtos = new ArrayList<>();
-
-        ProductListParams params = ProductListParams.builder()
-                .setActive(true)  // Nur aktive Produkte
-                .setLimit(100L)
-                .build();
-
-        StripeCollection<com.stripe.model.Product> stripeProducts;
-        try {
-            stripeProducts = stripeConnection.getStripeClient().products().list(params);
-        } catch (StripeException e) {
-            logger.error("Failed to fetch active products: {}", e.getMessage());
-            return productDtos;
-        }
-
-        if (stripeProducts == null || stripeProducts.getData().isEmpty()) {
-            logger.warn("No active products found in Stripe.");
-            return productDtos;
+        if (catalogRepository.count() == 0) {
+            logger.info("Catalog mirror is empty. Loading products from Stripe.");
+            return reconcileCatalog().stream()
+                    .filter(ProductDto::isActive)
+                    .toList();
         }
-
-        productDtos = stripeProducts.getData().parallelStream()
-                .map(this::mapStripeProductToProductDto)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
+        return catalogRepository.findAllByActiveTrue().stream()
+                .map(CatalogMapper.INSTANCE::catalogToDto)
                 .toList();
-
-        return productDtos;
     }
 
     /**
-     * get product by productId
+     * get product by productId. the catalog mirror is asked first, stripe only if the product is not mirrored yet
      *
      * @param productId product id to look for
      * @return returns product dto object
      */
     public Optional<ProductDto> getProductById(String productId) {
+        Optional<CatalogProduct> mirrored = catalogRepository.findById(productId);
+        if (mirrored.isPresent()) {
+            return mirrored.map(CatalogMapper.INSTANCE::catalogToDto);
+        }
+
         com.stripe.model.Product stripeProduct;
         try {
-            stripeProduct = stripeConnection.getStripeClient().products().retrieve(productId);
+            stripeProduct = stripeGateway.retrieveProduct(productId, retrieveWithDefaultPrice());
         } catch (StripeException e) {
             logger.error("error getting product by id: {}", e.getMessage());
             return Optional.empty();
@@ -167,9 +172,290 @@ public class ProductService {
             logger.error("Product could not be mapped");
             return Optional.empty();
         }
+        mirrorProduct(productDto.get());
         return productDto;
     }
 
+    /**
+     * streams products from the catalog mirror one at a time.
+     * backed by a mongo cursor, so the catalog is never held in memory as a whole
+     *
+     * @param activeOnly only stream active products
+     * @param consumer   receives every product
+     */
+    public void streamProducts(boolean activeOnly, Consumer<ProductDto> consumer) {
+        if (catalogRepository.count() == 0) {
+            logger.info("Catalog mirror is empty. Loading products from Stripe.");
+            reconcileCatalog();
+        }
+        try (Stream<CatalogProduct> products = activeOnly ? catalogRepository.streamAllByActiveTrue() : catalogRepository.streamAllBy()) {
+            products.map(CatalogMapper.INSTANCE::catalogToDto).forEach(consumer);
+        }
+    }
+
+    /**
+     * synchronizes the catalog mirror with stripe. catches changes made directly in the stripe dashboard.
+     * every stripe page is written to the mirror as soon as it is loaded.
+     * products which no longer exist in stripe are removed from the mirror, but only if all pages could be loaded
+     *
+     * @return returns the products loaded from stripe, empty list if stripe could not be reached
+     */
+    @Scheduled(fixedDelayString = "${catalog.reconcile-interval-ms:300000}", initialDelayString = "${catalog.reconcile-initial-delay-ms:30000}")
+    public List<ProductDto> reconcileCatalog() {
+        // single flight: callers arriving while a reconcile runs share its result instead of loading the catalog again
+        CompletableFuture<List<ProductDto>> own = new CompletableFuture<>();
+        CompletableFuture<List<ProductDto>> running = runningReconcile.compareAndExchange(null, own);
+        if (running != null) {
+            logger.info("Catalog reconcile already running, waiting for its result");
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : e;
+            }
+        }
+
+        try {
+            List<ProductDto> products = reconcileCatalogWithStripe();
+            own.complete(products);
+            return products;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            runningReconcile.set(null);
+        }
+    }
+
+    private List<ProductDto> reconcileCatalogWithStripe() {
+        List<ProductDto> products = new ArrayList<>();
+        // every id stripe listed, also products which could not be mapped, so they are never taken as removed
+        Set<String> stripeIds = new HashSet<>();
+        boolean[] pricesComplete = {true};
+        Date now = new Date();
+
+        boolean pagesComplete = forEachStripeProductPage(page -> {
+            catalogRepository.saveAll(page.products().stream()
+                    .map(dto -> toCatalogProduct(dto, now))
+                    .toList());
+            stripeIds.addAll(page.productIds());
+            pricesComplete[0] &= page.pricesComplete();
+            products.addAll(page.products());
+        });
+        boolean complete = pagesComplete && pricesComplete[0];
+        catalogSyncFailed = !complete;
+        if (!complete) {
+            logger.warn("Catalog reconcile incomplete, {} products mirrored. Removed products are not checked.", products.size());
+            return products;
+        }
+
+        // entries written after the reconcile started (e.g. by addProduct) may be missing in pages listed before
+        List<String> removed;
+        try (Stream<CatalogProduct> mirrored = catalogRepository.streamAllBy()) {
+            removed = mirrored
+                    .filter(product -> product.getSyncedAt() == null || product.getSyncedAt().before(now))
+                    .map(CatalogProduct::getProductId)
+                    .filter(id -> !stripeIds.contains(id))
+                    .toList();
+        }
+        if (!removed.isEmpty()) {
+            catalogRepository.deleteAllById(removed);
+        }
+
+        logger.info("Catalog reconciled with Stripe: {} products mirrored, {} removed", products.size(), removed.size());
+        return products;
+    }
+
+    /**
+     * load all products directly from stripe
+     *
+     * @return list of ProductDto objects or empty optional if stripe could not be reached
+     */
+    Optional<List<ProductDto>> fetchProductsFromStripe() {
+        List<ProductDto> products = new ArrayList<>();
+        if (!forEachStripeProductPage(page -> products.addAll(page.products()))) {
+            return Optional.empty();
+        }
+        return Optional.of(products);
+    }
+
+    /**
+     * one page of the stripe product list
+     *
+     * @param productIds     ids of all products of the page
+     * @param products       the mapped products, products without price are missing
+     * @param pricesComplete false if the prices of some products could not be searched
+     */
+    record ProductPage(List<String> productIds, List<ProductDto> products, boolean pricesComplete) {
+    }
+
+    /**
+     * walks through every page of the stripe product list and hands each mapped page to the consumer
+     *
+     * @param pageConsumer receives the products of one page
+     * @return returns true if all pages were loaded, false if stripe failed on the way
+     */
+    boolean forEachStripeProductPage(Consumer<ProductPage> pageConsumer) {
+        String startingAfter = null;
+        while (true) {
+            ProductListParams.Builder listParams = ProductListParams.builder()
+                    .setLimit(100L) // maximum page size of stripe
+                    .addExpand("data.default_price"); // prices come with the list, no request per product
+            if (startingAfter != null) {
+                listParams.setStartingAfter(startingAfter);
+            }
+
+            StripeCollection<Product> stripeProducts;
+            ProductListParams pageParams = listParams.build();
+            try {
+                stripeProducts = stripeGateway.read(client -> client.products().list(pageParams));
+            } catch (StripeException e) {
+                logger.error("Failed to fetch products: {}", e.getMessage());
+                return false;
+            }
+
+            if (stripeProducts == null || stripeProducts.getData() == null || stripeProducts.getData().isEmpty()) {
+                if (startingAfter == null) {
+                    logger.warn("No products found in Stripe.");
+                }
+                return true;
+            }
+
+            List<Product> page = stripeProducts.getData();
+            Set<String> unresolved = new HashSet<>();
+            List<ProductDto> mapped = mapStripeProductsToProductDtos(page, unresolved);
+            pageConsumer.accept(new ProductPage(page.stream().map(Product::getId).toList(), mapped, unresolved.isEmpty()));
+
+            if (!Boolean.TRUE.equals(stripeProducts.getHasMore())) {
+                return true;
+            }
+            startingAfter = page.get(page.size() - 1).getId();
+        }
+    }
+
+    /**
+     * maps a page of stripe products to ProductDtos.
+     * default prices are expected to be expanded. products without default price get their last inactive price,
+     * which is resolved for the whole page at once instead of one search per product
+     *
+     * @param products   stripe products, default_price expanded
+     * @param unresolved receives the ids of products whose prices could not be searched
+     * @return list of ProductDto objects, products without any price are skipped
+     */
+    List<ProductDto> mapStripeProductsToProductDtos(List<Product> products, Set<String> unresolved) {
+        List<Product> withoutDefaultPrice = products.stream()
+                .filter(product -> product.getDefaultPrice() == null)
+                .toList();
+        Map<String, Price> inactivePrices = resolveLastInactivePrices(withoutDefaultPrice, unresolved);
+
+        List<ProductDto> productDtos = new ArrayList<>();
+        for (Product product : products) {
+            Optional<Price> price;
+            if (product.getDefaultPrice() == null) {
+                price = Optional.ofNullable(inactivePrices.get(product.getId()));
+            } else {
+                price = fetchPriceForProduct(product);
+            }
+            if (price.isEmpty()) {
+                logger.warn("No price found for product {}", product.getId());
+                continue;
+            }
+            productDtos.add(mapStripeProductToProductDto(product, price.get()));
+        }
+        return productDtos;
+    }
+
+    /**
+     * finds the newest inactive price for each of the given products.
+     * stripe search allows up to 10 OR clauses, so the products are searched in chunks of 10
+     *
+     * @param products   products without default price
+     * @param unresolved receives the ids of products whose search failed, their missing price is not known to be missing
+     * @return map of productId to its newest inactive price
+     */
+    Map<String, Price> resolveLastInactivePrices(List<Product> products, Set<String> unresolved) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<CompletableFuture<List<Price>>> searches = new ArrayList<>();
+        for (int i = 0; i < products.size(); i += PRICE_SEARCH_CLAUSE_LIMIT) {
+            List<String> productIds = products.subList(i, Math.min(i + PRICE_SEARCH_CLAUSE_LIMIT, products.size())).stream()
+                    .map(Product::getId)
+                    .toList();
+            chunks.add(productIds);
+            searches.add(stripeExecutor.submit(() -> searchPricesOfProducts(productIds)));
+        }
+
+        Map<String, Price> result = new HashMap<>();
+        for (int i = 0; i < searches.size(); i++) {
+            List<Price> prices;
+            try {
+                prices = searches.get(i).join();
+            } catch (CompletionException e) {
+                logger.error("Error searching inactive prices: {}", e.getCause().getMessage());
+                unresolved.addAll(chunks.get(i));
+                continue;
+            }
+            priceCache.putAll(prices);
+            for (Price price : prices) {
+                if (price.getProduct() == null || Boolean.TRUE.equals(price.getActive())) continue;
+                result.merge(price.getProduct(), price,
+                        (current, candidate) -> candidate.getCreated() > current.getCreated() ? candidate : current);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * searches all prices (every result page) of up to 10 products
+     *
+     * @param productIds ids of the products
+     * @return list of all prices of these products
+     * @throws StripeException if stripe fails
+     */
+    List<Price> searchPricesOfProducts(List<String> productIds) throws StripeException {
+        List<Price> prices = new ArrayList<>();
+        PriceSearchParams firstPage = StripeUtils.createPriceSearchParams(productIds);
+        StripeSearchResult<Price> page = stripeGateway.read(client -> client.prices().search(firstPage));
+        while (page != null) {
+            prices.addAll(page.getData());
+            if (!Boolean.TRUE.equals(page.getHasMore())) break;
+            PriceSearchParams nextPage = PriceSearchParams.builder()
+                    .setQuery(firstPage.getQuery())
+                    .setLimit(firstPage.getLimit())
+                    .setPage(page.getNextPage())
+                    .build();
+            page = stripeGateway.read(client -> client.prices().search(nextPage));
+        }
+        return prices;
+    }
+
+    /**
+     * product retrieve params which expand the default price, so the price does not need a second request
+     */
+    private static ProductRetrieveParams retrieveWithDefaultPrice() {
+        return ProductRetrieveParams.builder()
+                .addExpand("default_price")
+                .build();
+    }
+
+    /**
+     * writes a single product into the catalog mirror
+     *
+     * @param productDto product to mirror
+     */
+    void mirrorProduct(ProductDto productDto) {
+        try {
+            catalogRepository.save(toCatalogProduct(productDto, new Date()));
+        } catch (Exception e) {
+            // the mirror is repaired by the next reconcile run, stripe stays the source of truth
+            logger.error("Could not write product {} to catalog mirror: {}", productDto.getProductId(), e.getMessage());
+        }
+    }
+
+    private CatalogProduct toCatalogProduct(ProductDto productDto, Date syncedAt) {
+        CatalogProduct catalogProduct = CatalogMapper.INSTANCE.dtoToCatalog(productDto);
+        catalogProduct.setSyncedAt(syncedAt);
+        return catalogProduct;
+    }
+
 
     /**
      * add new product to database
@@ -199,7 +485,24 @@ public class ProductService {
         );
 
         try {
-            Product p = stripeConnection.getStripeClient().products().create(params);
+            Product p = stripeGateway.write(client -> client.products().create(params));
+            priceCache.put(p.getDefaultPriceObject());
+            ProductDto created = new ProductDto(
+                    productDto.getProductName(),
+                    p.getId(),
+                    productDto.getProductDescription(),
+                    productDto.getListPrice(),
+                    productDto.getCostPrice(),
+                    productDto.getUpcCode(),
+                    p.getCreated(),
+                    p.getUpdated(),
+                    productDto.isActive(),
+                    productDto.getCurrency(),
+                    productDto.isTaxIncludedInPrice(),
+                    p.getDefaultPrice()
+            );
+            mirrorProduct(created);
+            changeFeedService.publish(ChangeEventDto.PRODUCT_ADDED, p.getId(), created);
             return Optional.of(p.getId());
         } catch (StripeException e) {
             logger.error("Error adding product to Stripe: {}", e.getMessage());
@@ -231,6 +534,22 @@ public class ProductService {
         }
 
         deactivateOldPrice(oldPriceId);
+        ProductDto updated = new ProductDto(
+                productDto.getProductName(),
+                stripeProduct.getId(),
+                productDto.getProductDescription(),
+                productDto.getListPrice(),
+                productDto.getCostPrice(),
+                productDto.getUpcCode(),
+                stripeProduct.getCreated(),
+                System.currentTimeMillis() / 1000,
+                productDto.isActive(),
+                productDto.getCurrency(),
+                productDto.isTaxIncludedInPrice(),
+                newPriceId
+        );
+        mirrorProduct(updated);
+        changeFeedService.publish(ChangeEventDto.PRODUCT_UPDATED, updated.getProductId(), updated);
         return Optional.empty();
     }
 
@@ -242,7 +561,7 @@ public class ProductService {
      */
     Product retrieveStripeProduct(String productId) {
         try {
-            return stripeConnection.getStripeClient().products().retrieve(productId);
+            return stripeGateway.retrieveProduct(productId);
         } catch (StripeException e) {
             logger.error("Error retrieving product {}: {}", productId, e.getMessage());
             return null;
@@ -268,7 +587,8 @@ public class ProductService {
         );
 
         try {
-            Price newPrice = stripeConnection.getStripeClient().prices().create(priceParams);
+            Price newPrice = stripeGateway.write(client -> client.prices().create(priceParams));
+            priceCache.put(newPrice);
             return newPrice != null ? newPrice.getId() : null;
         } catch (StripeException e) {
             logger.error("Error creating price for product {}: {}", productId, e.getMessage());
@@ -286,7 +606,7 @@ public class ProductService {
         );
 
         try {
-            stripeProduct.update(updateParams);
+            stripeGateway.write(client -> client.products().update(stripeProduct.getId(), updateParams));
             return true;
         } catch (StripeException e) {
             logger.error("Error updating product {}: {}", dto.getProductId(), e.getMessage());
@@ -305,13 +625,14 @@ public class ProductService {
         if (priceId == null) return;
 
         try {
-            Price oldPrice = stripeConnection.getStripeClient().prices().retrieve(priceId);
+            // update by id, the old price does not have to be retrieved first
+            Price oldPrice = stripeGateway.write(client -> client.prices().update(priceId, PriceUpdateParams.builder().setActive(false).build()));
             if (oldPrice == null) {
                 logger.warn("Old price {} not found, cannot deactivate.", priceId);
                 return;
             }
 
-            oldPrice.update(PriceUpdateParams.builder().setActive(false).build());
+            priceCache.put(oldPrice); // keep the cached active flag in line with stripe
             logger.info("Old price {} set to inactive.", priceId);
         } catch (StripeException e) {
             logger.error("Error deactivating old price {}: {}", priceId, e.getMessage());
@@ -325,9 +646,8 @@ public class ProductService {
      * @return returns empty option or error message if not deleted
      */
     public Optional<String> deleteProduct(String productId) {
-        Product stripeProduct;
         try {
-            stripeProduct = stripeConnection.getStripeClient().products().retrieve(productId);
+            stripeGateway.retrieveProduct(productId);
         } catch (StripeException e) {
             logger.error("Could not retrieve product to delete: {}", e.getMessage());
             return Optional.of("Could not retrieve product to delete: " + e.getMessage());
@@ -338,10 +658,14 @@ public class ProductService {
                 .build();
 
         try {
-            stripeProduct.setActive(false);
-            stripeProduct = stripeProduct.update(updateParams);
-            stripeConnection.getStripeClient().products().update(stripeProduct.getId());
+            stripeGateway.write(client -> client.products().update(productId, updateParams));
             logger.info("Product {} deleted successfully.", productId);
+            catalogRepository.findById(productId).ifPresent(entry -> {
+                entry.setActive(false);
+                entry.setSyncedAt(new Date());
+                catalogRepository.save(entry);
+            });
+            changeFeedService.publish(ChangeEventDto.PRODUCT_DELETED, productId, null);
         } catch (StripeException e) {
             logger.error("Error deleting product: {}", e.getMessage());
             return Optional.of("Error deleting product: " + e.getMessage());
@@ -358,24 +682,11 @@ public class ProductService {
      */
 
     boolean checkIfUpCodeInUse(String upcCode) {
-        // Verbesserung: API-Abfrage effizienter gestalten (z. B. nur relevante Felder abfragen)
-        StripeCollection<com.stripe.model.Product> stripeProducts;
-
-        try {
-            stripeProducts = stripeConnection.getStripeClient().products().list();
-        } catch (StripeException e) {
-            logger.error("Error fetching products to check UPC code: {}", e.getMessage());
-            return false;  // Optimierung: Fehlerbehandlung verbessern, z. B. mit Retry-Logik
+        // the catalog mirror holds every stripe product, no need to list all products from stripe
+        if (catalogRepository.count() == 0) {
+            reconcileCatalog();
         }
-
-        if (stripeProducts == null || stripeProducts.getData().isEmpty()) {
-            logger.warn("No products found to check UPC code");
-            return true;  // Falls keine Produkte vorhanden sind, wird der UPC-Code als verfügbar betrachtet
-        }
-
-        // Verbesserte Suche: Produkte ohne vollständige Metadaten durchsuchen
-        return stripeProducts.getData().stream()
-                .noneMatch(product -> upcCode.equals(product.getMetadata().get("upcCode")));
+        return !catalogRepository.existsByUpcCode(upcCode);
     }
 
     /**
@@ -387,7 +698,7 @@ public class ProductService {
     public Optional<List<PriceHistoryDto>> getPriceHistory(String productId) {
         Product stripeProduct;
         try { // check if productId is correct
-            stripeProduct = stripeConnection.getStripeClient().products().retrieve(productId);
+            stripeProduct = stripeGateway.retrieveProduct(productId);
         } catch (StripeException e) {
             logger.error("Could not retrieve product for price history: {}", e.getMessage());
             return Optional.empty();
@@ -403,7 +714,7 @@ public class ProductService {
 
         StripeSearchResult<Price> res = null;
         try {
-            res = stripeConnection.getStripeClient().prices().search(params);
+            res = stripeGateway.read(client -> client.prices().search(params));
         } catch (StripeException e) {
             logger.error("Error searching price history: {}", e.getMessage());
         }
@@ -411,10 +722,31 @@ public class ProductService {
         if (res == null) {
             return Optional.empty();
         }
+        priceCache.putAll(res.getData());
         List<PriceHistoryDto> list = createPriceList(res.getData());
+        lastKnownPriceHistory.put(productId, list);
         return Optional.of(list);
     }
 
+    /**
+     * returns the price history which was loaded last for this product, used if stripe is not reachable
+     *
+     * @param productId productId of the product
+     * @return returns the last loaded price history or empty optional if it was never loaded
+     */
+    public Optional<List<PriceHistoryDto>> getLastKnownPriceHistory(String productId) {
+        return Optional.ofNullable(lastKnownPriceHistory.get(productId));
+    }
+
+    /**
+     * the catalog mirror is stale if stripe is not reachable or the last reconcile did not finish
+     *
+     * @return returns true if products are served from the mirror without being up to date with stripe
+     */
+    public boolean isCatalogStale() {
+        return catalogSyncFailed || !stripeGateway.isAvailable();
+    }
+
     /**
      * creates a list of PriceHistoryDto objects from a list of individual prices
      *
@@ -451,12 +783,13 @@ public class ProductService {
         StripeSearchResult<Price> priceSearchResult;
 
         try {
-            priceSearchResult = stripeConnection.getStripeClient().prices().search(searchParams);
+            priceSearchResult = stripeGateway.read(client -> client.prices().search(searchParams));
         } catch (StripeException e) {
             logger.error("Error searching price: {}", e.getMessage());
             return Optional.empty();
         }
 
+        priceCache.putAll(priceSearchResult.getData());
         return priceSearchResult.getData().stream()
                 .filter(price -> !price.getActive()) // Nur inaktive Preise
                 .max(Comparator.comparing(Price::getCreated)); // Neuester Preis
@@ -477,7 +810,17 @@ public class ProductService {
             return Optional.empty(); // Schnell abbrechen, falls kein Preis gefunden
         }
 
-        Price price = priceOpt.get();
+        return Optional.of(mapStripeProductToProductDto(product, priceOpt.get()));
+    }
+
+    /**
+     * maps a stripe product and its already resolved price to a ProductDto
+     *
+     * @param product Stripe product object
+     * @param price   price of the product
+     * @return returns ProductDto
+     */
+    ProductDto mapStripeProductToProductDto(Product product, Price price) {
 
         // Parallel die Verarbeitung von unitAmount und costPrice
         BigDecimal unitAmount = computeUnitAmount(price);
@@ -485,7 +828,7 @@ public class ProductService {
 
         boolean isTaxIncluded = "inclusive".equals(price.getTaxBehavior());
 
-        return Optional.of(new ProductDto(
+        return new ProductDto(
                 product.getName(),
                 product.getId(),
                 product.getDescription(),
@@ -498,17 +841,18 @@ public class ProductService {
                 price.getCurrency(),
                 isTaxIncluded,
                 product.getDefaultPrice()
-        ));
+        );
     }
 
     Optional<Price> fetchPriceForProduct(com.stripe.model.Product product) {
         try {
             if (product.getDefaultPrice() == null) {
                 return getLastInactivePriceForProduct(product);
+            } else if (product.getDefaultPriceObject() != null) {
+                priceCache.put(product.getDefaultPriceObject()); // already expanded
+                return Optional.of(product.getDefaultPriceObject());
             } else {
-                return Optional.ofNullable(
-                        stripeConnection.getStripeClient().prices().retrieve(product.getDefaultPrice())
-                );
+                return Optional.ofNullable(priceCache.get(product.getDefaultPrice()));
             }
         } catch (StripeException e) {
             logger.error("Error retrieving price for product {}: {}", product.getId(), e.getMessage());
@@ -554,117 +898,14 @@ public class ProductService {
 
 
     /**
-     * get the best selling product within a specified date range
+     * get the best selling product within a specified date range, read from the daily sales rollup
      *
-     * @param startDate start date to search for
-     * @param endDate   end date to search for
+     * @param startDate first day to search for
+     * @param endDate   last day to search for (inclusive)
      * @return returns RespBestSellingProductDto object which holds the best selling product, its sale dates and total quantity sold
      */
     public RespBestSellingProductDto getBestSellingProduct(Date startDate, Date endDate) {
-        SessionListParams sessionParams = SessionListParams.builder()
-                .setLimit(100L)
-                .build();
-
-        Map<String, Long> productQuantities = new ConcurrentHashMap<>();
-        Map<String, List<Date>> productSaleDates = new ConcurrentHashMap<>();
-
-        ExecutorService executor = Executors.newFixedThreadPool(10); // 10 Threads für parallele Stripe-Requests
-        List<Future<?>> futures = new ArrayList<>();
-
-        try {
-            StripeCollection<Session> sessions = stripeConnection.getStripeClient()
-                    .checkout()
-                    .sessions()
-                    .list(sessionParams);
-
-            for (Session session : sessions.getData()) {
-                // Filter by date range
-                long created = session.getCreated() * 1000L;
-                Date sessionDate = new Date(created);
-                if (sessionDate.before(startDate) || sessionDate.after(endDate)) {
-                    continue;
-                }
-
-                // Check if payment succeeded
-                if (!"paid".equals(session.getPaymentStatus())) {
-                    continue; // skip unpaid or incomplete payments
-                }
-
-                // Parallel task for line items
-                futures.add(executor.submit(() -> {
-                    try {
-                        SessionListLineItemsParams lineItemParams = SessionListLineItemsParams.builder()
-                                .setLimit(100L)
-                                .build();
-
-                        LineItemCollection lineItems = session.listLineItems(lineItemParams);
-
-                        for (LineItem item : lineItems.getData()) {
-                            if (item.getPrice() != null && item.getPrice().getProduct() != null) {
-                                String productId = item.getPrice().getProduct();
-                                long quantity = item.getQuantity() != null ? item.getQuantity() : 0L;
-
-                                productQuantities.merge(productId, quantity, Long::sum);
-                                productSaleDates.computeIfAbsent(productId, k -> Collections.synchronizedList(new ArrayList<>()))
-                                        .add(sessionDate);
-                            }
-                        }
-                    } catch (StripeException e) {
-                        logger.error("Error retrieving line items for session {}: {}", session.getId(), e.getMessage());
-                    }
-                }));
-            }
-
-
-            // Warten bis alle Stripe-Tasks fertig sind
-            for (Future<?> future : futures) {
-                future.get();
-            }
-
-        } catch (StripeException | InterruptedException | ExecutionException e) {
-            logger.error("Error fetching checkout sessions: {}", e.getMessage());
-            Thread.currentThread().interrupt(); // falls interrupted
-            return null;
-        } finally {
-            executor.shutdown();
-        }
-
-        // Bestverkauftes Produkt ermitteln
-        Map.Entry<String, Long> bestEntry = productQuantities.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .orElse(null);
-
-        if (bestEntry == null) {
-            return null;
-        }
-
-        String bestProductId = bestEntry.getKey();
-        int totalQuantity = bestEntry.getValue().intValue();
-        List<Date> saleDates = productSaleDates.getOrDefault(bestProductId, new ArrayList<>());
-
-        // Produktnamen (optional via Stripe, oder aus eigener DB)
-        String productName = getNameToProductId(bestProductId); // eigene Hilfsmethode
-
-        return new RespBestSellingProductDto(productName, bestProductId, saleDates, totalQuantity);
-    }
-
-
-    /**
-     * get the name of a product by its productId
-     *
-     * @param productId productId to search for
-     * @return returns the name of the product or null if not found
-     */
-    String getNameToProductId(String productId) {
-        try {
-            Product product = stripeConnection.getStripeClient().products().retrieve(productId);
-            if (product != null) {
-                return product.getName();
-            }
-        } catch (StripeException e) {
-            logger.error("Error retrieving product name for ID {}: {}", productId, e.getMessage());
-        }
-        return null;
+        return salesRollupService.getBestSelling(startDate, endDate);
     }
 
 
@@ -0,0 +1,195 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.model.Order;
+import ip.project.backend.backend.model.OrderLineItem;
+import ip.project.backend.backend.model.SalesDaily;
+import ip.project.backend.backend.modeldto.RespBestSellingProductDto;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.Fields;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * maintains the sales_daily rollup. every order is added once: orders which are written with line items are marked
+ * with rolledUp by their insert and added right away, all other orders are added by {@link #rollUpPending} as soon
+ * as they have line items, e.g. after the line item migration. the mark is set before the counters are increased;
+ * if the counters can not be written the mark is reset, so the next run adds the orders again. a crash in between
+ * loses the order in the rollup instead of counting it twice
+ */
+@Service
+public class SalesRollupService {
+
+    private final Logger logger = LoggerFactory.getLogger(SalesRollupService.class);
+    private final MongoTemplate mongoTemplate;
+    private final ZoneId zone;
+    private final int batchSize;
+
+    @Autowired
+    public SalesRollupService(MongoTemplate mongoTemplate,
+                              @Value("${sales.rollup.zone:Europe/Berlin}") String zone,
+                              @Value("${sales.rollup.batch-size:500}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.zone = ZoneId.of(zone);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * adds orders to the rollup which were just inserted with rolledUp set
+     *
+     * @param orders orders with line items
+     */
+    public void record(Collection<Order> orders) {
+        // line items of the same product and day become one upsert
+        Map<DayKey, SalesDaily> totals = new LinkedHashMap<>();
+        for (Order order : orders) {
+            if (order.getDate() == null || order.getLineItems() == null) {
+                continue;
+            }
+            Date day = startOfDay(order.getDate());
+            for (OrderLineItem item : order.getLineItems()) {
+                // products which are not in the catalog have no id to count them under
+                if (item.getProductId() == null) {
+                    continue;
+                }
+                SalesDaily total = totals.computeIfAbsent(new DayKey(item.getProductId(), day),
+                        key -> new SalesDaily(key.productId(), key.day(), item.getProductName(), 0, 0));
+                total.setQuantity(total.getQuantity() + item.getQuantity());
+                if (item.getUnitPriceCents() != null) {
+                    total.setRevenueCents(total.getRevenueCents() + item.getUnitPriceCents() * item.getQuantity());
+                }
+            }
+        }
+        if (totals.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SalesDaily.class);
+        for (SalesDaily total : totals.values()) {
+            Query query = new Query(Criteria.where("day").is(total.getDay()).and("productId").is(total.getProductId()));
+            bulk.upsert(query, new Update()
+                    .inc("quantity", total.getQuantity())
+                    .inc("revenueCents", total.getRevenueCents())
+                    .set("productName", total.getProductName()));
+        }
+        try {
+            bulk.execute();
+        } catch (DataAccessException e) {
+            logger.error("Could not add {} orders to the sales rollup, they are added by the next run: {}", orders.size(), e.getMessage());
+            release(orders);
+        }
+    }
+
+    // resets the mark of orders whose counters were not written, so rollUpPending picks them up again
+    private void release(Collection<Order> orders) {
+        List<ObjectId> ids = orders.stream()
+                .map(Order::getId)
+                .filter(Objects::nonNull)
+                .toList();
+        try {
+            mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(ids)), new Update().set("rolledUp", false), Order.class);
+        } catch (DataAccessException e) {
+            logger.error("Could not reset the rollup mark of {} orders, they are missing in the sales rollup: {}", ids.size(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sales.rollup.interval-ms:600000}", initialDelayString = "${sales.rollup.initial-delay-ms:90000}")
+    public void rollUpPendingScheduled() {
+        rollUpPending();
+    }
+
+    /**
+     * adds all orders with line items which are not in the rollup yet. each order is claimed with a conditional
+     * update first, so several instances never add the same order
+     *
+     * @return returns the number of added orders
+     */
+    public int rollUpPending() {
+        int added = 0;
+        while (true) {
+            Query query = new Query(pending()).limit(batchSize);
+            query.fields().include("date").include("lineItems");
+            List<Order> orders = mongoTemplate.find(query, Order.class);
+            if (orders.isEmpty()) {
+                break;
+            }
+
+            List<Order> claimed = new ArrayList<>(orders.size());
+            for (Order order : orders) {
+                Query unclaimed = new Query(Criteria.where("_id").is(order.getId()).andOperator(pending()));
+                if (mongoTemplate.updateFirst(unclaimed, new Update().set("rolledUp", true), Order.class).getModifiedCount() == 1) {
+                    claimed.add(order);
+                }
+            }
+            record(claimed);
+            added += claimed.size();
+            if (orders.size() < batchSize) {
+                break;
+            }
+        }
+        if (added > 0) {
+            logger.info("Added {} orders to the sales rollup", added);
+        }
+        return added;
+    }
+
+    // older orders have no rolledUp field, new orders without line items have false
+    private static Criteria pending() {
+        return Criteria.where("rolledUp").in(false, null).and("lineItems").exists(true);
+    }
+
+    /**
+     * finds the product with the most units sold between two days. reads only the rollup documents of the days
+     * in the range through the day_product index
+     *
+     * @param start first day, only the day is used
+     * @param end   last day (inclusive), only the day is used
+     * @return returns the product with its units and the days it was sold on, null if nothing was sold
+     */
+    public RespBestSellingProductDto getBestSelling(Date start, Date end) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("day").gte(startOfDay(start)).lte(startOfDay(end)).and("quantity").gt(0)),
+                Aggregation.sort(Sort.Direction.ASC, "day"),
+                Aggregation.group("productId")
+                        .sum("quantity").as("quantity")
+                        .push("day").as("days")
+                        .last("productName").as("productName"),
+                Aggregation.sort(Sort.by(Sort.Direction.DESC, "quantity").and(Sort.by(Sort.Direction.ASC, Fields.UNDERSCORE_ID))),
+                Aggregation.limit(1));
+
+        Document best = mongoTemplate.aggregate(aggregation, SalesDaily.class, Document.class).getUniqueMappedResult();
+        if (best == null) {
+            return null;
+        }
+        return new RespBestSellingProductDto(best.getString("productName"), best.getString(Fields.UNDERSCORE_ID),
+                best.getList("days", Date.class), ((Number) best.get("quantity")).intValue());
+    }
+
+    Date startOfDay(Date date) {
+        return Date.from(date.toInstant().atZone(zone).toLocalDate().atStartOfDay(zone).toInstant());
+    }
+
+    private record DayKey(String productId, Date day) {
+    }
+}
@@ -0,0 +1,91 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.model.Stock;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * makes stock.productId unique. older versions could insert two stock documents for the same product when two
+ * upserts raced, so before the unique index is created the documents of every product are merged into the oldest
+ * one: quantities are added up, the repurchase flags are kept if any document had them. the non unique index of
+ * older versions has the same name and is replaced. runs on every start, once the index exists it only reads the
+ * index list
+ */
+@Component
+public class StockIndexMigration {
+
+    static final String INDEX_NAME = "productId";
+
+    private final Logger logger = LoggerFactory.getLogger(StockIndexMigration.class);
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public StockIndexMigration(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void createUniqueIndex() {
+        try {
+            IndexOperations indexOps = mongoTemplate.indexOps(Stock.class);
+            if (indexOps.getIndexInfo().stream().anyMatch(index -> INDEX_NAME.equals(index.getName()) && index.isUnique())) {
+                return;
+            }
+            int merged = mergeDuplicates();
+            if (indexOps.getIndexInfo().stream().map(IndexInfo::getName).anyMatch(INDEX_NAME::equals)) {
+                indexOps.dropIndex(INDEX_NAME);
+            }
+            indexOps.ensureIndex(new Index().on("productId", Sort.Direction.ASC).unique().named(INDEX_NAME));
+            logger.info("Created unique stock index, merged {} duplicate stock documents", merged);
+        } catch (DataAccessException e) {
+            // without the index the stock works like before, concurrent upserts may create duplicates again
+            logger.error("Could not create the unique stock index: {}", e.getMessage());
+        }
+    }
+
+    // merges the stock documents of each product into its oldest one, returns the number of removed documents
+    int mergeDuplicates() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.sort(Sort.Direction.ASC, "_id"),
+                Aggregation.group("productId")
+                        .count().as("count")
+                        .push("_id").as("ids")
+                        .sum("quantity").as("quantity")
+                        .max("repurchased").as("repurchased")
+                        .max("shouldBeRepurchased").as("shouldBeRepurchased"),
+                Aggregation.match(Criteria.where("count").gt(1)));
+
+        int removed = 0;
+        for (Document duplicate : mongoTemplate.aggregate(aggregation, Stock.class, Document.class).getMappedResults()) {
+            List<ObjectId> ids = duplicate.getList("ids", ObjectId.class);
+            ObjectId kept = ids.get(0);
+            List<ObjectId> others = ids.subList(1, ids.size());
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(kept)), new Update()
+                    .set("quantity", ((Number) duplicate.get("quantity")).intValue())
+                    .set("repurchased", Boolean.TRUE.equals(duplicate.getBoolean("repurchased")))
+                    .set("shouldBeRepurchased", Boolean.TRUE.equals(duplicate.getBoolean("shouldBeRepurchased"))), Stock.class);
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(others)), Stock.class);
+            logger.warn("Merged {} stock documents of product {} into {}, quantity is now {}",
+                    ids.size(), duplicate.get("_id"), kept, duplicate.get("quantity"));
+            removed += others.size();
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,130 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.model.Stock;
+import ip.project.backend.backend.model.StockReservation;
+import ip.project.backend.backend.modeldto.ProductWithQuantity;
+import ip.project.backend.backend.repository.StockRepository;
+import ip.project.backend.backend.repository.StockReservationRepository;
+import ip.project.backend.backend.util.InsufficientStockException;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * holds stock for open stripe checkouts. a reservation is inserted first and checked afterwards against the stock
+ * minus all live reservations, its own included. two checkouts racing for the last unit can therefore both be
+ * rejected, but never both succeed, and no lock is needed. expired reservations are removed by a ttl index
+ */
+@Service
+public class StockReservationService {
+
+    private final Logger logger = LoggerFactory.getLogger(StockReservationService.class);
+    private final StockReservationRepository stockReservationRepository;
+    private final StockRepository stockRepository;
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public StockReservationService(StockReservationRepository stockReservationRepository, StockRepository stockRepository, MongoTemplate mongoTemplate) {
+        this.stockReservationRepository = stockReservationRepository;
+        this.stockRepository = stockRepository;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * reserves the products until expiresAt. products without stock are not tracked and not reserved
+     *
+     * @param products  products of the checkout
+     * @param expiresAt end of the reservation, the end of the checkout session
+     * @return returns the id of the reservation
+     * @throws InsufficientStockException if a product has not enough units available, nothing is reserved then
+     */
+    public String reserve(List<ProductWithQuantity> products, Date expiresAt) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (ProductWithQuantity product : products) {
+            if (product.getProductId() != null && product.getQuantity() > 0) {
+                quantities.merge(product.getProductId(), product.getQuantity(), Integer::sum);
+            }
+        }
+
+        String reservationId = UUID.randomUUID().toString();
+        List<StockReservation> reservations = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) -> reservations.add(new StockReservation(reservationId, productId, quantity, expiresAt)));
+        if (reservations.isEmpty()) {
+            return reservationId;
+        }
+        stockReservationRepository.insert(reservations);
+
+        // checked after the insert, so a concurrent checkout sees this reservation as well
+        Map<String, Integer> available = getAvailableToSell(quantities.keySet());
+        List<String> missing = available.entrySet().stream()
+                .filter(entry -> entry.getValue() < 0)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (!missing.isEmpty()) {
+            release(reservationId);
+            logger.warn("Checkout rejected, not enough stock for {}", missing);
+            throw new InsufficientStockException(missing);
+        }
+        logger.info("Reserved {} products until {} as {}", reservations.size(), expiresAt, reservationId);
+        return reservationId;
+    }
+
+    /**
+     * gives the units of a reservation back
+     *
+     * @param reservationId id of the reservation
+     */
+    public void release(String reservationId) {
+        long released = stockReservationRepository.deleteByReservationId(reservationId);
+        logger.debug("Released {} reservations of {}", released, reservationId);
+    }
+
+    /**
+     * stock minus live reservations. one query for the stock and one aggregation over the reservations,
+     * both use the index on productId
+     *
+     * @param productIds products to look up
+     * @return returns the units available to sell per product, products without stock are missing
+     */
+    public Map<String, Integer> getAvailableToSell(Collection<String> productIds) {
+        Map<String, Integer> reserved = getReservedQuantities(productIds);
+        Map<String, Integer> available = new HashMap<>();
+        for (Stock stock : stockRepository.findByProductIdIn(productIds)) {
+            int quantity = stock.getQuantity() != null ? stock.getQuantity() : 0;
+            available.put(stock.getProductId(), quantity - reserved.getOrDefault(stock.getProductId(), 0));
+        }
+        return available;
+    }
+
+    /**
+     * units held by live reservations. the ttl monitor only runs every minute, so expired reservations are
+     * filtered here as well
+     *
+     * @param productIds products to look up
+     * @return returns the reserved units per product, products without reservation are missing
+     */
+    public Map<String, Integer> getReservedQuantities(Collection<String> productIds) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("productId").in(productIds).and("expiresAt").gt(new Date())),
+                Aggregation.group("productId").sum("quantity").as("reserved"));
+        Map<String, Integer> reserved = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, StockReservation.class, Document.class).getMappedResults()) {
+            reserved.put(row.getString("_id"), ((Number) row.get("reserved")).intValue());
+        }
+        return reserved;
+    }
+}
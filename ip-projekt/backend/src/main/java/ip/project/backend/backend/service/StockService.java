@@ -4,9 +4,10 @@ import com.stripe.exception.StripeException;
 import com.stripe.model.Product;
 import ip.project.backend.backend.mapper.StockMapper;
 import ip.project.backend.backend.model.Stock;
+import ip.project.backend.backend.modeldto.ChangeEventDto;
 import ip.project.backend.backend.modeldto.StockDto;
 import ip.project.backend.backend.repository.StockRepository;
-import ip.project.backend.backend.util.StripeConnection;
+import ip.project.backend.backend.util.StripeGateway;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,12 +21,16 @@ import java.util.Optional;
 public class StockService {
     private final Logger logger = LoggerFactory.getLogger(StockService.class);
     private final StockRepository stockRepository;
-    private final StripeConnection stripeConnection;
+    private final StripeGateway stripeGateway;
+    private final ChangeFeedService changeFeedService;
+    private final StockReservationService stockReservationService;
 
     @Autowired
-    public StockService(StockRepository stockRepository, StripeConnection stripeConnection) {
+    public StockService(StockRepository stockRepository, StripeGateway stripeGateway, ChangeFeedService changeFeedService, StockReservationService stockReservationService) {
         this.stockRepository = stockRepository;
-        this.stripeConnection = stripeConnection;
+        this.stripeGateway = stripeGateway;
+        this.changeFeedService = changeFeedService;
+        this.stockReservationService = stockReservationService;
     }
 
 
@@ -75,7 +80,7 @@ public class StockService {
         }
         Product product = null;
         try {
-            product = stripeConnection.getStripeClient().products().retrieve(stockDto.getProductId());
+            product = stripeGateway.retrieveProduct(stockDto.getProductId());
         } catch (StripeException e) {
             logger.error("Error retrieving product from Stripe: {}", e.getMessage());
         }
@@ -86,6 +91,7 @@ public class StockService {
 
         Stock stock = StockMapper.INSTANCE.stockDtoToStock(stockDto);
         stockRepository.save(stock);
+        changeFeedService.publish(ChangeEventDto.STOCK_UPDATED, stockDto.getProductId(), stockDto);
         return Optional.empty();
     }
 
@@ -96,23 +102,77 @@ public class StockService {
      * @return returns empty optional or error message in optional object
      */
     public Optional<String> updateStock(StockDto stockDto) {
-        Optional<Stock> stock = stockRepository.findStockByProductId(stockDto.getProductId());
+        // one upsert instead of read and save, a concurrent sale is not overwritten with an old document
+        stockRepository.upsertStock(stockDto.getProductId(), stockDto.getQuantity(), stockDto.isRepurchased(), stockDto.isShouldBeRepurchased());
+        changeFeedService.publish(ChangeEventDto.STOCK_UPDATED, stockDto.getProductId(), stockDto);
+        return Optional.empty();
+    }
+
+    /**
+     * takes units from stock in one atomic step. fails instead of going below zero or taking units which are
+     * reserved for open checkouts, so two registers selling the last unit at once cannot both succeed.
+     * like a reservation the units are taken first and checked against the live reservations afterwards,
+     * a checkout reserving at the same time sees this sale as well
+     *
+     * @param productId product id of the stock
+     * @param amount    units to take, greater than 0
+     * @return returns the stock after the change, empty if there is no stock or not enough units
+     */
+    public Optional<StockDto> decreaseStock(String productId, int amount) {
+        Optional<Stock> stock = stockRepository.decrementQuantity(productId, amount);
         if (stock.isEmpty()) {
-            Stock s = new Stock(
-                    null,
-                    stockDto.getProductId(),
-                    stockDto.getQuantity(),
-                    stockDto.isRepurchased(),
-                    stockDto.isShouldBeRepurchased()
-            );
-            stockRepository.insert(s);
+            logger.warn("Could not take {} units of product {}: stock missing or too low", amount, productId);
             return Optional.empty();
         }
-        stock.get().setQuantity(stockDto.getQuantity());
-        stock.get().setRepurchased(stockDto.isRepurchased());
-        stock.get().setShouldBeRepurchased(stockDto.isShouldBeRepurchased());
-        stockRepository.save(stock.get());
-        return Optional.empty();
+        int reserved = stockReservationService.getReservedQuantities(List.of(productId)).getOrDefault(productId, 0);
+        if (stock.get().getQuantity() - reserved < 0) {
+            stockRepository.incrementQuantity(productId, amount);
+            logger.warn("Could not take {} units of product {}: {} units are reserved for open checkouts", amount, productId, reserved);
+            return Optional.empty();
+        }
+        return Optional.of(published(stock.get()));
+    }
+
+    /**
+     * takes paid units from stock in one atomic step. they were reserved before, so the quantity is not checked
+     *
+     * @param productId product id of the stock
+     * @param amount    units to take
+     * @return returns the stock after the change, empty if the product has no stock
+     */
+    public Optional<StockDto> takeReservedStock(String productId, int amount) {
+        Optional<Stock> stock = stockRepository.takeQuantity(productId, amount);
+        stock.filter(s -> s.getQuantity() != null && s.getQuantity() < 0)
+                .ifPresent(s -> logger.error("Product {} is oversold, stock is {}", productId, s.getQuantity()));
+        return stock.map(this::published);
+    }
+
+    /**
+     * adds units to stock in one atomic step, a missing stock is created
+     *
+     * @param productId product id of the stock
+     * @param amount    units to add, greater than 0
+     * @return returns the stock after the change
+     */
+    public StockDto increaseStock(String productId, int amount) {
+        return published(stockRepository.incrementQuantity(productId, amount));
+    }
+
+    /**
+     * sets the quantity in one atomic step, a missing stock is created
+     *
+     * @param productId product id of the stock
+     * @param quantity  new quantity
+     * @return returns the stock after the change
+     */
+    public StockDto setStockQuantity(String productId, int quantity) {
+        return published(stockRepository.setQuantity(productId, quantity));
+    }
+
+    private StockDto published(Stock stock) {
+        StockDto stockDto = StockMapper.INSTANCE.stockToDto(stock);
+        changeFeedService.publish(ChangeEventDto.STOCK_UPDATED, stockDto.getProductId(), stockDto);
+        return stockDto;
     }
 
 
@@ -135,6 +195,7 @@ public class StockService {
         }
 
         stockRepository.delete(stock.get());
+        changeFeedService.publish(ChangeEventDto.STOCK_UPDATED, productId, null);
         return Optional.empty();
     }
 
@@ -148,7 +209,7 @@ public class StockService {
     boolean productIsInactive(String productId) {
         Product product = null;
         try {
-            product = stripeConnection.getStripeClient().products().retrieve(productId);
+            product = stripeGateway.retrieveProduct(productId);
         } catch (StripeException e) {
             logger.error("Error retrieving product to check for inactivity from Stripe: {}", e.getMessage());
         }
@@ -0,0 +1,199 @@
+package ip.project.backend.backend.service;
+
+import com.stripe.exception.EventDataObjectDeserializationException;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import com.stripe.model.EventDataObjectDeserializer;
+import com.stripe.model.StripeObject;
+import com.stripe.model.checkout.Session;
+import com.stripe.net.Webhook;
+import ip.project.backend.backend.model.ProcessedStripeEvent;
+import ip.project.backend.backend.repository.ProcessedStripeEventRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * receives stripe webhooks. the request thread only checks the signature (one hmac) and puts the raw payload into a
+ * bounded queue, parsing and all database work run on a small worker pool. every event is handled once: its id is
+ * inserted into stripe_event first, a second delivery of the same event fails on the id and is skipped.
+ * stripe gets its 2xx before the event is handled, so an event whose handling fails is kept in stripe_event and
+ * retried by a scheduled job with growing delays. after the last attempt its marker is removed, so it can be sent
+ * again from the stripe dashboard
+ */
+@Service
+public class StripeWebhookService {
+
+    static final String SESSION_COMPLETED = "checkout.session.completed";
+    static final String SESSION_ASYNC_PAYMENT_SUCCEEDED = "checkout.session.async_payment_succeeded";
+    static final String SESSION_EXPIRED = "checkout.session.expired";
+
+    private static final long FIRST_RETRY_DELAY_MS = 60_000;
+    private static final long MAX_RETRY_DELAY_MS = 3_600_000;
+    // a claimed retry is due again after this time if the instance died while running it
+    private static final long RETRY_LEASE_MS = 600_000;
+
+    private final Logger logger = LoggerFactory.getLogger(StripeWebhookService.class);
+    private final Executor workers;
+    private final ProcessedStripeEventRepository processedStripeEventRepository;
+    private final CheckoutService checkoutService;
+    private final String secret;
+    private final int maxAttempts;
+
+    @Autowired
+    public StripeWebhookService(ProcessedStripeEventRepository processedStripeEventRepository, CheckoutService checkoutService,
+                                @Value("${stripe.webhook.secret:}") String secret,
+                                @Value("${stripe.webhook.workers:2}") int workers,
+                                @Value("${stripe.webhook.queue-capacity:1000}") int queueCapacity,
+                                @Value("${stripe.webhook.max-attempts:8}") int maxAttempts) {
+        this(new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                        Thread.ofPlatform().name("stripe-webhook-", 0).daemon(true).factory(), new ThreadPoolExecutor.AbortPolicy()),
+                processedStripeEventRepository, checkoutService, secret, maxAttempts);
+    }
+
+    StripeWebhookService(Executor workers, ProcessedStripeEventRepository processedStripeEventRepository, CheckoutService checkoutService,
+                         String secret, int maxAttempts) {
+        this.workers = workers;
+        this.processedStripeEventRepository = processedStripeEventRepository;
+        this.checkoutService = checkoutService;
+        this.secret = secret;
+        this.maxAttempts = maxAttempts;
+        if (secret == null || secret.isBlank()) {
+            logger.warn("stripe.webhook.secret is not set, all webhooks are rejected");
+        }
+    }
+
+    /**
+     * checks the signature and queues the event
+     *
+     * @param payload         raw request body, exactly as sent by stripe
+     * @param signatureHeader value of the Stripe-Signature header
+     * @return returns false if the queue is full, stripe retries the delivery later
+     * @throws SignatureVerificationException if the signature does not match or is too old
+     */
+    public boolean accept(String payload, String signatureHeader) throws SignatureVerificationException {
+        if (secret == null || secret.isBlank()) {
+            throw new SignatureVerificationException("Webhook secret is not configured", signatureHeader);
+        }
+        Webhook.Signature.verifyHeader(payload, signatureHeader, secret, Webhook.DEFAULT_TOLERANCE);
+        try {
+            workers.execute(() -> process(payload, signatureHeader));
+            return true;
+        } catch (RejectedExecutionException e) {
+            logger.warn("Stripe webhook queue is full, event is rejected for a retry");
+            return false;
+        }
+    }
+
+    public int getQueueSize() {
+        return workers instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (workers instanceof ExecutorService executorService) {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * retries the failed events which are due
+     */
+    @Scheduled(fixedDelayString = "${stripe.webhook.retry-interval-ms:60000}", initialDelayString = "${stripe.webhook.retry-initial-delay-ms:60000}")
+    public void retryFailedEvents() {
+        Date now = new Date();
+        for (ProcessedStripeEvent failed : processedStripeEventRepository.findTop100ByRetryAtLessThanEqualOrderByRetryAtAsc(now)) {
+            // another instance may have picked the same event
+            if (!processedStripeEventRepository.claimRetry(failed.getEventId(), failed.getRetryAt(), new Date(now.getTime() + RETRY_LEASE_MS))) {
+                continue;
+            }
+            Event event = parse(failed.getPayload(), failed.getSignature());
+            if (event == null) {
+                processedStripeEventRepository.deleteById(failed.getEventId());
+                continue;
+            }
+            logger.info("Retrying Stripe event {} of type {}, attempt {}", event.getId(), event.getType(), failed.getAttempts() + 1);
+            if (run(event, failed.getPayload(), failed.getSignature(), failed.getAttempts())) {
+                processedStripeEventRepository.markHandled(event.getId());
+            }
+        }
+    }
+
+    void process(String payload, String signatureHeader) {
+        Event event = parse(payload, signatureHeader);
+        if (event == null) {
+            return;
+        }
+        try {
+            processedStripeEventRepository.insert(new ProcessedStripeEvent(event.getId(), event.getType(), new Date()));
+        } catch (DuplicateKeyException e) {
+            logger.debug("Stripe event {} was already handled", event.getId());
+            return;
+        }
+        run(event, payload, signatureHeader, 0);
+    }
+
+    private Event parse(String payload, String signatureHeader) {
+        try {
+            // the timestamp was checked on arrival, events may wait in the queue or for a retry longer than the tolerance
+            return Webhook.constructEvent(payload, signatureHeader, secret, 0);
+        } catch (SignatureVerificationException | RuntimeException e) {
+            logger.error("Could not parse queued Stripe event: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // handles the event, a failure is kept for a retry until maxAttempts failed. returns true if it was handled
+    private boolean run(Event event, String payload, String signatureHeader, int failedAttempts) {
+        try {
+            handle(event);
+            return true;
+        } catch (RuntimeException | EventDataObjectDeserializationException e) {
+            int attempts = failedAttempts + 1;
+            if (attempts >= maxAttempts) {
+                // stripe got its 2xx already, the event can be sent again from the stripe dashboard
+                processedStripeEventRepository.deleteById(event.getId());
+                logger.error("Giving up on Stripe event {} of type {} after {} attempts: {}", event.getId(), event.getType(), attempts, e.getMessage(), e);
+                return false;
+            }
+            long delay = Math.min(MAX_RETRY_DELAY_MS, FIRST_RETRY_DELAY_MS << Math.min(attempts - 1, 20));
+            processedStripeEventRepository.scheduleRetry(event.getId(), payload, signatureHeader, attempts, new Date(System.currentTimeMillis() + delay));
+            logger.error("Could not handle Stripe event {} of type {}, retrying in {} s: {}", event.getId(), event.getType(), delay / 1000, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private void handle(Event event) throws EventDataObjectDeserializationException {
+        switch (event.getType()) {
+            case SESSION_COMPLETED, SESSION_ASYNC_PAYMENT_SUCCEEDED -> {
+                Session session = session(event);
+                // delayed payment methods complete the session unpaid and send async_payment_succeeded later
+                if ("paid".equals(session.getPaymentStatus())) {
+                    checkoutService.commitCheckout(session.getId());
+                }
+            }
+            case SESSION_EXPIRED -> checkoutService.expireCheckout(session(event).getId());
+            default -> logger.debug("Ignoring Stripe event {} of type {}", event.getId(), event.getType());
+        }
+    }
+
+    private static Session session(Event event) throws EventDataObjectDeserializationException {
+        EventDataObjectDeserializer deserializer = event.getDataObjectDeserializer();
+        // the api version of the webhook endpoint may differ from the one of the library
+        StripeObject object = deserializer.getObject().isPresent() ? deserializer.getObject().get() : deserializer.deserializeUnsafe();
+        return (Session) object;
+    }
+}
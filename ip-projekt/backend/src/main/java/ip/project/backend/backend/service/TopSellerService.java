@@ -0,0 +1,212 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.model.OrderLineItem;
+import ip.project.backend.backend.modeldto.TopSellerDto;
+import ip.project.backend.backend.util.SpaceSavingSketch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * live top sellers of the last 15 minutes, the last hour and today, kept in memory and fed by every sale of the
+ * registers. sales are counted in one space-saving sketch per window and in a sketch per minute; when a minute
+ * leaves a window the sketch of the window is rebuilt from its remaining minutes, so counts an item took over from
+ * evicted items leave the window too. memory is bounded by the capacity of the sketches: 60 minute sketches plus
+ * one per window. counts are held per instance and start empty
+ */
+@Service
+public class TopSellerService {
+
+    private static final long QUARTER_HOUR_MINUTES = 15;
+    private static final long HOUR_MINUTES = 60;
+    // products of registers without line items are counted by name
+    private static final String NAME_PREFIX = "name:";
+
+    private final Clock clock;
+    private final ZoneId zone;
+    private final int capacity;
+
+    private final TreeMap<Long, Minute> minutes = new TreeMap<>();
+    private final SpaceSavingSketch lastQuarterHour;
+    private final SpaceSavingSketch lastHour;
+    private final SpaceSavingSketch today;
+    private LocalDate day;
+
+    // names of the counted products, bounded like the sketches
+    private final Map<String, String> names;
+
+    @Autowired
+    public TopSellerService(@Value("${sales.top-sellers.capacity:100}") int capacity,
+                            @Value("${sales.rollup.zone:Europe/Berlin}") String zone) {
+        this(Clock.system(ZoneId.of(zone)), capacity);
+    }
+
+    TopSellerService(Clock clock, int capacity) {
+        this.clock = clock;
+        this.zone = clock.getZone();
+        this.capacity = capacity;
+        this.lastQuarterHour = new SpaceSavingSketch(capacity);
+        this.lastHour = new SpaceSavingSketch(capacity);
+        this.today = new SpaceSavingSketch(capacity);
+        this.day = LocalDate.now(clock);
+        this.names = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity * 4;
+            }
+        };
+    }
+
+    /**
+     * counts a sale. line items are counted by product id, registers which only send product names count
+     * one unit per name
+     *
+     * @param date         time of the sale, sales older than the windows are ignored
+     * @param lineItems    products of the sale, may be null
+     * @param productNames product names of the sale, used if there are no line items
+     */
+    public void recordSale(Date date, List<OrderLineItem> lineItems, List<String> productNames) {
+        Instant at = date != null ? date.toInstant() : clock.instant();
+        if (lineItems != null) {
+            for (OrderLineItem item : lineItems) {
+                String key = item.getProductId() != null ? item.getProductId() : NAME_PREFIX + item.getProductName();
+                record(key, item.getProductName(), item.getQuantity(), at);
+            }
+        } else if (productNames != null) {
+            for (String name : productNames) {
+                record(NAME_PREFIX + name, name, 1, at);
+            }
+        }
+    }
+
+    synchronized void record(String key, String name, long quantity, Instant at) {
+        long now = clock.instant().getEpochSecond() / 60;
+        advance(now);
+        // a register clock ahead of ours counts as now
+        Instant sold = at.isAfter(clock.instant()) ? clock.instant() : at;
+        long minute = sold.getEpochSecond() / 60;
+
+        if (name != null) {
+            names.put(key, name);
+        }
+        if (sold.atZone(zone).toLocalDate().equals(day)) {
+            today.add(key, quantity);
+        }
+        if (minute <= now - HOUR_MINUTES) {
+            return;
+        }
+        Minute bucket = minutes.computeIfAbsent(minute, m -> new Minute(capacity, m > now - QUARTER_HOUR_MINUTES));
+        bucket.sketch.add(key, quantity);
+        lastHour.add(key, quantity);
+        if (bucket.inQuarterHour) {
+            lastQuarterHour.add(key, quantity);
+        }
+    }
+
+    /**
+     * @param window the window
+     * @param limit  maximum number of products
+     * @return returns the products with the most units sold in the window, most first
+     */
+    public synchronized List<TopSellerDto> getTopSellers(Window window, int limit) {
+        advance(clock.instant().getEpochSecond() / 60);
+        SpaceSavingSketch sketch = switch (window) {
+            case QUARTER_HOUR -> lastQuarterHour;
+            case HOUR -> lastHour;
+            case TODAY -> today;
+        };
+        return sketch.top(limit).stream()
+                .map(this::toTopSeller)
+                .toList();
+    }
+
+    private TopSellerDto toTopSeller(SpaceSavingSketch.Counter counter) {
+        String key = counter.item();
+        if (key.startsWith(NAME_PREFIX)) {
+            return new TopSellerDto(null, key.substring(NAME_PREFIX.length()), counter.count(), counter.error());
+        }
+        return new TopSellerDto(key, names.get(key), counter.count(), counter.error());
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // rebuilds the sketch of a window when minutes left it
+    private void advance(long now) {
+        LocalDate currentDay = LocalDate.ofInstant(clock.instant(), zone);
+        if (!currentDay.equals(day)) {
+            today.clear();
+            day = currentDay;
+        }
+        boolean quarterHourChanged = false;
+        boolean hourChanged = false;
+        Iterator<Map.Entry<Long, Minute>> iterator = minutes.headMap(now - QUARTER_HOUR_MINUTES, true).entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Minute> entry = iterator.next();
+            Minute bucket = entry.getValue();
+            if (bucket.inQuarterHour) {
+                bucket.inQuarterHour = false;
+                quarterHourChanged = true;
+            }
+            if (entry.getKey() <= now - HOUR_MINUTES) {
+                iterator.remove();
+                hourChanged = true;
+            }
+        }
+        // subtracting is not enough, the error an item took over on eviction is not part of any minute
+        if (quarterHourChanged) {
+            lastQuarterHour.clear();
+            minutes.values().stream()
+                    .filter(bucket -> bucket.inQuarterHour)
+                    .forEach(bucket -> lastQuarterHour.merge(bucket.sketch));
+        }
+        if (hourChanged) {
+            lastHour.clear();
+            minutes.values().forEach(bucket -> lastHour.merge(bucket.sketch));
+        }
+    }
+
+    private static final class Minute {
+        private final SpaceSavingSketch sketch;
+        private boolean inQuarterHour;
+
+        private Minute(int capacity, boolean inQuarterHour) {
+            this.sketch = new SpaceSavingSketch(capacity);
+            this.inQuarterHour = inQuarterHour;
+        }
+    }
+
+    /**
+     * windows of {@link #getTopSellers}
+     */
+    public enum Window {
+        QUARTER_HOUR("15m"), HOUR("1h"), TODAY("today");
+
+        private final String param;
+
+        Window(String param) {
+            this.param = param;
+        }
+
+        public static Window fromParam(String param) {
+            for (Window window : values()) {
+                if (window.param.equalsIgnoreCase(param)) {
+                    return window;
+                }
+            }
+            throw new IllegalArgumentException("Unknown window " + param);
+        }
+    }
+}
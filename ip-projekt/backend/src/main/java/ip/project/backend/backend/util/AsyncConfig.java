@@ -1,9 +1,39 @@
 package ip.project.backend.backend.util;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
 @Configuration
 @EnableAsync
 public class AsyncConfig {
+
+    /**
+     * one executor for all blocking stripe calls, capped at stripe.executor.max-concurrency parallel calls
+     */
+    @Bean(destroyMethod = "shutdown")
+    public StripeExecutor stripeExecutor(@Value("${stripe.executor.max-concurrency:16}") int maxConcurrency,
+                                         @Value("${stripe.executor.virtual-threads:true}") boolean virtualThreads,
+                                         MeterRegistry meterRegistry) {
+        StripeExecutor stripeExecutor = new StripeExecutor(maxConcurrency, virtualThreads);
+
+        Gauge.builder("stripe.executor.queued", stripeExecutor, StripeExecutor::getQueuedCalls)
+                .description("Stripe calls waiting for a free slot")
+                .register(meterRegistry);
+        Gauge.builder("stripe.executor.active", stripeExecutor, StripeExecutor::getActiveCalls)
+                .description("Stripe calls currently running")
+                .register(meterRegistry);
+        FunctionCounter.builder("stripe.executor.completed", stripeExecutor, StripeExecutor::getCompletedCalls)
+                .description("Stripe calls completed since start")
+                .register(meterRegistry);
+        Gauge.builder("stripe.executor.max", stripeExecutor, StripeExecutor::getMaxConcurrency)
+                .description("Maximum number of parallel Stripe calls")
+                .register(meterRegistry);
+
+        return stripeExecutor;
+    }
 }
@@ -0,0 +1,124 @@
+package ip.project.backend.backend.util;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import ip.project.backend.backend.modeldto.ProductDto;
+import ip.project.backend.backend.service.CatalogSnapshot;
+import ip.project.backend.backend.service.ProductService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * caffeine caches used by the controllers. every cache has its own size bound and expiry and records statistics,
+ * which actuator exports as cache.gets, cache.puts, cache.evictions and cache.load metrics.
+ * the "all" lists of AllProducts and ActiveProducts are refreshed in the background once they are older than
+ * the refresh interval, requests keep getting the old list until the new one is loaded
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String ALL_PRODUCTS = "AllProducts";
+    public static final String ACTIVE_PRODUCTS = "ActiveProducts";
+    public static final String PRICE_HISTORY = "PriceHistory";
+    public static final String ALL_STOCK = "AllStock";
+    public static final String PRICE_TO_PRODUCT_ID = "PriceToProductId";
+
+    // key of the complete product list in AllProducts and ActiveProducts
+    public static final String ALL_KEY = "all";
+
+    @Bean
+    public CacheManager cacheManager(ProductService productService, Environment environment,
+                                     @Qualifier("cacheRefreshExecutor") ExecutorService cacheRefreshExecutor) {
+        return createCacheManager(productService, environment, Ticker.systemTicker(), cacheRefreshExecutor);
+    }
+
+    /**
+     * runs the background refreshes of the product caches. a refresh blocks on mongo or stripe, so it gets its own
+     * virtual threads instead of the common pool
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService cacheRefreshExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("cache-refresh-", 0).factory());
+    }
+
+    static CaffeineCacheManager createCacheManager(ProductService productService, Environment environment, Ticker ticker, Executor executor) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+
+        cacheManager.registerCustomCache(ALL_PRODUCTS, productCache(environment, "all-products", ticker, executor)
+                .build(new ProductCacheLoader(productService, productService::getAllProducts, CatalogSnapshot::of)));
+        cacheManager.registerCustomCache(ACTIVE_PRODUCTS, productCache(environment, "active-products", ticker, executor)
+                .build(new ProductCacheLoader(productService, productService::getActiveProducts, products -> products)));
+        cacheManager.registerCustomCache(PRICE_HISTORY, expiringCache(environment, "price-history", 5000, 600, ticker).build());
+        cacheManager.registerCustomCache(ALL_STOCK, expiringCache(environment, "all-stock", 100, 60, ticker).build());
+        cacheManager.registerCustomCache(PRICE_TO_PRODUCT_ID, expiringCache(environment, "price-to-product-id", 10000, 600, ticker).build());
+
+        // caches which are not configured here are not created on the fly
+        cacheManager.setCacheNames(List.of());
+        return cacheManager;
+    }
+
+    private static Caffeine<Object, Object> productCache(Environment environment, String name, Ticker ticker, Executor executor) {
+        return Caffeine.newBuilder()
+                .maximumSize(environment.getProperty("cache." + name + ".max-size", Long.class, 20000L))
+                .refreshAfterWrite(Duration.ofSeconds(environment.getProperty("cache." + name + ".refresh-seconds", Long.class, 60L)))
+                .expireAfterWrite(Duration.ofSeconds(environment.getProperty("cache." + name + ".expire-seconds", Long.class, 3600L)))
+                .ticker(ticker)
+                .executor(executor)
+                .recordStats();
+    }
+
+    private static Caffeine<Object, Object> expiringCache(Environment environment, String name, long defaultMaxSize, long defaultExpireSeconds, Ticker ticker) {
+        return Caffeine.newBuilder()
+                .maximumSize(environment.getProperty("cache." + name + ".max-size", Long.class, defaultMaxSize))
+                .expireAfterWrite(Duration.ofSeconds(environment.getProperty("cache." + name + ".expire-seconds", Long.class, defaultExpireSeconds)))
+                .ticker(ticker)
+                .recordStats();
+    }
+
+    /**
+     * loads the value for the "all" key: a {@link CatalogSnapshot} of all products in AllProducts, the plain list of
+     * the active products in ActiveProducts.
+     * single products are put by the controller, a refresh reads them again from the catalog mirror
+     */
+    static class ProductCacheLoader implements CacheLoader<Object, Object> {
+
+        private final ProductService productService;
+        private final Supplier<List<ProductDto>> products;
+        private final Function<List<ProductDto>, Object> allValue;
+
+        ProductCacheLoader(ProductService productService, Supplier<List<ProductDto>> products, Function<List<ProductDto>, Object> allValue) {
+            this.productService = productService;
+            this.products = products;
+            this.allValue = allValue;
+        }
+
+        @Override
+        public Object load(Object key) {
+            // misses of single products are handled by the controller
+            return ALL_KEY.equals(key) ? allValue.apply(products.get()) : null;
+        }
+
+        @Override
+        public Object reload(Object key, Object oldValue) {
+            if (ALL_KEY.equals(key)) {
+                return allValue.apply(products.get());
+            }
+            return productService.getProductById(key.toString()).orElse(null);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ip.project.backend.backend.util;
+
+import java.util.List;
+
+/**
+ * thrown when a checkout wants more units than are available to sell
+ */
+public class InsufficientStockException extends RuntimeException {
+
+    private final List<String> productIds;
+
+    public InsufficientStockException(List<String> productIds) {
+        super("Not enough stock for products: " + String.join(", ", productIds));
+        this.productIds = productIds;
+    }
+
+    public List<String> getProductIds() {
+        return productIds;
+    }
+}
@@ -0,0 +1,168 @@
+package ip.project.backend.backend.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * immutable, already serialized json body of a cached value, plain and gzip'd, with an etag computed from the json.
+ * built once per cached value (the source is compared by identity), every request after that only writes the
+ * bytes or answers 304 if the client already has them
+ */
+public final class SerializedSnapshot {
+
+    private final Object source;
+    private final byte[] json;
+    private final byte[] gzip;
+    private final String etag;
+    private final String gzipEtag;
+
+    private SerializedSnapshot(Object source, byte[] json, byte[] gzip, String hash) {
+        this.source = source;
+        this.json = json;
+        this.gzip = gzip;
+        this.etag = "\"" + hash + "\"";
+        // the gzip'd body is a different representation, so it gets its own strong etag
+        this.gzipEtag = "\"" + hash + "-gzip\"";
+    }
+
+    /**
+     * serializes the value to json and compresses it
+     *
+     * @param source cached object the value was taken from, used to detect if the snapshot is outdated
+     * @param value  value to serialize
+     * @param objectMapper mapper used for the json body
+     * @return returns the snapshot
+     * @throws IOException if the value cannot be serialized
+     */
+    public static SerializedSnapshot of(Object source, Object value, ObjectMapper objectMapper) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(value);
+        return new SerializedSnapshot(source, json, gzip(json), hash(json));
+    }
+
+    /**
+     * @return returns true if this snapshot was built from exactly this object
+     */
+    public boolean isFor(Object source) {
+        return this.source == source;
+    }
+
+    /**
+     * builds the response. 304 without a body if the If-None-Match header contains the etag,
+     * otherwise 200 with the gzip'd body if the client accepts gzip, else the plain json
+     *
+     * @param headers        additional headers for both the 200 and the 304 response (e.g. the stale data header)
+     * @param ifNoneMatch    value of the If-None-Match header, may be null
+     * @param acceptEncoding value of the Accept-Encoding header, may be null
+     * @return returns the response
+     */
+    public ResponseEntity<byte[]> toResponse(HttpHeaders headers, String ifNoneMatch, String acceptEncoding) {
+        boolean useGzip = acceptsGzip(acceptEncoding);
+        boolean notModified = matches(ifNoneMatch);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                .headers(headers)
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .eTag(useGzip ? gzipEtag : etag);
+
+        if (notModified) {
+            return builder.build();
+        }
+
+        byte[] body = useGzip ? gzip : json;
+        if (useGzip) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return builder.contentType(MediaType.APPLICATION_JSON)
+                .contentLength(body.length)
+                .body(body);
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getGzipEtag() {
+        return gzipEtag;
+    }
+
+    public byte[] getJson() {
+        return json;
+    }
+
+    // true if one of the etags in the header is the etag of either representation
+    boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals(gzipEtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            // "gzip;q=0" means the client does not want gzip
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, json.length / 4));
+        // compressed once per snapshot, so the best compression is worth it
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzipOut.write(json);
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            // every java runtime has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ip.project.backend.backend.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * space-saving sketch, keeps the most frequent items of a stream with at most capacity counters. an item which is
+ * not counted yet replaces the item with the smallest count and takes over that count as its error, so a count is
+ * never too low and at most error too high, and every item with more than total / capacity units is kept.
+ * the counters are also held in a tree ordered by count, so add and the smallest counter are
+ * O(log capacity) and the top n are read in O(log capacity + n). not thread safe
+ */
+public class SpaceSavingSketch {
+
+    private static final Comparator<Counter> BY_COUNT = Comparator.comparingLong(Counter::count).thenComparing(Counter::item);
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final TreeSet<Counter> byCount = new TreeSet<>(BY_COUNT);
+
+    public SpaceSavingSketch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * adds units of an item
+     *
+     * @param item  the item
+     * @param count units to add
+     */
+    public void add(String item, long count) {
+        add(item, count, 0);
+    }
+
+    /**
+     * adds all counters of another sketch, their errors are kept. the merged counts are never too low and at most
+     * the sum of both errors too high
+     *
+     * @param other the sketch to add
+     */
+    public void merge(SpaceSavingSketch other) {
+        for (Counter counter : other.counters()) {
+            add(counter.item(), counter.count(), counter.error());
+        }
+    }
+
+    private void add(String item, long count, long error) {
+        if (count <= 0) {
+            return;
+        }
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            replace(counter, new Counter(item, counter.count() + count, counter.error() + error));
+        } else if (counters.size() < capacity) {
+            put(new Counter(item, count, error));
+        } else {
+            Counter smallest = byCount.pollFirst();
+            counters.remove(smallest.item());
+            put(new Counter(item, smallest.count() + count, smallest.count() + error));
+        }
+    }
+
+    /**
+     * @param n maximum number of items
+     * @return returns the n items with the highest counts, highest first
+     */
+    public List<Counter> top(int n) {
+        List<Counter> top = new ArrayList<>(Math.min(n, counters.size()));
+        Iterator<Counter> iterator = byCount.descendingIterator();
+        while (iterator.hasNext() && top.size() < n) {
+            top.add(iterator.next());
+        }
+        return top;
+    }
+
+    /**
+     * @return returns all counters, in no particular order
+     */
+    public Iterable<Counter> counters() {
+        return counters.values();
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    public void clear() {
+        counters.clear();
+        byCount.clear();
+    }
+
+    private void replace(Counter old, Counter updated) {
+        byCount.remove(old);
+        put(updated);
+    }
+
+    private void put(Counter counter) {
+        counters.put(counter.item(), counter);
+        byCount.add(counter);
+    }
+
+    /**
+     * count of an item, error is the part of the count which may belong to items it replaced
+     */
+    public record Counter(String item, long count, long error) {
+    }
+}
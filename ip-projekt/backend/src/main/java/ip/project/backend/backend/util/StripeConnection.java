@@ -1,6 +1,8 @@
 package ip.project.backend.backend.util;
 
 import com.stripe.StripeClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -8,13 +10,24 @@ public class StripeConnection {
 
     private final StripeClient stripeClient;
 
-    public StripeConnection() {
+    /**
+     * timeouts are kept short, a hanging stripe call must not block a request thread for the default 80 seconds.
+     * network retries are done by {@link StripeGateway}
+     */
+    @Autowired
+    public StripeConnection(@Value("${stripe.connect-timeout-ms:5000}") int connectTimeoutMs,
+                            @Value("${stripe.read-timeout-ms:15000}") int readTimeoutMs) {
         String stripeKey = System.getenv("STRIPE_SECRETKEY");
 
         if(stripeKey == null || stripeKey.isEmpty()) {
             throw new IllegalArgumentException("Stripe secret key is not set in environment variables.");
         }
-        stripeClient = new StripeClient(stripeKey);
+        stripeClient = StripeClient.builder()
+                .setApiKey(stripeKey)
+                .setConnectTimeout(connectTimeoutMs)
+                .setReadTimeout(readTimeoutMs)
+                .setMaxNetworkRetries(0)
+                .build();
     }
 
     public StripeClient getStripeClient() {
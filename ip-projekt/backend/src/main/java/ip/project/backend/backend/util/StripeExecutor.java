@@ -0,0 +1,98 @@
+package ip.project.backend.backend.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * shared executor for blocking stripe http calls.
+ * every task waits for a permit before it runs, so no matter how many requests fan out at the same time
+ * at most maxConcurrency stripe calls are in flight. waiting on a virtual thread costs no platform thread.
+ * created in {@link AsyncConfig}
+ */
+public class StripeExecutor {
+
+    private final ExecutorService executorService;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    private final AtomicInteger queuedCalls = new AtomicInteger();
+    private final AtomicInteger activeCalls = new AtomicInteger();
+    private final AtomicLong completedCalls = new AtomicLong();
+
+    public StripeExecutor(int maxConcurrency, boolean virtualThreads) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.executorService = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stripe-io-", 0).factory())
+                : Executors.newFixedThreadPool(maxConcurrency, Thread.ofPlatform().name("stripe-io-", 0).daemon(true).factory());
+    }
+
+    /**
+     * runs the call on the stripe executor once a permit is free
+     *
+     * @param call blocking stripe call
+     * @return future with the result. exceptions of the call are wrapped in a CompletionException
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> call) {
+        queuedCalls.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                queuedCalls.decrementAndGet();
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            queuedCalls.decrementAndGet();
+            activeCalls.incrementAndGet();
+            try {
+                return call.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                activeCalls.decrementAndGet();
+                completedCalls.incrementAndGet();
+                permits.release();
+            }
+        }, executorService);
+    }
+
+    /**
+     * number of calls waiting for a permit
+     */
+    public int getQueuedCalls() {
+        return queuedCalls.get();
+    }
+
+    /**
+     * number of stripe calls currently running
+     */
+    public int getActiveCalls() {
+        return activeCalls.get();
+    }
+
+    public long getCompletedCalls() {
+        return completedCalls.get();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void shutdown() throws InterruptedException {
+        executorService.shutdown();
+        if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+            executorService.shutdownNow();
+        }
+    }
+}
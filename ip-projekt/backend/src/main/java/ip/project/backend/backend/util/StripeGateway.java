@@ -0,0 +1,338 @@
+package ip.project.backend.backend.util;
+
+import com.stripe.StripeClient;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Price;
+import com.stripe.model.Product;
+import com.stripe.param.ProductRetrieveParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * single entry point for all stripe calls.
+ * every http request takes a token of the rate limiter first, so we stay below the stripe quota.
+ * failed calls are retried with jittered exponential backoff:
+ * reads on 429, 5xx and connection errors, writes only on 429 because stripe did not process them.
+ * concurrent retrieves of the same product or price share one http request.
+ * after failureThreshold consecutive 5xx or connection errors the circuit opens and every call fails fast
+ * with a {@link StripeUnavailableException} for openMs. then a single probe call decides whether it closes again
+ */
+@Component
+public class StripeGateway {
+
+    /**
+     * response header set by controllers when data is served from a local copy because stripe is not reachable
+     */
+    public static final String STALE_DATA_HEADER = "X-Data-Stale";
+
+    private final Logger logger = LoggerFactory.getLogger(StripeGateway.class);
+
+    private final StripeConnection stripeConnection;
+    private final TokenBucket rateLimiter;
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    private final Map<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    public enum CircuitState { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMs;
+    private final Object circuitLock = new Object();
+    private CircuitState circuitState = CircuitState.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openUntil = 0;
+    // token of the running probe call, 0 if none. a new half open phase hands out a new token
+    private long runningProbe = 0;
+    private long lastProbe = 0;
+
+    @Autowired
+    public StripeGateway(StripeConnection stripeConnection,
+                         @Value("${stripe.rate-limit.requests-per-second:25}") double requestsPerSecond,
+                         @Value("${stripe.rate-limit.burst:25}") int burst,
+                         @Value("${stripe.retry.max-attempts:4}") int maxAttempts,
+                         @Value("${stripe.retry.base-delay-ms:200}") long baseDelayMs,
+                         @Value("${stripe.retry.max-delay-ms:5000}") long maxDelayMs,
+                         @Value("${stripe.circuit.failure-threshold:5}") int failureThreshold,
+                         @Value("${stripe.circuit.open-ms:30000}") long openMs) {
+        this.stripeConnection = stripeConnection;
+        this.rateLimiter = new TokenBucket(requestsPerSecond, burst);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = openMs;
+    }
+
+    /**
+     * a single request against the stripe client
+     */
+    @FunctionalInterface
+    public interface StripeCall<T> {
+        T call(StripeClient client) throws StripeException;
+    }
+
+    /**
+     * runs a reading call (retrieve, list, search). retried on 429, 5xx and connection errors
+     *
+     * @param call call to run
+     * @return returns the result of the call
+     * @throws StripeException last error if all attempts failed or the error is not retryable
+     */
+    public <T> T read(StripeCall<T> call) throws StripeException {
+        return execute(call, true);
+    }
+
+    /**
+     * runs a writing call (create, update, delete). only retried on 429,
+     * since after a 5xx or a broken connection stripe may already have executed the request
+     *
+     * @param call call to run
+     * @return returns the result of the call
+     * @throws StripeException last error if all attempts failed or the error is not retryable
+     */
+    public <T> T write(StripeCall<T> call) throws StripeException {
+        return execute(call, false);
+    }
+
+    public Product retrieveProduct(String productId) throws StripeException {
+        return retrieveProduct(productId, null);
+    }
+
+    /**
+     * retrieves a product. concurrent calls with the same id and params share one request
+     *
+     * @param productId id of the product
+     * @param params retrieve params, may be null
+     * @return returns the product
+     * @throws StripeException if stripe fails
+     */
+    public Product retrieveProduct(String productId, ProductRetrieveParams params) throws StripeException {
+        String key = "product:" + productId + (params == null || params.getExpand() == null ? "" : ":" + String.join(",", params.getExpand()));
+        return singleFlight(key, client -> params == null
+                ? client.products().retrieve(productId)
+                : client.products().retrieve(productId, params));
+    }
+
+    /**
+     * retrieves a price. concurrent calls with the same id share one request
+     *
+     * @param priceId id of the price
+     * @return returns the price
+     * @throws StripeException if stripe fails
+     */
+    public Price retrievePrice(String priceId) throws StripeException {
+        return singleFlight("price:" + priceId, client -> client.prices().retrieve(priceId));
+    }
+
+    /**
+     * the first caller of a key runs the request, every caller arriving while it runs waits for the same result
+     */
+    @SuppressWarnings("unchecked")
+    <T> T singleFlight(String key, StripeCall<T> call) throws StripeException {
+        CompletableFuture<T> own = new CompletableFuture<>();
+        CompletableFuture<T> running = (CompletableFuture<T>) inFlight.putIfAbsent(key, own);
+
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof StripeException stripeException) throw stripeException;
+                throw e;
+            }
+        }
+
+        try {
+            T result = read(call);
+            own.complete(result);
+            return result;
+        } catch (StripeException | RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * @return returns false while the circuit is open and calls fail fast
+     */
+    public boolean isAvailable() {
+        synchronized (circuitLock) {
+            return circuitState != CircuitState.OPEN || System.currentTimeMillis() >= openUntil;
+        }
+    }
+
+    public CircuitState getCircuitState() {
+        synchronized (circuitLock) {
+            return circuitState;
+        }
+    }
+
+    private <T> T execute(StripeCall<T> call, boolean idempotent) throws StripeException {
+        for (int attempt = 1; ; attempt++) {
+            long probe = beforeCall();
+            StripeException failure;
+            // the probe slot is given back on every exit, also on runtime errors of the sdk and interrupts
+            try {
+                acquirePermit();
+                try {
+                    T result = call.call(stripeConnection.getStripeClient());
+                    onResult(null, probe);
+                    return result;
+                } catch (StripeException e) {
+                    onResult(e, probe);
+                    failure = e;
+                }
+            } finally {
+                releaseProbe(probe);
+            }
+
+            if (attempt >= maxAttempts || !isRetryable(failure, idempotent)) {
+                throw failure;
+            }
+            long delay = backoffDelay(attempt);
+            logger.warn("Stripe call failed with status {} ({}), retry {} of {} in {} ms",
+                    failure.getStatusCode(), failure.getMessage(), attempt, maxAttempts - 1, delay);
+            sleep(delay, failure);
+        }
+    }
+
+    /**
+     * lets the call pass if the circuit is closed. an open circuit turns half open after openMs,
+     * then exactly one call is let through as probe
+     *
+     * @return returns the probe token if this call is the probe, 0 otherwise
+     */
+    private long beforeCall() throws StripeUnavailableException {
+        synchronized (circuitLock) {
+            if (circuitState == CircuitState.OPEN) {
+                if (System.currentTimeMillis() < openUntil) {
+                    throw new StripeUnavailableException("Stripe circuit is open, call rejected");
+                }
+                circuitState = CircuitState.HALF_OPEN;
+                runningProbe = 0;
+            }
+            if (circuitState == CircuitState.HALF_OPEN) {
+                if (runningProbe != 0) {
+                    throw new StripeUnavailableException("Stripe circuit is half open, probe call is running");
+                }
+                runningProbe = ++lastProbe;
+                return runningProbe;
+            }
+            return 0;
+        }
+    }
+
+    private void releaseProbe(long probe) {
+        if (probe == 0) {
+            return;
+        }
+        synchronized (circuitLock) {
+            // a probe of an earlier half open phase must not free the slot of the current one
+            if (runningProbe == probe) {
+                runningProbe = 0;
+            }
+        }
+    }
+
+    /**
+     * any answer of stripe (also 4xx) closes the circuit, 5xx and connection errors count as failures.
+     * while the circuit is not closed only the result of the probe counts, late calls which were started
+     * before the circuit opened do not change it
+     *
+     * @param e     error of the call, null if it succeeded
+     * @param probe probe token of the call, 0 if it is no probe
+     */
+    private void onResult(StripeException e, long probe) {
+        synchronized (circuitLock) {
+            if (circuitState != CircuitState.CLOSED && (probe == 0 || probe != runningProbe)) {
+                return;
+            }
+            if (e == null || !isOutage(e)) {
+                if (circuitState != CircuitState.CLOSED) {
+                    logger.info("Stripe answered again, closing circuit");
+                }
+                circuitState = CircuitState.CLOSED;
+                consecutiveFailures = 0;
+                return;
+            }
+            consecutiveFailures++;
+            if (circuitState == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                if (circuitState != CircuitState.OPEN) {
+                    logger.warn("Stripe failed {} times in a row, opening circuit for {} ms", consecutiveFailures, openMs);
+                }
+                circuitState = CircuitState.OPEN;
+                openUntil = System.currentTimeMillis() + openMs;
+            }
+        }
+    }
+
+    /**
+     * stripe unreachable or failing on its side
+     */
+    static boolean isOutage(StripeException e) {
+        if (e instanceof StripeUnavailableException) {
+            return false;
+        }
+        Integer status = e.getStatusCode();
+        return e instanceof ApiConnectionException || (status != null && status >= 500);
+    }
+
+    /**
+     * 429 is always safe to retry. 5xx and connection errors only for reads
+     */
+    static boolean isRetryable(StripeException e, boolean idempotent) {
+        if (e instanceof StripeUnavailableException) {
+            return false;
+        }
+        Integer status = e.getStatusCode();
+        if (e instanceof RateLimitException || (status != null && status == 429)) {
+            return true;
+        }
+        if (!idempotent) {
+            return false;
+        }
+        return e instanceof ApiConnectionException || (status != null && status >= 500);
+    }
+
+    /**
+     * full jitter: random delay between 0 and min(maxDelay, baseDelay * 2^(attempt-1))
+     */
+    long backoffDelay(int attempt) {
+        long cap = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 20));
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private void acquirePermit() throws StripeException {
+        try {
+            rateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted while waiting for the Stripe rate limit", e);
+        }
+    }
+
+    private void sleep(long delayMs, StripeException cause) throws StripeException {
+        if (delayMs <= 0) return;
+        try {
+            TimeUnit.MILLISECONDS.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ip.project.backend.backend.util;
+
+import com.stripe.exception.StripeException;
+import com.stripe.model.Price;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * bounded cache of stripe prices keyed by priceId.
+ * amount, currency, tax behavior and metadata of a stripe price cannot change after creation,
+ * so entries never expire. only the least recently used entries are dropped when the cache is full.
+ * the active flag can change, therefore updated prices have to be put back into the cache
+ */
+@Component
+public class StripePriceCache {
+
+    private final StripeGateway stripeGateway;
+    private final Map<String, Price> prices;
+
+    @Autowired
+    public StripePriceCache(StripeGateway stripeGateway, @Value("${stripe.price-cache.max-entries:10000}") int maxEntries) {
+        this.stripeGateway = stripeGateway;
+        this.prices = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Price> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * returns the price with the given id. stripe is only asked if the price is not cached yet
+     *
+     * @param priceId id of the price
+     * @return returns the price or null if stripe does not know it
+     * @throws StripeException if the price has to be loaded and stripe fails
+     */
+    public Price get(String priceId) throws StripeException {
+        Price cached = prices.get(priceId);
+        if (cached != null) {
+            return cached;
+        }
+        Price loaded = stripeGateway.retrievePrice(priceId);
+        put(loaded);
+        return loaded;
+    }
+
+    /**
+     * returns the price only if it is cached
+     *
+     * @param priceId id of the price
+     * @return returns optional with the cached price
+     */
+    public Optional<Price> getIfPresent(String priceId) {
+        return Optional.ofNullable(prices.get(priceId));
+    }
+
+    /**
+     * adds a price which was returned by stripe anyway (create, list, search, expand)
+     *
+     * @param price price to cache, ignored if null or without id
+     */
+    public void put(Price price) {
+        if (price == null || price.getId() == null) return;
+        prices.put(price.getId(), price);
+    }
+
+    public void putAll(Collection<Price> priceList) {
+        if (priceList == null) return;
+        priceList.forEach(this::put);
+    }
+
+    public int size() {
+        return prices.size();
+    }
+}
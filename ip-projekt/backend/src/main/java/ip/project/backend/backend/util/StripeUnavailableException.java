@@ -0,0 +1,13 @@
+package ip.project.backend.backend.util;
+
+import com.stripe.exception.ApiConnectionException;
+
+/**
+ * thrown by {@link StripeGateway} without calling stripe while the circuit breaker is open
+ */
+public class StripeUnavailableException extends ApiConnectionException {
+
+    public StripeUnavailableException(String message) {
+        super(message);
+    }
+}
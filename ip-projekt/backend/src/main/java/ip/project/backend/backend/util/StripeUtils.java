@@ -7,7 +7,9 @@ import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * this class contains all methos used in service classes to create stripe objects
@@ -37,6 +39,7 @@ public class StripeUtils {
                 .putAllMetadata(metadata)
                 .setActive(active)
                 .setDefaultPriceData(defaultPriceData)
+                .addExpand("default_price") // the created price is returned with the product
                 .build();
     }
 
@@ -94,6 +97,20 @@ public class StripeUtils {
                 .build();
     }
 
+    /**
+     * search params for all prices of several products. stripe does not allow AND and OR in one query,
+     * so inactive prices have to be filtered by the caller
+     */
+    public static PriceSearchParams createPriceSearchParams(List<String> productIds) {
+        String query = productIds.stream()
+                .map(id -> "product:'" + id + "'")
+                .collect(Collectors.joining(" OR "));
+        return PriceSearchParams.builder()
+                .setQuery(query)
+                .setLimit(100L)
+                .build();
+    }
+
 
     public static Map<String, String> createMetadata(ProductDto productDto) {
         Map<String, String> metadata = new HashMap<>();
@@ -21,6 +21,7 @@ class PermissionManagerTest {
         assertEquals("product.update", permissionManager.findRequiredPermission("/api/products/update", "PUT"));
         assertEquals("role.delete", permissionManager.findRequiredPermission("/api/role/delete/5", "DELETE"));
         assertEquals("kasse", permissionManager.findRequiredPermission("/api/checkout/create-checkout-session", "POST"));
+        assertEquals("product.read", permissionManager.findRequiredPermission("/api/products/all/active/stream", "GET"));
     }
 
     @Test
@@ -2,11 +2,13 @@ package ip.project.backend.backend.controller;
 
 import ip.project.backend.backend.modeldto.CheckoutDto;
 import ip.project.backend.backend.service.CheckoutService;
+import ip.project.backend.backend.util.InsufficientStockException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
 import org.springframework.http.ResponseEntity;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -27,6 +29,7 @@ class CheckoutControllerTest {
     @BeforeEach
     void setup() {
         MockitoAnnotations.openMocks(this);
+        when(checkoutService.isCardPaymentAvailable()).thenReturn(true);
     }
 
     @Test
@@ -50,4 +53,46 @@ class CheckoutControllerTest {
         assertEquals(400, response.getStatusCode().value());
         assertEquals("Error creating checkout session", response.getBody());
     }
+
+    @Test
+    void createCheckoutSession_returnsServiceUnavailable_whenStripeUnreachable() {
+        when(checkoutService.isCardPaymentAvailable()).thenReturn(false);
+
+        ResponseEntity<String> response = checkoutController.createCheckoutSession(checkoutDto);
+
+        assertEquals(503, response.getStatusCode().value());
+        assertNotNull(response.getHeaders().getFirst("Retry-After"));
+        verify(checkoutService, never()).createCheckout(any());
+    }
+
+    @Test
+    void createCheckoutSession_returnsConflict_whenNotEnoughStock() {
+        when(checkoutService.createCheckout(checkoutDto)).thenThrow(new InsufficientStockException(List.of("prod_1")));
+
+        ResponseEntity<String> response = checkoutController.createCheckoutSession(checkoutDto);
+
+        assertEquals(409, response.getStatusCode().value());
+        assertTrue(response.getBody().contains("prod_1"));
+    }
+
+    @Test
+    void completeCheckoutSession_paid_returnsOk() {
+        when(checkoutService.completeCheckout("sess_1")).thenReturn(Optional.of(true));
+
+        assertEquals(200, checkoutController.completeCheckoutSession("sess_1").getStatusCode().value());
+    }
+
+    @Test
+    void completeCheckoutSession_notPaid_returnsConflict() {
+        when(checkoutService.completeCheckout("sess_1")).thenReturn(Optional.of(false));
+
+        assertEquals(409, checkoutController.completeCheckoutSession("sess_1").getStatusCode().value());
+    }
+
+    @Test
+    void completeCheckoutSession_stripeDown_returnsServiceUnavailable() {
+        when(checkoutService.completeCheckout("sess_1")).thenReturn(Optional.empty());
+
+        assertEquals(503, checkoutController.completeCheckoutSession("sess_1").getStatusCode().value());
+    }
 }
@@ -1,7 +1,16 @@
 package ip.project.backend.backend.controller;
 
 import ip.project.backend.backend.modeldto.OrderDto;
+import ip.project.backend.backend.model.Employee;
+import ip.project.backend.backend.model.Order;
+import ip.project.backend.backend.modeldto.PosBootstrapDto;
+import ip.project.backend.backend.modeldto.SyncOrderDto;
+import ip.project.backend.backend.modeldto.SyncOrderResultDto;
+import ip.project.backend.backend.modeldto.SyncOrdersDto;
 import ip.project.backend.backend.service.OrderService;
+import ip.project.backend.backend.service.PosBootstrapService;
+import ip.project.backend.backend.service.TopSellerService;
+import ip.project.backend.backend.util.StripeGateway;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,6 +25,7 @@ import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -30,6 +40,12 @@ class KassaControllerTest {
     @Mock
     private OrderService orderService;
 
+    @Mock
+    private PosBootstrapService posBootstrapService;
+
+    @Mock
+    private TopSellerService topSellerService;
+
     private OrderDto order;
 
     @BeforeEach
@@ -44,133 +60,193 @@ class KassaControllerTest {
     @Test
     void testCheckout_Success() {
         // Arrange
-        when(orderService.orderExists(any(String.class))).thenReturn(false);
+        when(orderService.placeOrder(eq("key-1"), any(), any(), any(), any(), any()))
+                .thenReturn(new OrderService.PlacedOrder(new Order(), true, false));
 
         // Act
-        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order);
+        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order, "key-1");
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertNotNull(response.getBody());
         assertTrue((Boolean) response.getBody().get("success"));
+        assertEquals("key-1", response.getBody().get("orderId"));
+        assertFalse((Boolean) response.getBody().get("replayed"));
 
-        // Verify service calls
-        verify(orderService, times(1)).orderExists(any(String.class));
-        verify(orderService, times(1)).createOrder(any(String.class),
+        // Verify service calls - one insert, no existence check before
+        verify(orderService, never()).orderExists(any());
+        verify(orderService, times(1)).placeOrder(eq("key-1"),
                 eq(order.getProductNames()),
                 eq(order.getTotalPrice()),
                 eq(order.getDate()),
-                eq(order.getEmployeeId()));
+                eq(order.getEmployeeId()),
+                isNull());
     }
 
     @Test
-    void testCheckout_OrderAlreadyExists() {
+    void testCheckout_withoutIdempotencyKey_generatesOrderId() {
+        when(orderService.placeOrder(any(String.class), any(), any(), any(), any(), any()))
+                .thenReturn(new OrderService.PlacedOrder(new Order(), true, false));
+
+        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertDoesNotThrow(() -> UUID.fromString((String) response.getBody().get("orderId")));
+    }
+
+    @Test
+    void testCheckout_RetriedCheckout_returnsExistingOrder() {
         // Arrange
-        when(orderService.orderExists(any(String.class))).thenReturn(true);
+        when(orderService.placeOrder(eq("key-1"), any(), any(), any(), any(), any()))
+                .thenReturn(new OrderService.PlacedOrder(new Order(), false, false));
 
         // Act
-        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order);
+        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order, "key-1");
 
         // Assert
-        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
-        assertNotNull(response.getBody());
-        assertFalse((Boolean) response.getBody().get("success"));
-        assertEquals("An order with this ID already exists", response.getBody().get("error"));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue((Boolean) response.getBody().get("success"));
+        assertTrue((Boolean) response.getBody().get("replayed"));
+        verifyNoInteractions(topSellerService);
+    }
+
+    @Test
+    void testCheckout_Success_countsTopSellers() {
+        when(orderService.placeOrder(eq("key-1"), any(), any(), any(), any(), any()))
+                .thenReturn(new OrderService.PlacedOrder(new Order(), true, false));
+
+        kasseController.checkout(order, "key-1");
 
-        // Verify service calls - createOrder should not be called when order exists
-        verify(orderService, times(1)).orderExists(any(String.class));
-        verify(orderService, never()).createOrder(any(), any(), any(), any(), any());
+        verify(topSellerService).recordSale(order.getDate(), null, order.getProductNames());
     }
 
     @Test
-    void testCheckout_ServiceThrowsException() {
-        // Arrange
-        when(orderService.orderExists(any(String.class))).thenReturn(false);
-        doThrow(new RuntimeException("Database error")).when(orderService)
-                .createOrder(any(String.class), any(), any(BigDecimal.class), any(Date.class), any(Integer.class));
+    void testCheckout_OrderAlreadyExists() {
+        // Arrange - the key was used for a different order
+        when(orderService.placeOrder(eq("key-1"), any(), any(), any(), any(), any()))
+                .thenReturn(new OrderService.PlacedOrder(new Order(), false, true));
 
         // Act
-        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order);
+        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order, "key-1");
 
         // Assert
-        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
         assertNotNull(response.getBody());
         assertFalse((Boolean) response.getBody().get("success"));
-        assertTrue(response.getBody().get("error").toString().contains("Server error occurred"));
-        assertTrue(response.getBody().get("error").toString().contains("Database error"));
-
-        // Verify service calls
-        verify(orderService, times(1)).orderExists(any(String.class));
-        verify(orderService, times(1)).createOrder(any(String.class),
-                eq(order.getProductNames()),
-                eq(order.getTotalPrice()),
-                eq(order.getDate()),
-                eq(order.getEmployeeId()));
+        assertEquals("An order with this ID already exists", response.getBody().get("error"));
     }
 
     @Test
-    void testCheckout_OrderExistsCheckThrowsException() {
+    void testCheckout_ServiceThrowsException() {
         // Arrange
-        when(orderService.orderExists(any(String.class))).thenThrow(new RuntimeException("Service unavailable"));
+        when(orderService.placeOrder(any(String.class), any(), any(BigDecimal.class), any(Date.class), any(Integer.class), any()))
+                .thenThrow(new RuntimeException("Database error"));
 
         // Act
-        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order);
+        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order, "key-1");
 
         // Assert
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
         assertNotNull(response.getBody());
         assertFalse((Boolean) response.getBody().get("success"));
         assertTrue(response.getBody().get("error").toString().contains("Server error occurred"));
-        assertTrue(response.getBody().get("error").toString().contains("Service unavailable"));
-
-        // Verify service calls
-        verify(orderService, times(1)).orderExists(any(String.class));
-        verify(orderService, never()).createOrder(any(), any(), any(), any(), any());
+        assertTrue(response.getBody().get("error").toString().contains("Database error"));
     }
 
     @Test
     void testCheckout_WithEmptyProductList() {
         // Arrange
         order.setProductNames(List.of());
-        when(orderService.orderExists(any(String.class))).thenReturn(false);
+        when(orderService.placeOrder(any(String.class), any(), any(), any(), any(), any()))
+                .thenReturn(new OrderService.PlacedOrder(new Order(), true, false));
 
         // Act
-        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order);
+        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order, null);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertNotNull(response.getBody());
         assertTrue((Boolean) response.getBody().get("success"));
-
-        // Verify service calls
-        verify(orderService, times(1)).orderExists(any(String.class));
-        verify(orderService, times(1)).createOrder(any(String.class),
+        verify(orderService, times(1)).placeOrder(any(String.class),
                 eq(order.getProductNames()),
                 eq(order.getTotalPrice()),
                 eq(order.getDate()),
-                eq(order.getEmployeeId()));
+                eq(order.getEmployeeId()),
+                isNull());
     }
 
     @Test
     void testCheckout_WithZeroTotalPrice() {
         // Arrange
         order.setTotalPrice(BigDecimal.ZERO);
-        when(orderService.orderExists(any(String.class))).thenReturn(false);
+        when(orderService.placeOrder(any(String.class), any(), any(), any(), any(), any()))
+                .thenReturn(new OrderService.PlacedOrder(new Order(), true, false));
 
         // Act
-        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order);
+        ResponseEntity<Map<String, Object>> response = kasseController.checkout(order, null);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertNotNull(response.getBody());
         assertTrue((Boolean) response.getBody().get("success"));
-
-        // Verify service calls
-        verify(orderService, times(1)).orderExists(any(String.class));
-        verify(orderService, times(1)).createOrder(any(String.class),
+        verify(orderService, times(1)).placeOrder(any(String.class),
                 eq(order.getProductNames()),
-                eq(order.getTotalPrice()),
+                eq(BigDecimal.ZERO),
                 eq(order.getDate()),
-                eq(order.getEmployeeId()));
+                eq(order.getEmployeeId()),
+                isNull());
+    }
+
+    @Test
+    void testBootstrap_noEmployee_returnsUnauthorized() {
+        ResponseEntity<PosBootstrapDto> response = kasseController.bootstrap(null);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        verifyNoInteractions(posBootstrapService);
+    }
+
+    @Test
+    void testBootstrap_staleData_setsStaleHeader() {
+        Employee employee = new Employee(1, "Max", "Muster", "hash", null);
+        PosBootstrapDto bootstrap = new PosBootstrapDto(1, List.of(), List.of(), null, true);
+        when(posBootstrapService.bootstrap(employee)).thenReturn(bootstrap);
+
+        ResponseEntity<PosBootstrapDto> response = kasseController.bootstrap(employee);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(bootstrap, response.getBody());
+        assertEquals("true", response.getHeaders().getFirst(StripeGateway.STALE_DATA_HEADER));
+    }
+
+    @Test
+    void testSyncOrders_returnsResultPerOrder() {
+        List<SyncOrderDto> orders = List.of(new SyncOrderDto("k1", order));
+        List<SyncOrderResultDto> results = List.of(new SyncOrderResultDto("k1", SyncOrderResultDto.CREATED, null));
+        when(orderService.syncOrders(orders)).thenReturn(results);
+
+        ResponseEntity<List<SyncOrderResultDto>> response = kasseController.syncOrders(new SyncOrdersDto(orders));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(results, response.getBody());
+        verify(topSellerService).recordSale(order.getDate(), null, order.getProductNames());
+    }
+
+    @Test
+    void testSyncOrders_replayedOrders_notCounted() {
+        List<SyncOrderDto> orders = List.of(new SyncOrderDto("k1", order));
+        when(orderService.syncOrders(orders)).thenReturn(List.of(new SyncOrderResultDto("k1", SyncOrderResultDto.REPLAYED, null)));
+
+        kasseController.syncOrders(new SyncOrdersDto(orders));
+
+        verifyNoInteractions(topSellerService);
+    }
+
+    @Test
+    void testSyncOrders_databaseError_returnsServerError() {
+        when(orderService.syncOrders(any())).thenThrow(new RuntimeException("Database error"));
+
+        ResponseEntity<List<SyncOrderResultDto>> response = kasseController.syncOrders(new SyncOrdersDto(List.of(new SyncOrderDto("k1", order))));
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
     }
 }
@@ -0,0 +1,124 @@
+package ip.project.backend.backend.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ip.project.backend.backend.model.Order;
+import ip.project.backend.backend.modeldto.SalesReportDto;
+import ip.project.backend.backend.service.OrderService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import java.math.BigDecimal;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OrderControllerTest {
+
+    @Mock
+    private OrderService orderService;
+
+    private OrderController orderController;
+
+    @BeforeEach
+    void setUp() {
+        orderController = new OrderController(orderService, new ObjectMapper());
+    }
+
+    @Test
+    void testGetHourlyReport() {
+        List<SalesReportDto> report = List.of(new SalesReportDto("9", BigDecimal.TEN, 2, new BigDecimal("5.00")));
+        Date start = new Date(0);
+        Date end = new Date();
+        when(orderService.getSalesReport(start, end, 1, OrderService.ReportGrouping.HOUR, ZoneId.of("UTC"))).thenReturn(report);
+
+        ResponseEntity<List<SalesReportDto>> response = orderController.getHourlyReport(start, end, 1, "UTC");
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(report, response.getBody());
+    }
+
+    @Test
+    void testGetDailyReport_unknownTimezone() {
+        ResponseEntity<List<SalesReportDto>> response = orderController.getDailyReport(new Date(0), new Date(), null, "Mars/Olympus");
+
+        assertEquals(400, response.getStatusCode().value());
+        verify(orderService, never()).getSalesReport(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testGetEmployeeReport_startAfterEnd() {
+        ResponseEntity<List<SalesReportDto>> response = orderController.getEmployeeReport(new Date(), new Date(0));
+
+        assertEquals(400, response.getStatusCode().value());
+        verify(orderService, never()).getSalesReport(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testExportOrders_csv_writesHeaderAndOneRowPerOrder() throws Exception {
+        Date start = new Date(0);
+        Date end = new Date(86_400_000L);
+        Order order = new Order("key-1", List.of("Apfel", "Brot, hell"), new BigDecimal("3.50"), new Date(3_600_000L), 2);
+        doAnswer(invocation -> {
+            Consumer<Order> consumer = invocation.getArgument(3);
+            consumer.accept(order);
+            return 1L;
+        }).when(orderService).streamOrdersInPeriod(eq(start), eq(end), eq(null), any());
+
+        ResponseEntity<StreamingResponseBody> response = orderController.exportOrders(start, end, null, "csv");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("orderId,date,employeeId,totalPrice,productNames", lines[0]);
+        assertEquals("key-1,1970-01-01T01:00:00Z,2,3.50,\"Apfel|Brot, hell\"", lines[1]);
+        assertTrue(response.getHeaders().getContentDisposition().isAttachment());
+    }
+
+    @Test
+    void testExportOrders_ndjson_writesOneJsonObjectPerLine() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Order> consumer = invocation.getArgument(3);
+            consumer.accept(new Order("key-1", List.of("Apfel"), BigDecimal.ONE, new Date(), 1));
+            consumer.accept(new Order("key-2", List.of("Brot"), BigDecimal.TEN, new Date(), 1));
+            return 2L;
+        }).when(orderService).streamOrdersInPeriod(any(), any(), eq(1), any());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        orderController.exportOrders(new Date(0), new Date(), 1, "ndjson").getBody().writeTo(out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[1].contains("\"orderId\":\"key-2\""));
+        assertFalse(lines[1].contains("\"id\""));
+        assertFalse(lines[1].contains("rolledUp"));
+        assertTrue(lines[1].contains("\"productNames\":[\"Brot\"]"));
+    }
+
+    @Test
+    void testExportOrders_unknownFormat() {
+        assertEquals(400, orderController.exportOrders(new Date(0), new Date(), null, "xml").getStatusCode().value());
+    }
+
+    @Test
+    void testCsvValue_escapesQuotesAndFormulas() {
+        assertEquals("\"Sag \"\"Hallo\"\"\"", OrderController.csvValue("Sag \"Hallo\""));
+        assertEquals("'=SUM(A1)", OrderController.csvValue("=SUM(A1)"));
+        assertEquals("", OrderController.csvValue(null));
+    }
+}
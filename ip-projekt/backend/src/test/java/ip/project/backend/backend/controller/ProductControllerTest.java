@@ -1,60 +1,80 @@
 package ip.project.backend.backend.controller;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import ip.project.backend.backend.controller.ProductController;
+import ip.project.backend.backend.modeldto.PriceHistoryDto;
 import ip.project.backend.backend.modeldto.ProductDto;
+import ip.project.backend.backend.service.CatalogSnapshot;
 import ip.project.backend.backend.service.ProductService;
+import ip.project.backend.backend.service.TopSellerService;
+import ip.project.backend.backend.modeldto.TopSellerDto;
+import ip.project.backend.backend.util.StripeGateway;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.http.ResponseEntity;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 class ProductControllerTest {
 
     private ProductService productService;
+    private TopSellerService topSellerService;
     private CacheManager cacheManager;
     private Cache cache;
 
     private ProductController productController;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     @BeforeEach
     void setup() {
         productService = mock(ProductService.class);
+        topSellerService = mock(TopSellerService.class);
         cacheManager = mock(CacheManager.class);
         cache = mock(Cache.class);
 
         // CacheManager gibt unseren Cache zurück, wenn "AllProducts" angefragt wird
         when(cacheManager.getCache("AllProducts")).thenReturn(cache);
 
-        productController = new ProductController(productService, cacheManager);
+        productController = new ProductController(productService, topSellerService, cacheManager, objectMapper);
     }
     @Test
-    void testGetAllProducts_returnsFromCache() {
-        // Dummy-Produkt mocken
-        ProductDto dummyProduct = mock(ProductDto.class);
-        when(dummyProduct.getProductId()).thenReturn("prod_123");
+    void testGetAllProducts_returnsFromCache() throws Exception {
+        ProductDto dummyProduct = product("prod_123", "400123");
 
         List<ProductDto> productList = List.of(dummyProduct);
-
-        // Cache.ValueWrapper mocken
-        Cache.ValueWrapper valueWrapper = mock(Cache.ValueWrapper.class);
-        when(valueWrapper.get()).thenReturn(productList);
+        CatalogSnapshot snapshot = CatalogSnapshot.of(productList);
 
         // Cache mocken
-        when(cache.get("all")).thenReturn(valueWrapper);
-        when(cache.get("all", List.class)).thenReturn(productList);
+        when(cache.get(eq("all"), any(Callable.class))).thenReturn(snapshot);
 
         // Methode aufrufen
-        ResponseEntity<List<ProductDto>> response = productController.getAllProducts();
+        ResponseEntity<byte[]> response = productController.getAllProducts(null, null);
 
         // Assertions
         assertEquals(200, response.getStatusCodeValue());
-        assertEquals(productList, response.getBody());
+        assertArrayEquals(objectMapper.writeValueAsBytes(productList), response.getBody());
 
         // Service wurde nicht aufgerufen
         verify(productService, never()).getAllProducts();
@@ -63,24 +83,74 @@ class ProductControllerTest {
 
 
     @Test
-    void testGetAllProducts_cacheEmpty_loadsFromService() {
-        // Cache liefert null -> leer
-        when(cache.get("all", List.class)).thenReturn(List.of());
+    void testGetAllProducts_cacheEmpty_loadsFromService() throws Exception {
+        // Cache ist leer -> der Loader wird ausgeführt
+        when(cache.get(eq("all"), any(Callable.class))).thenAnswer(invocation -> ((Callable<?>) invocation.getArgument(1)).call());
         // Service liefert Produktliste
-        ProductDto dummyProduct = mock(ProductDto.class);
-        when(dummyProduct.getProductId()).thenReturn("prod_456");
-        List<ProductDto> serviceList = List.of(dummyProduct);
+        List<ProductDto> serviceList = List.of(product("prod_456", "400456"));
         when(productService.getAllProducts()).thenReturn(serviceList);
 
-        // Damit cache.put funktioniert (void Methode)
-        doNothing().when(cache).put(eq("all"), any());
-
-        ResponseEntity<List<ProductDto>> response = productController.getAllProducts();
+        ResponseEntity<byte[]> response = productController.getAllProducts(null, null);
 
-        assertEquals(204, response.getStatusCodeValue());
+        assertEquals(200, response.getStatusCodeValue());
+        assertArrayEquals(objectMapper.writeValueAsBytes(serviceList), response.getBody());
 
         verify(productService).getAllProducts();
-        verify(cache).put("all", serviceList);
+    }
+
+    @Test
+    void testGetAllProducts_concurrentMisses_loadOnlyOnce() throws Exception {
+        when(cacheManager.getCache("AllProducts")).thenReturn(new CaffeineCache("AllProducts", Caffeine.newBuilder().build()));
+        ProductDto dummyProduct = product("prod_1", "400123");
+        CountDownLatch release = new CountDownLatch(1);
+        when(productService.getAllProducts()).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(dummyProduct);
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ResponseEntity<byte[]>>> responses = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                responses.add(pool.submit(() -> productController.getAllProducts(null, null)));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            byte[] expected = objectMapper.writeValueAsBytes(List.of(dummyProduct));
+            for (Future<ResponseEntity<byte[]>> response : responses) {
+                assertArrayEquals(expected, response.get(5, TimeUnit.SECONDS).getBody());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(productService, times(1)).getAllProducts();
+    }
+
+    @Test
+    void testGetProductFromCacheByEan_usesUpcIndex() {
+        ProductDto first = new ProductDto("Apfel", "prod_1", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 2L, true, "eur", true, "price_1");
+        ProductDto second = new ProductDto("Birne", "prod_2", "Conference", new BigDecimal("1.50"), new BigDecimal("0.70"), "400124", 1L, 2L, true, "eur", true, "price_2");
+        when(cache.get(eq("all"), any(Callable.class))).thenReturn(CatalogSnapshot.of(List.of(first, second)));
+
+        ResponseEntity<ProductDto> found = productController.getProductFromCacheByEan("400124");
+        ResponseEntity<ProductDto> missing = productController.getProductFromCacheByEan("999999");
+
+        assertEquals(200, found.getStatusCode().value());
+        assertEquals(second, found.getBody());
+        assertEquals(204, missing.getStatusCode().value());
+        verify(productService, never()).getAllProducts();
+    }
+
+    @Test
+    void testGetProduct_returnsProductFromSnapshot() {
+        ProductDto product = new ProductDto("Apfel", "prod_1", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 2L, true, "eur", true, "price_1");
+        when(cache.get(eq("all"), any(Callable.class))).thenReturn(CatalogSnapshot.of(List.of(product)));
+
+        ResponseEntity<ProductDto> response = productController.getProduct("prod_1");
+
+        assertEquals(product, response.getBody());
+        verify(productService, never()).getProductById(anyString());
     }
 
     @Test
@@ -142,4 +212,263 @@ class ProductControllerTest {
         verify(productService).getProductById(productId);
         verify(cache, never()).put(eq(productId), any());
     }
+
+    @Test
+    void testGetAllProducts_catalogStale_setsStaleHeader() {
+        List<ProductDto> productList = List.of(new ProductDto("Apfel", "prod_1", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 2L, true, "eur", true, "price_1"));
+        when(cache.get(eq("all"), any(Callable.class))).thenReturn(CatalogSnapshot.of(productList));
+        when(productService.isCatalogStale()).thenReturn(true);
+
+        ResponseEntity<byte[]> response = productController.getAllProducts(null, null);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals("true", response.getHeaders().getFirst(StripeGateway.STALE_DATA_HEADER));
+    }
+
+    @Test
+    void testGetAllProducts_catalogUpToDate_noStaleHeader() {
+        List<ProductDto> productList = List.of(new ProductDto("Apfel", "prod_1", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 2L, true, "eur", true, "price_1"));
+        when(cache.get(eq("all"), any(Callable.class))).thenReturn(CatalogSnapshot.of(productList));
+        when(productService.isCatalogStale()).thenReturn(false);
+
+        ResponseEntity<byte[]> response = productController.getAllProducts(null, null);
+
+        assertFalse(response.getHeaders().containsKey(StripeGateway.STALE_DATA_HEADER));
+    }
+
+    @Test
+    void testGetPriceHistory_stripeFails_servesLastKnownWithStaleHeader() {
+        String productId = "prod_1234567890";
+        List<PriceHistoryDto> lastKnown = List.of(new PriceHistoryDto(new BigDecimal("1.20"), new BigDecimal("0.50"), new Date(), true, "eur"));
+        when(productService.getPriceHistory(productId)).thenReturn(Optional.empty());
+        when(productService.getLastKnownPriceHistory(productId)).thenReturn(Optional.of(lastKnown));
+
+        ResponseEntity<List<PriceHistoryDto>> response = productController.getPriceHistory(productId);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(lastKnown, response.getBody());
+        assertEquals("true", response.getHeaders().getFirst(StripeGateway.STALE_DATA_HEADER));
+    }
+
+    @Test
+    void testGetPriceHistory_stripeFailsWithoutLastKnown_returnsBadRequest() {
+        String productId = "prod_1234567890";
+        when(productService.getPriceHistory(productId)).thenReturn(Optional.empty());
+        when(productService.getLastKnownPriceHistory(productId)).thenReturn(Optional.empty());
+
+        ResponseEntity<List<PriceHistoryDto>> response = productController.getPriceHistory(productId);
+
+        assertEquals(400, response.getStatusCode().value());
+    }
+
+    @Test
+    void testUpdateProduct_patchesCachedSnapshotInsteadOfReloading() {
+        ProductDto apple = new ProductDto("Apfel", "prod_1", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 2L, true, "eur", true, "price_1");
+        ProductDto pear = new ProductDto("Birne", "prod_2", "Conference", new BigDecimal("1.50"), new BigDecimal("0.70"), "400124", 1L, 2L, true, "eur", true, "price_2");
+        ProductDto changedApple = new ProductDto("Apfel", "prod_1", "Gala", new BigDecimal("1.40"), new BigDecimal("0.50"), "400999", 1L, 3L, true, "eur", true, "price_3");
+
+        CaffeineCache allProducts = new CaffeineCache("AllProducts", Caffeine.newBuilder().build());
+        CaffeineCache activeProducts = new CaffeineCache("ActiveProducts", Caffeine.newBuilder().build());
+        CaffeineCache priceHistory = new CaffeineCache("PriceHistory", Caffeine.newBuilder().build());
+        when(cacheManager.getCache("AllProducts")).thenReturn(allProducts);
+        when(cacheManager.getCache("ActiveProducts")).thenReturn(activeProducts);
+        when(cacheManager.getCache("PriceHistory")).thenReturn(priceHistory);
+        allProducts.put("all", CatalogSnapshot.of(List.of(apple, pear)));
+        activeProducts.put("all", List.of(apple, pear));
+        priceHistory.put("prod_1", List.of());
+        priceHistory.put("prod_2", List.of());
+
+        when(productService.updateProduct(changedApple)).thenReturn(Optional.empty());
+        when(productService.getProductById("prod_1")).thenReturn(Optional.of(changedApple));
+
+        productController.updateProduct(changedApple);
+
+        CatalogSnapshot snapshot = allProducts.get("all", CatalogSnapshot.class);
+        assertEquals(List.of(changedApple, pear), snapshot.getProducts());
+        assertEquals(changedApple, snapshot.findByUpcCode("400999").orElseThrow());
+        assertTrue(snapshot.findByUpcCode("400123").isEmpty());
+        assertEquals(List.of(changedApple, pear), activeProducts.get("all", List.class));
+        assertNull(priceHistory.get("prod_1"));
+        assertNotNull(priceHistory.get("prod_2"));
+        verify(productService, never()).getAllProducts();
+    }
+
+    @Test
+    void testEvictProductCaches_productGone_removedFromSnapshot() {
+        ProductDto apple = new ProductDto("Apfel", "prod_1", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 2L, true, "eur", true, "price_1");
+        CaffeineCache allProducts = new CaffeineCache("AllProducts", Caffeine.newBuilder().build());
+        when(cacheManager.getCache("AllProducts")).thenReturn(allProducts);
+        allProducts.put("all", CatalogSnapshot.of(List.of(apple)));
+        when(productService.getProductById("prod_1")).thenReturn(Optional.empty());
+
+        productController.evictProductCaches("prod_1");
+
+        assertTrue(allProducts.get("all", CatalogSnapshot.class).isEmpty());
+    }
+
+    @Test
+    void testEvictProductCaches_productDeactivated_removedFromActiveList() {
+        ProductDto apple = product("prod_1", "400123");
+        ProductDto pear = product("prod_2", "400124");
+        ProductDto archivedApple = new ProductDto("Apfel", "prod_1", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 3L, false, "eur", true, "price_1");
+        CaffeineCache allProducts = new CaffeineCache("AllProducts", Caffeine.newBuilder().build());
+        CaffeineCache activeProducts = new CaffeineCache("ActiveProducts", Caffeine.newBuilder().build());
+        when(cacheManager.getCache("AllProducts")).thenReturn(allProducts);
+        when(cacheManager.getCache("ActiveProducts")).thenReturn(activeProducts);
+        allProducts.put("all", CatalogSnapshot.of(List.of(apple, pear)));
+        activeProducts.put("all", List.of(apple, pear));
+        when(productService.getProductById("prod_1")).thenReturn(Optional.of(archivedApple));
+
+        productController.evictProductCaches("prod_1");
+
+        assertEquals(List.of(pear), activeProducts.get("all", List.class));
+        assertEquals(List.of(archivedApple, pear), allProducts.get("all", CatalogSnapshot.class).getProducts());
+    }
+
+    @Test
+    void testEvictProductCaches_snapshotNotCached_staysEmpty() {
+        CaffeineCache allProducts = new CaffeineCache("AllProducts", Caffeine.newBuilder().build());
+        when(cacheManager.getCache("AllProducts")).thenReturn(allProducts);
+        when(productService.getProductById("prod_1")).thenReturn(Optional.empty());
+
+        productController.evictProductCaches("prod_1");
+
+        assertNull(allProducts.get("all"));
+    }
+
+    @Test
+    void testStreamActiveProducts_writesOneJsonObjectPerLine() throws Exception {
+        ProductDto first = new ProductDto("Apfel", "prod_1", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 2L, true, "eur", true, "price_1");
+        ProductDto second = new ProductDto("Birne", "prod_2", "Conference", new BigDecimal("1.50"), new BigDecimal("0.70"), "400124", 1L, 2L, true, "eur", true, "price_2");
+        doAnswer(invocation -> {
+            Consumer<ProductDto> consumer = invocation.getArgument(1);
+            consumer.accept(first);
+            consumer.accept(second);
+            return null;
+        }).when(productService).streamProducts(eq(true), any());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        productController.streamActiveProducts().getBody().writeTo(out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"productId\":\"prod_1\""));
+        assertTrue(lines[1].contains("\"productId\":\"prod_2\""));
+    }
+
+    @Test
+    void testGetAllProducts_matchingEtag_returnsNotModified() {
+        when(cache.get(eq("all"), any(Callable.class))).thenReturn(CatalogSnapshot.of(List.of(product("prod_1", "400123"))));
+
+        ResponseEntity<byte[]> first = productController.getAllProducts(null, null);
+        ResponseEntity<byte[]> second = productController.getAllProducts(first.getHeaders().getETag(), null);
+
+        assertEquals(304, second.getStatusCode().value());
+        assertNull(second.getBody());
+        assertEquals(first.getHeaders().getETag(), second.getHeaders().getETag());
+    }
+
+    @Test
+    void testGetAllProducts_snapshotChanged_newEtag() {
+        when(cache.get(eq("all"), any(Callable.class)))
+                .thenReturn(CatalogSnapshot.of(List.of(product("prod_1", "400123"))))
+                .thenReturn(CatalogSnapshot.of(List.of(product("prod_1", "400123"), product("prod_2", "400124"))));
+
+        String etag = productController.getAllProducts(null, null).getHeaders().getETag();
+        ResponseEntity<byte[]> response = productController.getAllProducts(etag, null);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertNotEquals(etag, response.getHeaders().getETag());
+    }
+
+    @Test
+    void testGetAllProducts_sameSnapshot_serializedOnce() {
+        CatalogSnapshot snapshot = CatalogSnapshot.of(List.of(product("prod_1", "400123")));
+        when(cache.get(eq("all"), any(Callable.class))).thenReturn(snapshot);
+
+        byte[] first = productController.getAllProducts(null, null).getBody();
+        byte[] second = productController.getAllProducts(null, null).getBody();
+
+        // the same buffer is written again
+        assertSame(first, second);
+    }
+
+    @Test
+    void testGetActiveProducts_acceptsGzip_returnsCompressedBody() throws Exception {
+        Cache activeCache = mock(Cache.class);
+        when(cacheManager.getCache("ActiveProducts")).thenReturn(activeCache);
+        List<ProductDto> products = List.of(product("prod_1", "400123"));
+        when(activeCache.get(eq("all"), any(Callable.class))).thenReturn(products);
+
+        ResponseEntity<byte[]> response = productController.getActiveProducts(null, "gzip, deflate, br");
+
+        assertEquals("gzip", response.getHeaders().getFirst("Content-Encoding"));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+            assertArrayEquals(objectMapper.writeValueAsBytes(products), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testGetActiveProducts_cacheEmpty_loadsActiveProductsOnly() {
+        CaffeineCache activeProducts = new CaffeineCache("ActiveProducts", Caffeine.newBuilder().build());
+        when(cacheManager.getCache("ActiveProducts")).thenReturn(activeProducts);
+        List<ProductDto> products = List.of(product("prod_1", "400123"));
+        when(productService.getActiveProducts()).thenReturn(products);
+
+        productController.getActiveProducts(null, null);
+
+        assertEquals(products, activeProducts.get("all", List.class));
+        verify(productService, never()).getAllProducts();
+    }
+
+    @Test
+    void testSearchProducts_usesIndexOfCachedSnapshot() {
+        ProductDto apple = product("prod_1", "400123");
+        when(cache.get(eq("all"), any(Callable.class))).thenReturn(CatalogSnapshot.of(List.of(apple)));
+
+        ResponseEntity<List<ProductDto>> found = productController.searchProducts("apf", 20, true);
+        ResponseEntity<List<ProductDto>> missing = productController.searchProducts("birne", 20, true);
+
+        assertEquals(List.of(apple), found.getBody());
+        assertEquals(204, missing.getStatusCode().value());
+        verify(productService, never()).getAllProducts();
+    }
+
+    @Test
+    void testSearchProducts_blankQuery_returnsBadRequest() {
+        assertEquals(400, productController.searchProducts(" ", 20, true).getStatusCode().value());
+    }
+
+    private static ProductDto product(String productId, String upcCode) {
+        return new ProductDto("Apfel", productId, "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), upcCode, 1L, 2L, true, "eur", true, "price_1");
+    }
+
+    @Test
+    void testGetTopSellers_returnsWindow() {
+        List<TopSellerDto> top = List.of(new TopSellerDto("prod_1", "Apfel", 12, 0));
+        when(topSellerService.getCapacity()).thenReturn(100);
+        when(topSellerService.getTopSellers(TopSellerService.Window.HOUR, 5)).thenReturn(top);
+
+        ResponseEntity<List<TopSellerDto>> response = productController.getTopSellers("1h", 5);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertSame(top, response.getBody());
+    }
+
+    @Test
+    void testGetTopSellers_limitIsClampedToCapacity() {
+        when(topSellerService.getCapacity()).thenReturn(100);
+
+        productController.getTopSellers("today", 1000);
+
+        verify(topSellerService).getTopSellers(TopSellerService.Window.TODAY, 100);
+    }
+
+    @Test
+    void testGetTopSellers_unknownWindow_returnsBadRequest() {
+        ResponseEntity<List<TopSellerDto>> response = productController.getTopSellers("2h", 10);
+
+        assertEquals(400, response.getStatusCode().value());
+        verify(topSellerService, never()).getTopSellers(any(), anyInt());
+    }
 }
@@ -1,6 +1,7 @@
 package ip.project.backend.backend.controller;
 
 import ip.project.backend.backend.modeldto.StockDto;
+import ip.project.backend.backend.service.StockReservationService;
 import ip.project.backend.backend.service.StockService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,6 +12,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.ResponseEntity;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -22,6 +24,9 @@ class StockControllerTest {
     @Mock
     private StockService stockService;
 
+    @Mock
+    private StockReservationService stockReservationService;
+
     @InjectMocks
     private StockController stockController;
 
@@ -131,4 +136,57 @@ class StockControllerTest {
         assertEquals(400, response.getStatusCode().value());
         assertEquals("Delete failed", response.getBody());
     }
+
+    @Test
+    void testDecreaseStock_success() {
+        when(stockService.decreaseStock("123", 2)).thenReturn(Optional.of(stockDto));
+
+        ResponseEntity<StockDto> response = stockController.decreaseStock("123", 2);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(stockDto, response.getBody());
+        verify(stockService, never()).getStockByProductId(any());
+    }
+
+    @Test
+    void testDecreaseStock_notEnoughUnits_conflict() {
+        when(stockService.decreaseStock("123", 2)).thenReturn(Optional.empty());
+        when(stockService.getStockByProductId("123")).thenReturn(Optional.of(stockDto));
+
+        assertEquals(409, stockController.decreaseStock("123", 2).getStatusCode().value());
+    }
+
+    @Test
+    void testDecreaseStock_noStock_notFound() {
+        when(stockService.decreaseStock("123", 2)).thenReturn(Optional.empty());
+        when(stockService.getStockByProductId("123")).thenReturn(Optional.empty());
+
+        assertEquals(404, stockController.decreaseStock("123", 2).getStatusCode().value());
+    }
+
+    @Test
+    void testDecreaseStock_nonPositiveAmount_badRequest() {
+        assertEquals(400, stockController.decreaseStock("123", 0).getStatusCode().value());
+        verifyNoInteractions(stockService);
+    }
+
+    @Test
+    void testSetStockQuantity_success() {
+        when(stockService.setStockQuantity("123", 7)).thenReturn(stockDto);
+
+        ResponseEntity<StockDto> response = stockController.setStockQuantity("123", 7);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(stockDto, response.getBody());
+    }
+
+    @Test
+    void testGetAvailableToSell() {
+        when(stockReservationService.getAvailableToSell(List.of("123"))).thenReturn(Map.of("123", 4));
+
+        ResponseEntity<Map<String, Integer>> response = stockController.getAvailableToSell(List.of("123"));
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(4, response.getBody().get("123"));
+    }
 }
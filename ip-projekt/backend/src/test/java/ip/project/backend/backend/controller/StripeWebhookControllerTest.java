@@ -0,0 +1,62 @@
+package ip.project.backend.backend.controller;
+
+import com.stripe.exception.SignatureVerificationException;
+import ip.project.backend.backend.service.StripeWebhookService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StripeWebhookControllerTest {
+
+    @Mock
+    private StripeWebhookService stripeWebhookService;
+
+    @InjectMocks
+    private StripeWebhookController stripeWebhookController;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void receiveWebhook_returnsOk_whenQueued() throws Exception {
+        when(stripeWebhookService.accept("{}", "t=1,v1=a")).thenReturn(true);
+
+        ResponseEntity<Void> response = stripeWebhookController.receiveWebhook("{}", "t=1,v1=a");
+
+        assertEquals(200, response.getStatusCode().value());
+    }
+
+    @Test
+    void receiveWebhook_returnsServiceUnavailable_whenQueueFull() throws Exception {
+        when(stripeWebhookService.accept("{}", "t=1,v1=a")).thenReturn(false);
+
+        ResponseEntity<Void> response = stripeWebhookController.receiveWebhook("{}", "t=1,v1=a");
+
+        assertEquals(503, response.getStatusCode().value());
+    }
+
+    @Test
+    void receiveWebhook_returnsBadRequest_whenSignatureInvalid() throws Exception {
+        when(stripeWebhookService.accept("{}", "t=1,v1=a")).thenThrow(new SignatureVerificationException("bad", "t=1,v1=a"));
+
+        ResponseEntity<Void> response = stripeWebhookController.receiveWebhook("{}", "t=1,v1=a");
+
+        assertEquals(400, response.getStatusCode().value());
+    }
+
+    @Test
+    void receiveWebhook_returnsBadRequest_whenSignatureMissing() {
+        ResponseEntity<Void> response = stripeWebhookController.receiveWebhook("{}", null);
+
+        assertEquals(400, response.getStatusCode().value());
+        verifyNoInteractions(stripeWebhookService);
+    }
+}
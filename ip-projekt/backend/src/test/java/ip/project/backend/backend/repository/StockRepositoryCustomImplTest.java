@@ -0,0 +1,82 @@
+package ip.project.backend.backend.repository;
+
+import ip.project.backend.backend.model.Stock;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class StockRepositoryCustomImplTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private StockRepositoryCustomImpl stockRepository;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        stockRepository = new StockRepositoryCustomImpl(mongoTemplate);
+    }
+
+    @Test
+    void decrementQuantity_guardsQuantityInTheMatch() {
+        Stock updated = new Stock(null, "prod_1", 1, false, false);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Stock.class))).thenReturn(updated);
+
+        Optional<Stock> result = stockRepository.decrementQuantity("prod_1", 2);
+
+        assertSame(updated, result.orElseThrow());
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate, times(1)).findAndModify(query.capture(), update.capture(), options.capture(), eq(Stock.class));
+        assertEquals(new Document("$gte", 2), query.getValue().getQueryObject().get("quantity"));
+        assertEquals(new Document("quantity", -2), update.getValue().getUpdateObject().get("$inc"));
+        assertTrue(options.getValue().isReturnNew());
+        assertFalse(options.getValue().isUpsert());
+    }
+
+    @Test
+    void decrementQuantity_notEnoughUnits_returnsEmpty() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Stock.class))).thenReturn(null);
+
+        assertTrue(stockRepository.decrementQuantity("prod_1", 5).isEmpty());
+    }
+
+    @Test
+    void incrementQuantity_upserts() {
+        stockRepository.incrementQuantity("prod_1", 3);
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), options.capture(), eq(Stock.class));
+        assertEquals(new Document("quantity", 3), update.getValue().getUpdateObject().get("$inc"));
+        assertTrue(options.getValue().isUpsert());
+    }
+
+    @Test
+    void setQuantity_concurrentInsert_retriesAsUpdate() {
+        Stock stored = new Stock(null, "prod_1", 4, false, false);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Stock.class)))
+                .thenThrow(new DuplicateKeyException("E11000"))
+                .thenReturn(stored);
+
+        assertSame(stored, stockRepository.setQuantity("prod_1", 4));
+        verify(mongoTemplate, times(2)).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Stock.class));
+    }
+}
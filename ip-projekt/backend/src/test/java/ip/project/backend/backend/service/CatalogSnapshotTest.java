@@ -0,0 +1,95 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.modeldto.ProductDto;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotTest {
+
+    private ProductDto product(String id, String upcCode) {
+        return new ProductDto("Produkt " + id, id, "Beschreibung", new BigDecimal("1.00"), new BigDecimal("0.50"), upcCode, 1L, 2L, true, "eur", true, "price_" + id);
+    }
+
+    @Test
+    void of_indexesByIdAndUpcCode() {
+        ProductDto apple = product("prod_1", "400123");
+        ProductDto pear = product("prod_2", "400124");
+
+        CatalogSnapshot snapshot = CatalogSnapshot.of(List.of(apple, pear));
+
+        assertEquals(2, snapshot.size());
+        assertEquals(pear, snapshot.findByUpcCode("400124").orElseThrow());
+        assertEquals(apple, snapshot.findById("prod_1").orElseThrow());
+        assertTrue(snapshot.findByUpcCode("999").isEmpty());
+        assertTrue(snapshot.findByUpcCode(null).isEmpty());
+    }
+
+    @Test
+    void of_duplicateUpcCode_firstProductWins() {
+        ProductDto first = product("prod_1", "400123");
+        ProductDto second = product("prod_2", "400123");
+
+        CatalogSnapshot snapshot = CatalogSnapshot.of(List.of(first, second));
+
+        assertEquals(first, snapshot.findByUpcCode("400123").orElseThrow());
+    }
+
+    @Test
+    void of_copiesTheList() {
+        List<ProductDto> products = new ArrayList<>(List.of(product("prod_1", "400123")));
+
+        CatalogSnapshot snapshot = CatalogSnapshot.of(products);
+        products.add(product("prod_2", "400124"));
+
+        assertEquals(1, snapshot.size());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.getProducts().add(product("prod_3", "1")));
+    }
+
+    @Test
+    void withProduct_replacesInPlaceAndReindexes() {
+        ProductDto apple = product("prod_1", "400123");
+        ProductDto pear = product("prod_2", "400124");
+        ProductDto newApple = product("prod_1", "400999");
+        CatalogSnapshot snapshot = CatalogSnapshot.of(List.of(apple, pear));
+
+        CatalogSnapshot changed = snapshot.withProduct(newApple);
+
+        assertEquals(List.of(newApple, pear), changed.getProducts());
+        assertEquals(newApple, changed.findByUpcCode("400999").orElseThrow());
+        assertTrue(changed.findByUpcCode("400123").isEmpty());
+        // the old snapshot is unchanged
+        assertEquals(apple, snapshot.findByUpcCode("400123").orElseThrow());
+    }
+
+    @Test
+    void withProduct_appendsNewProduct() {
+        CatalogSnapshot snapshot = CatalogSnapshot.of(List.of(product("prod_1", "400123")));
+
+        CatalogSnapshot changed = snapshot.withProduct(product("prod_2", "400124"));
+
+        assertEquals(2, changed.size());
+        assertTrue(changed.findById("prod_2").isPresent());
+    }
+
+    @Test
+    void withoutProduct_removesProductAndIndexEntries() {
+        CatalogSnapshot snapshot = CatalogSnapshot.of(List.of(product("prod_1", "400123"), product("prod_2", "400124")));
+
+        CatalogSnapshot changed = snapshot.withoutProduct("prod_1");
+
+        assertEquals(1, changed.size());
+        assertTrue(changed.findById("prod_1").isEmpty());
+        assertTrue(changed.findByUpcCode("400123").isEmpty());
+        assertSame(changed, changed.withoutProduct("prod_unknown"));
+    }
+
+    @Test
+    void of_null_isEmpty() {
+        assertTrue(CatalogSnapshot.of(null).isEmpty());
+    }
+}
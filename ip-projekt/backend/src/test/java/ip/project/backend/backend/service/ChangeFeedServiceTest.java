@@ -0,0 +1,204 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.modeldto.ChangeEventDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedServiceTest {
+
+    private List<RecordingEmitter> emitters;
+    private ChangeFeedService changeFeedService;
+
+    @BeforeEach
+    void setUp() {
+        emitters = new ArrayList<>();
+        changeFeedService = feed(2, 3);
+    }
+
+    @Test
+    void publish_sendsEventToEverySubscriber() {
+        changeFeedService.subscribe(null);
+        changeFeedService.subscribe(null);
+
+        changeFeedService.publish(ChangeEventDto.PRODUCT_UPDATED, "prod_1", "payload");
+
+        assertEquals(2, changeFeedService.getSubscriberCount());
+        for (RecordingEmitter emitter : emitters) {
+            assertEquals(1, emitter.sent.size());
+            assertTrue(emitter.sent.get(0).contains("event:product.updated"));
+        }
+    }
+
+    @Test
+    void subscribe_full_returnsEmpty() {
+        changeFeedService.subscribe(null);
+        changeFeedService.subscribe(null);
+
+        assertTrue(changeFeedService.subscribe(null).isEmpty());
+    }
+
+    @Test
+    void subscribe_withLastEventId_replaysMissedEvents() {
+        changeFeedService.publish(ChangeEventDto.PRODUCT_ADDED, "prod_1", null);
+        changeFeedService.publish(ChangeEventDto.STOCK_UPDATED, "prod_1", null);
+        changeFeedService.publish(ChangeEventDto.PRODUCT_DELETED, "prod_1", null);
+
+        changeFeedService.subscribe(changeFeedService.eventId(1));
+
+        List<String> sent = emitters.get(0).sent;
+        assertEquals(2, sent.size());
+        assertTrue(sent.get(0).contains("id:" + changeFeedService.eventId(2)));
+        assertTrue(sent.get(1).contains("event:product.deleted"));
+    }
+
+    @Test
+    void subscribe_missedEventsNoLongerKept_sendsResync() {
+        for (int i = 0; i < 5; i++) {
+            changeFeedService.publish(ChangeEventDto.STOCK_UPDATED, "prod_" + i, null);
+        }
+
+        changeFeedService.subscribe(changeFeedService.eventId(1));
+
+        List<String> sent = emitters.get(0).sent;
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0).contains("event:" + ChangeFeedService.RESYNC_EVENT));
+    }
+
+    @Test
+    void subscribe_idOfEarlierRun_sendsResync() {
+        changeFeedService.publish(ChangeEventDto.STOCK_UPDATED, "prod_1", null);
+
+        changeFeedService.subscribe("0-1");
+
+        assertTrue(emitters.get(0).sent.get(0).contains("event:" + ChangeFeedService.RESYNC_EVENT));
+    }
+
+    @Test
+    void publish_failingSubscriber_isRemoved() {
+        changeFeedService.subscribe(null);
+        changeFeedService.subscribe(null);
+        emitters.get(0).failing = true;
+
+        changeFeedService.publish(ChangeEventDto.PRODUCT_UPDATED, "prod_1", null);
+
+        assertEquals(1, changeFeedService.getSubscriberCount());
+        assertEquals(1, emitters.get(1).sent.size());
+    }
+
+    @Test
+    void publish_failingSubscriber_freesItsSlot() {
+        changeFeedService.subscribe(null);
+        changeFeedService.subscribe(null);
+        emitters.get(0).failing = true;
+
+        changeFeedService.publish(ChangeEventDto.PRODUCT_UPDATED, "prod_1", null);
+
+        assertTrue(changeFeedService.subscribe(null).isPresent());
+        assertEquals(2, changeFeedService.getSubscriberCount());
+    }
+
+    @Test
+    void subscribe_concurrentConnects_neverExceedMaximum() throws Exception {
+        ChangeFeedService feed = new ChangeFeedService(Runnable::run, 2, 3, 10, 60000) {
+            @Override
+            SseEmitter createEmitter(long timeoutMs) {
+                return new RecordingEmitter();
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return feed.subscribe(null).isPresent();
+                }));
+            }
+            start.countDown();
+            int accepted = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(5, TimeUnit.SECONDS)) {
+                    accepted++;
+                }
+            }
+            assertEquals(2, accepted);
+            assertEquals(2, feed.getSubscriberCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void publish_slowSubscriber_getsResyncWithoutHoldingUpOthers() {
+        List<Runnable> slowSends = new ArrayList<>();
+        ChangeFeedService feed = new ChangeFeedService(slowSends::add, 2, 10, 2, 60000) {
+            @Override
+            SseEmitter createEmitter(long timeoutMs) {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+        feed.subscribe(null);
+
+        for (int i = 0; i < 3; i++) {
+            feed.publish(ChangeEventDto.STOCK_UPDATED, "prod_" + i, null);
+        }
+        // one sender per subscriber, however many events are queued
+        assertEquals(1, slowSends.size());
+        slowSends.get(0).run();
+
+        List<String> sent = emitters.get(0).sent;
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0).contains("event:" + ChangeFeedService.RESYNC_EVENT));
+        assertTrue(sent.get(0).contains("id:" + feed.eventId(3)));
+        assertEquals(1, feed.getSubscriberCount());
+    }
+
+    private ChangeFeedService feed(int maxSubscribers, int historySize) {
+        return new ChangeFeedService(Runnable::run, maxSubscribers, historySize, 10, 60000) {
+            @Override
+            SseEmitter createEmitter(long timeoutMs) {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+    }
+
+    // keeps the sent events as text instead of writing them to a response
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<String> sent = new ArrayList<>();
+        private boolean failing;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            Set<ResponseBodyEmitter.DataWithMediaType> data = builder.build();
+            sent.add(data.stream().map(part -> String.valueOf(part.getData())).collect(Collectors.joining()));
+        }
+
+        @Override
+        public synchronized void completeWithError(Throwable ex) {
+            // not connected to a response in the test
+        }
+    }
+}
@@ -3,15 +3,26 @@ package ip.project.backend.backend.service;
 import com.stripe.exception.StripeException;
 import com.stripe.model.checkout.Session;
 import com.stripe.param.checkout.SessionCreateParams;
+import com.stripe.exception.InvalidRequestException;
 import ip.project.backend.backend.model.Checkout;
+import ip.project.backend.backend.model.ProductWithId;
 import ip.project.backend.backend.modeldto.CheckoutDto;
 import ip.project.backend.backend.modeldto.ProductWithQuantity;
 import ip.project.backend.backend.repository.CheckoutRepository;
 import ip.project.backend.backend.util.StripeConnection;
+import ip.project.backend.backend.util.InsufficientStockException;
+import ip.project.backend.backend.util.StripeGateway;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import com.mongodb.client.result.UpdateResult;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,13 +33,21 @@ class CheckoutServiceTest {
 
     private CheckoutRepository checkoutRepository;
     private StripeConnection stripeConnection;
+    private StockReservationService stockReservationService;
+    private StockService stockService;
+    private MongoTemplate mongoTemplate;
     private CheckoutService checkoutService;
 
     @BeforeEach
     void setUp() {
         checkoutRepository = mock(CheckoutRepository.class);
         stripeConnection = mock(StripeConnection.class);
-        checkoutService = new CheckoutService(checkoutRepository, stripeConnection);
+        stockReservationService = mock(StockReservationService.class);
+        stockService = mock(StockService.class);
+        mongoTemplate = mock(MongoTemplate.class);
+        checkoutService = new CheckoutService(checkoutRepository, new StripeGateway(stripeConnection, 1000, 1000, 1, 0, 0, 5, 30000),
+                stockReservationService, stockService, mongoTemplate, 35);
+        when(stockReservationService.reserve(any(), any())).thenReturn("res_1");
     }
 
     @Test
@@ -73,7 +92,90 @@ class CheckoutServiceTest {
         // Assertions und Verifications
         assertTrue(result.isPresent());
         assertEquals("secret_abc", result.get());
-        verify(checkoutRepository).insert(any(Checkout.class));
+        verify(checkoutRepository).insert(argThat((Checkout checkout) -> "res_1".equals(checkout.getReservationId())));
+        ArgumentCaptor<SessionCreateParams> params = ArgumentCaptor.forClass(SessionCreateParams.class);
+        verify(stripeClient.checkout().sessions()).create(params.capture());
+        assertEquals("res_1", params.getValue().getClientReferenceId());
+        assertNotNull(params.getValue().getExpiresAt());
+    }
+
+    @Test
+    void testCreateCheckout_notEnoughStock_noSession() {
+        when(stockReservationService.reserve(any(), any())).thenThrow(new InsufficientStockException(List.of("p1")));
+        CheckoutDto checkoutDto = new CheckoutDto(List.of(new ProductWithQuantity("p1", 2, "price_123")));
+
+        assertThrows(InsufficientStockException.class, () -> checkoutService.createCheckout(checkoutDto));
+        verifyNoInteractions(stripeConnection);
+        verifyNoInteractions(checkoutRepository);
+    }
+
+    @Test
+    void testCreateCheckout_stripeFails_releasesReservation() throws StripeException {
+        var stripeClient = mock(com.stripe.StripeClient.class, RETURNS_DEEP_STUBS);
+        when(stripeConnection.getStripeClient()).thenReturn(stripeClient);
+        when(stripeClient.checkout().sessions().create(any(SessionCreateParams.class)))
+                .thenThrow(new InvalidRequestException("bad price", null, null, null, 400, null));
+
+        Optional<String> result = checkoutService.createCheckout(new CheckoutDto(List.of(new ProductWithQuantity("p1", 2, "price_123"))));
+
+        assertTrue(result.isEmpty());
+        verify(stockReservationService).release("res_1");
+        verifyNoInteractions(checkoutRepository);
+    }
+
+    @Test
+    void testCommitCheckout_takesStockThenMarksCommitted() {
+        Checkout checkout = new Checkout("sess_1", new Date(), List.of(new ProductWithId("p1", 2), new ProductWithId("p2", 1)), "res_1");
+        when(checkoutRepository.findBySessionId("sess_1")).thenReturn(Optional.of(checkout));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Checkout.class))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        assertTrue(checkoutService.commitCheckout("sess_1"));
+
+        InOrder inOrder = inOrder(stockService, mongoTemplate, stockReservationService);
+        inOrder.verify(stockService).takeReservedStock("p1", 2);
+        inOrder.verify(stockService).takeReservedStock("p2", 1);
+        inOrder.verify(mongoTemplate).updateFirst(argThat((Query query) -> query.getQueryObject().containsKey("committed")), any(Update.class), eq(Checkout.class));
+        inOrder.verify(stockReservationService).release("res_1");
+    }
+
+    @Test
+    void testCommitCheckout_alreadyCommitted_takesNothing() {
+        Checkout checkout = new Checkout("sess_1", new Date(), List.of(new ProductWithId("p1", 2)), "res_1");
+        checkout.setCommitted(true);
+        when(checkoutRepository.findBySessionId("sess_1")).thenReturn(Optional.of(checkout));
+
+        assertFalse(checkoutService.commitCheckout("sess_1"));
+
+        verifyNoInteractions(stockService);
+        verify(stockReservationService, never()).release(any());
+    }
+
+    @Test
+    void testCommitCheckout_lineClaimedByOtherCall_isNotTakenAgain() {
+        Checkout checkout = new Checkout("sess_1", new Date(), List.of(new ProductWithId("p1", 2), new ProductWithId("p2", 1)), "res_1");
+        when(checkoutRepository.findBySessionId("sess_1")).thenReturn(Optional.of(checkout));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Checkout.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        assertTrue(checkoutService.commitCheckout("sess_1"));
+
+        verify(stockService, never()).takeReservedStock(eq("p1"), anyInt());
+        verify(stockService).takeReservedStock("p2", 1);
+    }
+
+    @Test
+    void testCommitCheckout_takeFails_givesClaimBackAndStaysUncommitted() {
+        Checkout checkout = new Checkout("sess_1", new Date(), List.of(new ProductWithId("p1", 2)), "res_1");
+        when(checkoutRepository.findBySessionId("sess_1")).thenReturn(Optional.of(checkout));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Checkout.class))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(stockService.takeReservedStock("p1", 2)).thenThrow(new DataAccessResourceFailureException("down"));
+
+        assertThrows(DataAccessResourceFailureException.class, () -> checkoutService.commitCheckout("sess_1"));
+
+        verify(mongoTemplate).updateFirst(any(Query.class), argThat((Update update) -> update.getUpdateObject().containsKey("$pull")), eq(Checkout.class));
+        verify(mongoTemplate, never()).updateFirst(argThat((Query query) -> query.getQueryObject().containsKey("committed")), any(Update.class), eq(Checkout.class));
+        verify(stockReservationService, never()).release(any());
     }
 
     @Test
@@ -103,4 +205,25 @@ class CheckoutServiceTest {
         assertEquals(1, savedCheckout.getProducts().get(0).getQuantity());
     }
 
+
+    @Test
+    void expireCheckout_releasesReservation_whenNotCommitted() {
+        Checkout checkout = new Checkout("sess_1", new Date(), List.of(new ProductWithId("p1", 2)), "res_1");
+        when(checkoutRepository.findBySessionId("sess_1")).thenReturn(Optional.of(checkout));
+
+        checkoutService.expireCheckout("sess_1");
+
+        verify(stockReservationService).release("res_1");
+    }
+
+    @Test
+    void expireCheckout_keepsReservation_whenCommitted() {
+        Checkout checkout = new Checkout("sess_1", new Date(), List.of(new ProductWithId("p1", 2)), "res_1");
+        checkout.setCommitted(true);
+        when(checkoutRepository.findBySessionId("sess_1")).thenReturn(Optional.of(checkout));
+
+        checkoutService.expireCheckout("sess_1");
+
+        verify(stockReservationService, never()).release(any());
+    }
 }
@@ -9,6 +9,7 @@ import com.stripe.param.PromotionCodeCreateParams;
 import ip.project.backend.backend.modeldto.CouponDto;
 import ip.project.backend.backend.modeldto.NewCouponDto;
 import ip.project.backend.backend.util.StripeConnection;
+import ip.project.backend.backend.util.StripeGateway;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -52,7 +53,7 @@ class CouponServiceTest {
         when(stripeClient.coupons()).thenReturn(couponServiceStripe);
         when(stripeClient.promotionCodes()).thenReturn(promotionCodeService);
 
-        couponService = new ip.project.backend.backend.service.CouponService(stripeConnection);
+        couponService = new ip.project.backend.backend.service.CouponService(new StripeGateway(stripeConnection, 1000, 1000, 1, 0, 0, 5, 30000));
     }
 
     @Test
@@ -196,6 +197,30 @@ class CouponServiceTest {
         // Assert
         assertNotNull(result);
         assertTrue(result.isEmpty());
+        assertTrue(couponService.isServingStaleData());
+    }
+
+    @Test
+    void getAllCoupons_StripeExceptionAfterLoad_keepsLastKnownCoupons() throws StripeException {
+        // Arrange
+        Coupon mockCoupon = mock(Coupon.class);
+        when(mockCoupon.getId()).thenReturn("coupon_123");
+        when(mockCoupon.getName()).thenReturn("TestCoupon");
+        StripeCollection<Coupon> stripeCollection = mock(StripeCollection.class);
+        when(stripeCollection.getData()).thenReturn(new ArrayList<>(List.of(mockCoupon)));
+        when(couponServiceStripe.list(any(CouponListParams.class))).thenReturn(stripeCollection);
+        couponService.getAllCoupons();
+
+        when(couponServiceStripe.list(any(CouponListParams.class))).thenThrow(mock(StripeException.class));
+
+        // Act
+        couponService.getCouponsFromStripe();
+        List<CouponDto> result = couponService.getAllCoupons();
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals("coupon_123", result.get(0).getId());
+        assertTrue(couponService.isServingStaleData());
     }
 
     @Test
@@ -450,7 +475,7 @@ class CouponServiceTest {
     @Test
     void validateNewCoupon_DuplicateDiscountWithDuration() {
         // Arrange
-        CouponService couponService = new CouponService(mock(StripeConnection.class));
+        CouponService couponService = new CouponService(mock(StripeGateway.class));
 
         // Bestehenden Coupon simulieren
         CouponDto existingCouponDto = new CouponDto();
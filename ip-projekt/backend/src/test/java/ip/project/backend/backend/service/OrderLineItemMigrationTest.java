@@ -0,0 +1,134 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.model.CatalogProduct;
+import ip.project.backend.backend.model.Order;
+import ip.project.backend.backend.model.OrderLineItem;
+import ip.project.backend.backend.repository.CatalogRepository;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OrderLineItemMigrationTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private CatalogRepository catalogRepository;
+
+    @Mock
+    private SalesRollupService salesRollupService;
+
+    @Mock
+    private BulkOperations bulk;
+
+    private OrderLineItemMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        migration = new OrderLineItemMigration(mongoTemplate, catalogRepository, salesRollupService, true, 2);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Order.class)).thenReturn(bulk);
+    }
+
+    @Test
+    void deriveLineItems_countsEqualNamesWithCatalogPrices() {
+        Map<String, CatalogProduct> catalog = Map.of("Apfel", product("prod_1", "Apfel", "0.49", "0.20", true));
+
+        List<OrderLineItem> lineItems = OrderLineItemMigration.deriveLineItems(List.of("Apfel", "Brot", "Apfel"), catalog);
+
+        assertEquals(List.of(
+                new OrderLineItem("prod_1", "Apfel", 2, 49L, 20L),
+                new OrderLineItem(null, "Brot", 1, null, null)), lineItems);
+    }
+
+    @Test
+    void migrate_pagesUntilBatchIsNotFull() {
+        when(mongoTemplate.find(any(Query.class), eq(Order.class)))
+                .thenReturn(List.of(order("Apfel"), order("Apfel")))
+                .thenReturn(List.of(order("Brot")));
+        when(catalogRepository.findByProductNameIn(any())).thenReturn(List.of(
+                product("prod_old", "Apfel", "0.39", null, false),
+                product("prod_1", "Apfel", "0.49", "0.20", true)));
+
+        int migrated = migration.migrate();
+
+        assertEquals(3, migrated);
+        verify(mongoTemplate, times(2)).find(any(Query.class), eq(Order.class));
+        verify(bulk, times(3)).updateOne(any(Query.class), argThat((Update update) ->
+                Boolean.TRUE.equals(update.getUpdateObject().get("$set", Map.class).get("lineItemsEstimated"))));
+        verify(bulk, times(2)).execute();
+    }
+
+    @Test
+    void migrate_queryUsesRolledUpIndex() {
+        when(mongoTemplate.find(any(Query.class), eq(Order.class))).thenReturn(List.of());
+
+        migration.migrate();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(Order.class));
+        assertEquals(new Document("$in", Arrays.asList(false, null)), query.getValue().getQueryObject().get("rolledUp"));
+        assertEquals(new Document("$exists", false), query.getValue().getQueryObject().get("lineItems"));
+    }
+
+    @Test
+    void migrate_nothingToDo_writesNothing() {
+        when(mongoTemplate.find(any(Query.class), eq(Order.class))).thenReturn(List.of());
+
+        assertEquals(0, migration.migrate());
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(Order.class));
+    }
+
+    @Test
+    void migrateScheduled_migratedOrders_areRolledUp() {
+        when(mongoTemplate.find(any(Query.class), eq(Order.class))).thenReturn(List.of(order("Apfel")));
+
+        migration.migrateScheduled();
+
+        verify(salesRollupService).rollUpPending();
+    }
+
+    @Test
+    void migrateScheduled_nothingMigrated_skipsRollup() {
+        when(mongoTemplate.find(any(Query.class), eq(Order.class))).thenReturn(List.of());
+
+        migration.migrateScheduled();
+
+        verify(salesRollupService, never()).rollUpPending();
+    }
+
+    private static Order order(String productName) {
+        Order order = new Order();
+        order.setId(new ObjectId());
+        order.setProducts(List.of(productName));
+        return order;
+    }
+
+    private static CatalogProduct product(String productId, String name, String listPrice, String costPrice, boolean active) {
+        CatalogProduct product = new CatalogProduct();
+        product.setProductId(productId);
+        product.setProductName(name);
+        product.setListPrice(new BigDecimal(listPrice));
+        product.setCostPrice(costPrice == null ? null : new BigDecimal(costPrice));
+        product.setActive(active);
+        return product;
+    }
+}
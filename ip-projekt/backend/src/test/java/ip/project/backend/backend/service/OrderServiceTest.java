@@ -1,18 +1,39 @@
 package ip.project.backend.backend.service;
 
 import ip.project.backend.backend.model.Order;
+import ip.project.backend.backend.model.OrderLineItem;
+import com.mongodb.bulk.BulkWriteError;
+import ip.project.backend.backend.modeldto.OrderDto;
+import ip.project.backend.backend.modeldto.OrderLineItemDto;
+import ip.project.backend.backend.modeldto.SyncOrderDto;
+import ip.project.backend.backend.modeldto.SyncOrderResultDto;
 import ip.project.backend.backend.repository.OrderRepository;
+import ip.project.backend.backend.modeldto.SalesReportDto;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.Decimal128;
 import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
 
 import java.math.BigDecimal;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -22,6 +43,12 @@ public class OrderServiceTest {
     @Mock
     private OrderRepository orderRepository; // Mock the OrderRepository
 
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private SalesRollupService salesRollupService;
+
     @InjectMocks
     private OrderService orderService; // Inject the mocked repository into the OrderService
 
@@ -76,4 +103,208 @@ public class OrderServiceTest {
         assertEquals(orderId, createdOrder.getOrderId(), "The order ID should match");
         verify(orderRepository, times(1)).save(any(Order.class)); // Ensure save method was called once
     }
+
+    @Test
+    public void testPlaceOrder_newOrder_singleInsert() {
+        Order order = new Order("key-1", List.of("1"), BigDecimal.TEN, new Date(), 1);
+        when(orderRepository.insert(any(Order.class))).thenReturn(order);
+
+        OrderService.PlacedOrder placed = orderService.placeOrder("key-1", List.of("1"), BigDecimal.TEN, new Date(), 1, null);
+
+        assertTrue(placed.isCreated());
+        assertFalse(placed.isConflicting());
+        verify(orderRepository, never()).findOrderByOrderId(any());
+        // without line items the order is added to the rollup after the migration
+        verify(orderRepository).insert(argThat((Order inserted) -> Boolean.FALSE.equals(inserted.getRolledUp())));
+        verify(salesRollupService, never()).record(any());
+    }
+
+    @Test
+    public void testPlaceOrder_withLineItems_addedToRollup() {
+        List<OrderLineItem> lineItems = List.of(new OrderLineItem("prod_1", "Apfel", 2, 50L, 20L));
+        Order order = new Order("key-1", List.of("Apfel", "Apfel"), BigDecimal.ONE, new Date(), 1, lineItems);
+        when(orderRepository.insert(any(Order.class))).thenReturn(order);
+
+        orderService.placeOrder("key-1", List.of("Apfel", "Apfel"), BigDecimal.ONE, new Date(), 1, lineItems);
+
+        verify(orderRepository).insert(argThat((Order inserted) -> Boolean.TRUE.equals(inserted.getRolledUp())));
+        verify(salesRollupService).record(List.of(order));
+    }
+
+    @Test
+    public void testPlaceOrder_duplicateKey_notAddedToRollupAgain() {
+        List<OrderLineItem> lineItems = List.of(new OrderLineItem("prod_1", "Apfel", 2, 50L, 20L));
+        when(orderRepository.insert(any(Order.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key"));
+        when(orderRepository.findOrderByOrderId("key-1")).thenReturn(Optional.of(
+                new Order("key-1", List.of("Apfel", "Apfel"), BigDecimal.ONE, new Date(), 1, lineItems)));
+
+        orderService.placeOrder("key-1", List.of("Apfel", "Apfel"), BigDecimal.ONE, new Date(), 1, lineItems);
+
+        verify(salesRollupService, never()).record(any());
+    }
+
+    @Test
+    public void testPlaceOrder_duplicateKey_returnsStoredOrder() {
+        Order stored = new Order("key-1", List.of("1"), new BigDecimal("10.00"), new Date(), 1);
+        when(orderRepository.insert(any(Order.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key"));
+        when(orderRepository.findOrderByOrderId("key-1")).thenReturn(Optional.of(stored));
+
+        OrderService.PlacedOrder placed = orderService.placeOrder("key-1", List.of("1"), BigDecimal.TEN, new Date(), 1, null);
+
+        assertFalse(placed.isCreated());
+        assertFalse(placed.isConflicting());
+        assertSame(stored, placed.getOrder());
+    }
+
+    @Test
+    public void testPlaceOrder_duplicateKeyOtherOrder_isConflicting() {
+        Order stored = new Order("key-1", List.of("1"), BigDecimal.TEN, new Date(), 2);
+        when(orderRepository.insert(any(Order.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key"));
+        when(orderRepository.findOrderByOrderId("key-1")).thenReturn(Optional.of(stored));
+
+        OrderService.PlacedOrder placed = orderService.placeOrder("key-1", List.of("1"), BigDecimal.TEN, new Date(), 1, null);
+
+        assertTrue(placed.isConflicting());
+    }
+
+    @Test
+    public void testPlaceOrder_duplicateKeyOtherLineItems_isConflicting() {
+        Order stored = new Order("key-1", List.of("Apfel"), BigDecimal.TEN, new Date(), 1,
+                List.of(new OrderLineItem("prod_1", "Apfel", 1, 1000L, 400L)));
+        when(orderRepository.insert(any(Order.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key"));
+        when(orderRepository.findOrderByOrderId("key-1")).thenReturn(Optional.of(stored));
+
+        OrderService.PlacedOrder placed = orderService.placeOrder("key-1", List.of("Apfel"), BigDecimal.TEN, new Date(), 1,
+                List.of(new OrderLineItem("prod_2", "Apfel", 1, 1000L, 400L)));
+
+        assertTrue(placed.isConflicting());
+    }
+
+    @Test
+    public void testSyncOrders_allNew_oneBulkInsert() {
+        BulkOperations bulk = mockBulk();
+
+        List<SyncOrderResultDto> results = orderService.syncOrders(List.of(sync("k1", 1), sync("k2", 1)));
+
+        assertEquals(List.of(SyncOrderResultDto.CREATED, SyncOrderResultDto.CREATED), statuses(results));
+        verify(bulk, times(1)).insert(argThat((List<?> orders) -> orders.size() == 2));
+        verify(bulk, times(1)).execute();
+        verify(orderRepository, never()).insert(any(Order.class));
+    }
+
+    @Test
+    public void testSyncOrders_storedKeys_replayedOrConflict() {
+        BulkOperations bulk = mockBulk();
+        BulkOperationException exception = mock(BulkOperationException.class);
+        when(exception.getErrors()).thenReturn(List.of(
+                new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0),
+                new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 2),
+                new BulkWriteError(121, "Document failed validation", new BsonDocument(), 3)));
+        when(bulk.execute()).thenThrow(exception);
+        when(orderRepository.findByOrderIdIn(any())).thenReturn(List.of(
+                new Order("k1", List.of("Apfel"), BigDecimal.TEN, new Date(), 1),
+                new Order("k3", List.of("Apfel"), BigDecimal.TEN, new Date(), 2)));
+
+        List<SyncOrderResultDto> results = orderService.syncOrders(List.of(sync("k1", 1), sync("k2", 1), sync("k3", 1), sync("k4", 1)));
+
+        assertEquals(List.of(SyncOrderResultDto.REPLAYED, SyncOrderResultDto.CREATED, SyncOrderResultDto.CONFLICT, SyncOrderResultDto.FAILED), statuses(results));
+        verify(orderRepository, times(1)).findByOrderIdIn(any());
+    }
+
+    @Test
+    public void testSyncOrders_keyTwiceInBatch_insertedOnce() {
+        BulkOperations bulk = mockBulk();
+
+        List<SyncOrderResultDto> results = orderService.syncOrders(List.of(sync("k1", 1), sync("k1", 1), sync("k1", 2)));
+
+        assertEquals(List.of(SyncOrderResultDto.CREATED, SyncOrderResultDto.REPLAYED, SyncOrderResultDto.CONFLICT), statuses(results));
+        verify(bulk).insert(argThat((List<?> orders) -> orders.size() == 1));
+    }
+
+    @Test
+    public void testSyncOrders_lineItems_storedWithOrder() {
+        BulkOperations bulk = mockBulk();
+        SyncOrderDto sync = sync("k1", 1);
+        sync.getOrder().setLineItems(List.of(new OrderLineItemDto("prod_1", "Apfel", 2, 500L, 200L)));
+
+        orderService.syncOrders(List.of(sync));
+
+        verify(bulk).insert(argThat((List<?> orders) -> ((Order) orders.get(0)).getLineItems()
+                .equals(List.of(new OrderLineItem("prod_1", "Apfel", 2, 500L, 200L)))));
+        verify(salesRollupService).record(argThat(orders -> orders.size() == 1));
+    }
+
+    @Test
+    public void testSyncOrders_onlyCreatedOrdersWithLineItems_addedToRollup() {
+        BulkOperations bulk = mockBulk();
+        BulkOperationException exception = mock(BulkOperationException.class);
+        when(exception.getErrors()).thenReturn(List.of(new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0)));
+        when(bulk.execute()).thenThrow(exception);
+        when(orderRepository.findByOrderIdIn(any())).thenReturn(List.of());
+        SyncOrderDto replayed = sync("k1", 1);
+        replayed.getOrder().setLineItems(List.of(new OrderLineItemDto("prod_1", "Apfel", 1, 500L, 200L)));
+        SyncOrderDto created = sync("k2", 1);
+        created.getOrder().setLineItems(List.of(new OrderLineItemDto("prod_1", "Apfel", 1, 500L, 200L)));
+
+        orderService.syncOrders(List.of(replayed, created, sync("k3", 1)));
+
+        verify(salesRollupService).record(argThat(orders -> orders.size() == 1
+                && "k2".equals(orders.iterator().next().getOrderId())));
+    }
+
+    @Test
+    public void testGetSalesReport_groupsInDatabase() {
+        Document row = new Document("_id", "2026-10-17")
+                .append("revenue", new Decimal128(new BigDecimal("30.00")))
+                .append("orderCount", 4)
+                .append("averageBasket", new Decimal128(new BigDecimal("7.5000")));
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Order.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(row), new Document()));
+
+        List<SalesReportDto> report = orderService.getSalesReport(new Date(0), new Date(), 3, OrderService.ReportGrouping.DAY, ZoneId.of("Europe/Berlin"));
+
+        assertEquals(1, report.size());
+        assertEquals("2026-10-17", report.get(0).getKey());
+        assertEquals(new BigDecimal("30.00"), report.get(0).getRevenue());
+        assertEquals(4, report.get(0).getOrderCount());
+        assertEquals(new BigDecimal("7.50"), report.get(0).getAverageBasket());
+
+        ArgumentCaptor<Aggregation> aggregation = ArgumentCaptor.forClass(Aggregation.class);
+        verify(mongoTemplate).aggregate(aggregation.capture(), eq(Order.class), eq(Document.class));
+        String pipeline = aggregation.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).toString();
+        assertTrue(pipeline.contains("$match"));
+        assertTrue(pipeline.contains("employeeId=3"));
+        assertTrue(pipeline.contains("Europe/Berlin"));
+        verify(orderRepository, never()).getByDateBetween(any(), any());
+    }
+
+    @Test
+    public void testStreamOrdersInPeriod_usesBoundedCursor() {
+        when(mongoTemplate.stream(any(Query.class), eq(Order.class))).thenReturn(Stream.of(
+                new Order("k1", List.of("Apfel"), BigDecimal.TEN, new Date(), 1),
+                new Order("k2", List.of("Brot"), BigDecimal.ONE, new Date(), 1)));
+        List<String> streamed = new ArrayList<>();
+
+        long count = orderService.streamOrdersInPeriod(new Date(0), new Date(), null, order -> streamed.add(order.getOrderId()));
+
+        assertEquals(2, count);
+        assertEquals(List.of("k1", "k2"), streamed);
+        verify(mongoTemplate).stream(argThat((Query query) -> query.getMeta().getCursorBatchSize() == OrderService.EXPORT_BATCH_SIZE), eq(Order.class));
+        verify(orderRepository, never()).getByDateBetween(any(), any());
+    }
+
+    private BulkOperations mockBulk() {
+        BulkOperations bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Order.class)).thenReturn(bulk);
+        when(bulk.insert(anyList())).thenReturn(bulk);
+        return bulk;
+    }
+
+    private static SyncOrderDto sync(String key, Integer employeeId) {
+        return new SyncOrderDto(key, new OrderDto(List.of("Apfel"), BigDecimal.TEN, new Date(), employeeId));
+    }
+
+    private static List<String> statuses(List<SyncOrderResultDto> results) {
+        return results.stream().map(SyncOrderResultDto::getStatus).toList();
+    }
 }
@@ -0,0 +1,117 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.model.Employee;
+import ip.project.backend.backend.model.Role;
+import ip.project.backend.backend.modeldto.CouponDto;
+import ip.project.backend.backend.modeldto.PosBootstrapDto;
+import ip.project.backend.backend.modeldto.ProductDto;
+import ip.project.backend.backend.modeldto.StockDto;
+import ip.project.backend.backend.util.StripeExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PosBootstrapServiceTest {
+
+    private ProductService productService;
+    private StockService stockService;
+    private CouponService couponService;
+    private CacheManager cacheManager;
+    private StripeExecutor stripeExecutor;
+    private PosBootstrapService posBootstrapService;
+
+    private final ProductDto apple = new ProductDto("Apfel", "prod_1", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 2L, true, "eur", true, "price_1");
+    private final ProductDto pear = new ProductDto("Birne", "prod_2", "Conference", new BigDecimal("1.50"), new BigDecimal("0.70"), "400124", 1L, 2L, true, "eur", true, "price_2");
+
+    @BeforeEach
+    void setUp() {
+        productService = mock(ProductService.class);
+        stockService = mock(StockService.class);
+        couponService = mock(CouponService.class);
+        cacheManager = mock(CacheManager.class);
+        stripeExecutor = new StripeExecutor(2, true);
+        posBootstrapService = new PosBootstrapService(productService, stockService, couponService, cacheManager, stripeExecutor);
+
+        when(productService.getActiveProducts()).thenReturn(List.of(apple, pear));
+        when(stockService.getAllStock()).thenReturn(List.of(new StockDto("prod_2", 7, false, false), new StockDto("prod_9", 1, false, false)));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        posBootstrapService.shutdown();
+        stripeExecutor.shutdown();
+    }
+
+    @Test
+    void bootstrap_joinsStockByProductId() {
+        PosBootstrapDto result = posBootstrapService.bootstrap(employee("kasse"));
+
+        assertEquals(2, result.getProducts().size());
+        assertNull(result.getProducts().get(0).getStock());
+        assertEquals(7, result.getProducts().get(1).getStock().getQuantity());
+        assertEquals(List.of("kasse"), result.getAccessRights());
+        assertEquals(42, result.getEmployeeId());
+    }
+
+    @Test
+    void bootstrap_withoutCouponPermission_doesNotLoadCoupons() {
+        PosBootstrapDto result = posBootstrapService.bootstrap(employee("kasse"));
+
+        assertNull(result.getCoupons());
+        verifyNoInteractions(couponService);
+    }
+
+    @Test
+    void bootstrap_withCouponPermission_includesCoupons() {
+        List<CouponDto> coupons = List.of(new CouponDto("c_1", "SOMMER", null, "eur", "once", 10f));
+        when(couponService.getAllCoupons()).thenReturn(coupons);
+
+        PosBootstrapDto result = posBootstrapService.bootstrap(employee("kasse", "coupons.read"));
+
+        assertEquals(coupons, result.getCoupons());
+        assertFalse(result.isStale());
+    }
+
+    @Test
+    void bootstrap_couponsFail_returnsRestMarkedStale() {
+        when(couponService.getAllCoupons()).thenThrow(new IllegalStateException("stripe down"));
+
+        PosBootstrapDto result = posBootstrapService.bootstrap(employee("admin"));
+
+        assertEquals(List.of(), result.getCoupons());
+        assertEquals(2, result.getProducts().size());
+        assertTrue(result.isStale());
+    }
+
+    @Test
+    void bootstrap_usesActiveProductsCache() {
+        ConcurrentMapCache cache = new ConcurrentMapCache("ActiveProducts");
+        cache.put("all", List.of(apple));
+        when(cacheManager.getCache("ActiveProducts")).thenReturn(cache);
+
+        PosBootstrapDto result = posBootstrapService.bootstrap(employee("kasse"));
+
+        assertEquals(1, result.getProducts().size());
+        verify(productService, never()).getActiveProducts();
+    }
+
+    @Test
+    void bootstrap_sendsActiveProductsOnly() {
+        posBootstrapService.bootstrap(employee("kasse"));
+
+        verify(productService).getActiveProducts();
+        verify(productService, never()).getAllProducts();
+    }
+
+    private static Employee employee(String... permissions) {
+        return new Employee(42, "Max", "Muster", "hash", new Role(1, "Kasse", "Kassierer", List.of(permissions)));
+    }
+}
@@ -0,0 +1,104 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.modeldto.ProductDto;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductSearchIndexTest {
+
+    private final ProductDto apple = product("prod_1", "Apfel Gala", "Frischer Apfel aus der Steiermark", "4001234567890", true);
+    private final ProductDto juice = product("prod_2", "Apfelsaft naturtrüb", "1 Liter", "4001234567891", true);
+    private final ProductDto muesli = product("prod_3", "Müsli Schoko", "Mit Apfelstücken", "4009999999999", true);
+    private final ProductDto oldJuice = product("prod_4", "Apfelsaft klar", "Ausgelistet", "4001234567892", false);
+
+    private final ProductSearchIndex index = ProductSearchIndex.build(List.of(apple, juice, muesli, oldJuice));
+
+    @Test
+    void search_prefix_matchesBeginningOfWords() {
+        assertEquals(List.of(apple, juice, muesli), index.search("apf", 10, true));
+    }
+
+    @Test
+    void search_exactNameBeforePrefixBeforeDescription() {
+        List<ProductDto> result = index.search("apfel", 10, true);
+
+        // exact in name, prefix in name, prefix in description
+        assertEquals(List.of(apple, juice, muesli), result);
+    }
+
+    @Test
+    void search_allWordsHaveToMatch() {
+        assertEquals(List.of(juice), index.search("apfelsaft natur", 10, true));
+        assertEquals(List.of(), index.search("apfelsaft banane", 10, true));
+    }
+
+    @Test
+    void search_oneTypo_isFound() {
+        assertEquals(List.of(muesli), index.search("schkoo", 10, true));
+        assertEquals(List.of(muesli), index.search("schoco", 10, true));
+        assertEquals(List.of(apple), index.search("gala steirmark", 10, true));
+    }
+
+    @Test
+    void search_ignoresCaseAndUmlauts() {
+        assertEquals(List.of(muesli), index.search("MUSLI", 10, true));
+        assertEquals(List.of(juice), index.search("naturtrub", 10, true));
+    }
+
+    @Test
+    void search_upcCodePrefix_noTypoTolerance() {
+        assertEquals(List.of(juice), index.search("4001234567891", 10, true));
+        assertEquals(List.of(apple, juice), index.search("40012345", 10, true));
+        assertEquals(List.of(), index.search("4001234567899", 10, true));
+    }
+
+    @Test
+    void search_inactiveOnlyIfRequested() {
+        assertEquals(List.of(), index.search("klar", 10, true));
+        assertEquals(List.of(oldJuice), index.search("klar", 10, false));
+    }
+
+    @Test
+    void search_limitKeepsBestResults() {
+        assertEquals(List.of(apple), index.search("apfel", 1, true));
+    }
+
+    @Test
+    void search_blankQuery_returnsEmpty() {
+        assertTrue(index.search("  ", 10, true).isEmpty());
+        assertTrue(index.search(null, 10, true).isEmpty());
+    }
+
+    @Test
+    void search_largeCatalog_returnsTopN() {
+        List<ProductDto> products = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            products.add(product("prod_" + i, "Artikel " + i + " Sorte" + (i % 50), "Beschreibung " + i, String.valueOf(9000000000000L + i), true));
+        }
+        ProductSearchIndex large = ProductSearchIndex.build(products);
+
+        List<ProductDto> result = large.search("sorte7 artikel", 20, true);
+
+        assertEquals(20, result.size());
+        assertTrue(result.stream().allMatch(p -> p.getProductName().endsWith("Sorte7")));
+    }
+
+    @Test
+    void isOneEditApart_coversSubstitutionInsertionDeletionSwap() {
+        assertTrue(ProductSearchIndex.isOneEditApart("schoko", "schoco"));
+        assertTrue(ProductSearchIndex.isOneEditApart("schoko", "schokko"));
+        assertTrue(ProductSearchIndex.isOneEditApart("schoko", "schok"));
+        assertTrue(ProductSearchIndex.isOneEditApart("schoko", "schkoo"));
+        assertFalse(ProductSearchIndex.isOneEditApart("schoko", "shcoko1"));
+        assertFalse(ProductSearchIndex.isOneEditApart("schoko", "scoco"));
+    }
+
+    private static ProductDto product(String id, String name, String description, String upcCode, boolean active) {
+        return new ProductDto(name, id, description, new BigDecimal("1.00"), new BigDecimal("0.50"), upcCode, 1L, 2L, active, "eur", true, "price_" + id);
+    }
+}
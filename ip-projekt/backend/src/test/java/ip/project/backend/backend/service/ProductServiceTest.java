@@ -6,12 +6,19 @@ import com.stripe.model.StripeCollection;
 import com.stripe.model.StripeSearchResult;
 import com.stripe.param.PriceSearchParams;
 import com.stripe.param.ProductListParams;
+import com.stripe.param.ProductRetrieveParams;
 import com.stripe.param.ProductUpdateParams;
 import com.stripe.service.PriceService;
+import ip.project.backend.backend.model.CatalogProduct;
+import ip.project.backend.backend.modeldto.ChangeEventDto;
+import ip.project.backend.backend.modeldto.PriceHistoryDto;
 import ip.project.backend.backend.modeldto.ProductDto;
 import ip.project.backend.backend.modeldto.ProductPriceDto;
-import ip.project.backend.backend.repository.OrderRepository;
+import ip.project.backend.backend.repository.CatalogRepository;
 import ip.project.backend.backend.util.StripeConnection;
+import ip.project.backend.backend.util.StripeExecutor;
+import ip.project.backend.backend.util.StripeGateway;
+import ip.project.backend.backend.util.StripePriceCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -24,6 +31,11 @@ import org.mockito.quality.Strictness;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -45,18 +57,26 @@ class ProductServiceTest {
     @Mock
     private com.stripe.service.PriceService priceServiceStripe;
 
+    @Mock
+    private CatalogRepository catalogRepository;
+
+    @Mock
+    private ChangeFeedService changeFeedService;
+
 
     private ip.project.backend.backend.service.ProductService productService;
 
+    private StripePriceCache priceCache;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        OrderRepository orderRepository = mock(OrderRepository.class);
         when(stripeConnection.getStripeClient()).thenReturn(stripeClient);
         when(stripeClient.products()).thenReturn(productServiceStripe);
         when(stripeClient.prices()).thenReturn(priceServiceStripe);
 
-        productService = new ip.project.backend.backend.service.ProductService(stripeConnection, orderRepository);
+        priceCache = new StripePriceCache(new StripeGateway(stripeConnection, 1000, 1000, 1, 0, 0, 5, 30000), 100);
+        productService = new ip.project.backend.backend.service.ProductService(new StripeGateway(stripeConnection, 1000, 1000, 1, 0, 0, 5, 30000), catalogRepository, priceCache, new StripeExecutor(4, true), changeFeedService, mock(SalesRollupService.class));
     }
 
 
@@ -100,7 +120,7 @@ class ProductServiceTest {
 
         when(stripeConnection.getStripeClient()).thenReturn(stripeClient);
         when(stripeClient.products()).thenReturn(productServiceStripe);
-        when(productServiceStripe.retrieve(productId)).thenReturn(mockStripeProduct);
+        when(productServiceStripe.retrieve(eq(productId), any(ProductRetrieveParams.class))).thenReturn(mockStripeProduct);
 
         // Spy erstellen und Methode stubben
         ip.project.backend.backend.service.ProductService spyService = spy(productService);
@@ -130,8 +150,9 @@ class ProductServiceTest {
         price.setId(priceId);
         price.setUnitAmount(1999L); // 19.99€
 
-        when(productServiceStripe.retrieve(productId)).thenReturn(product);
-        when(priceServiceStripe.retrieve(priceId)).thenReturn(price);
+        product.setDefaultPriceObject(price);
+
+        when(productServiceStripe.retrieve(eq(productId), any(ProductRetrieveParams.class))).thenReturn(product);
 
         Optional<ProductPriceDto> result = productService.getPriceToProduct(productId);
 
@@ -139,11 +160,12 @@ class ProductServiceTest {
         assertEquals(productId, result.get().getProductId());
         assertEquals(priceId, result.get().getPriceId());
         assertEquals(19.0f, result.get().getPrice()); // Achtung: Rundung beachten!
+        verify(priceServiceStripe, never()).retrieve(anyString()); // price came expanded with the product
     }
 
     @Test
      void testGetPriceToProduct_ProductNotFound() throws StripeException {
-        when(productServiceStripe.retrieve("invalid_id")).thenReturn(null);
+        when(productServiceStripe.retrieve(eq("invalid_id"), any(ProductRetrieveParams.class))).thenReturn(null);
 
         Optional<ProductPriceDto> result = productService.getPriceToProduct("invalid_id");
 
@@ -156,7 +178,7 @@ class ProductServiceTest {
         product.setId("prod_123");
         product.setDefaultPrice("price_missing");
 
-        when(productServiceStripe.retrieve("prod_123")).thenReturn(product);
+        when(productServiceStripe.retrieve(eq("prod_123"), any(ProductRetrieveParams.class))).thenReturn(product);
         when(priceServiceStripe.retrieve("price_missing")).thenReturn(null);
 
         Optional<ProductPriceDto> result = productService.getPriceToProduct("prod_123");
@@ -270,6 +292,8 @@ class ProductServiceTest {
         when(mockPrice.getTaxBehavior()).thenReturn("inclusive");
         when(mockPrice.getActive()).thenReturn(false);  // nur nötig wenn du .filter(price -> !price.getActive()) nutzt
         when(mockPrice.getMetadata()).thenReturn(Map.of("costPrice", "6.49"));
+        when(mockPrice.getProduct()).thenReturn("prod_001");
+        when(mockPrice.getCreated()).thenReturn(1620000000L);
 
         // 3. Preis-Suchergebnis mocken
         StripeSearchResult<Price> priceSearchResult = mock(StripeSearchResult.class);
@@ -315,11 +339,366 @@ class ProductServiceTest {
         Product mockProduct = mock(Product.class);
         when(productServiceStripe.retrieve(productId)).thenReturn(mockProduct);
         
-        when(mockProduct.update(any(ProductUpdateParams.class))).thenReturn(mockProduct);        // Act
+        when(productServiceStripe.update(eq(productId), any(ProductUpdateParams.class))).thenReturn(mockProduct);        // Act
         Optional<String> result = productService.deleteProduct(productId);
 
         // Assert
         assertTrue(result.isEmpty());
+        verify(productServiceStripe).update(eq(productId), any(ProductUpdateParams.class));
+        verify(changeFeedService).publish(ChangeEventDto.PRODUCT_DELETED, productId, null);
+    }
+
+    @Test
+    void getAllProducts_whenMirrorFilled_thenStripeNotCalled() {
+        CatalogProduct entry = new CatalogProduct("prod_1", "Apfel", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 2L, true, "eur", true, "price_1", new Date());
+        when(catalogRepository.findAll()).thenReturn(List.of(entry));
+
+        List<ProductDto> result = productService.getAllProducts();
+
+        assertEquals(1, result.size());
+        assertEquals("prod_1", result.get(0).getProductId());
+        assertEquals("400123", result.get(0).getUpcCode());
+        assertEquals("price_1", result.get(0).getPriceId());
+        verifyNoInteractions(productServiceStripe);
+    }
+
+    @Test
+    void getProductById_whenMirrored_thenStripeNotCalled() {
+        CatalogProduct entry = new CatalogProduct("prod_1", "Apfel", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 2L, true, "eur", true, "price_1", new Date());
+        when(catalogRepository.findById("prod_1")).thenReturn(Optional.of(entry));
+
+        Optional<ProductDto> result = productService.getProductById("prod_1");
+
+        assertTrue(result.isPresent());
+        assertEquals("Apfel", result.get().getProductName());
+        verifyNoInteractions(productServiceStripe);
+    }
+
+    @Test
+    void reconcileCatalog_removesProductsNoLongerInStripe() throws StripeException {
+        StripeCollection<Product> emptyCollection = mock(StripeCollection.class);
+        when(emptyCollection.getData()).thenReturn(new ArrayList<>());
+        when(productServiceStripe.list(any(ProductListParams.class))).thenReturn(emptyCollection);
+
+        CatalogProduct stale = new CatalogProduct();
+        stale.setProductId("prod_gone");
+        when(catalogRepository.streamAllBy()).thenReturn(java.util.stream.Stream.of(stale));
+
+        productService.reconcileCatalog();
+
+        verify(catalogRepository).deleteAllById(List.of("prod_gone"));
+    }
+
+    @Test
+    void reconcileCatalog_whenStripeFails_thenMirrorUntouched() throws StripeException {
+        when(productServiceStripe.list(any(ProductListParams.class))).thenThrow(mock(StripeException.class));
+
+        List<ProductDto> result = productService.reconcileCatalog();
+
+        assertTrue(result.isEmpty());
+        verify(catalogRepository, never()).saveAll(any());
+        verify(catalogRepository, never()).deleteAllById(any());
+        assertTrue(productService.isCatalogStale());
+    }
+
+    @Test
+    void reconcileCatalog_concurrentCallsShareOneStripeLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StripeCollection<Product> emptyCollection = mock(StripeCollection.class);
+        when(emptyCollection.getData()).thenReturn(new ArrayList<>());
+        when(productServiceStripe.list(any(ProductListParams.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return emptyCollection;
+        });
+        when(catalogRepository.streamAllBy()).thenAnswer(invocation -> java.util.stream.Stream.empty());
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<ProductDto>>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(pool.submit(() -> productService.reconcileCatalog()));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<List<ProductDto>> result : results) {
+                assertTrue(result.get(5, TimeUnit.SECONDS).isEmpty());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        verify(productServiceStripe, times(1)).list(any(ProductListParams.class));
+    }
+
+    @Test
+    void getPriceHistory_rememberedAsLastKnown() throws StripeException {
+        String productId = "prod_hist";
+        when(productServiceStripe.retrieve(productId)).thenReturn(mock(Product.class));
+        Price price = new Price();
+        price.setId("price_1");
+        price.setActive(true);
+        price.setCurrency("eur");
+        price.setUnitAmount(120L);
+        price.setCreated(1_700_000_000L);
+        price.setMetadata(Map.of("costPrice", "0.50"));
+        StripeSearchResult<Price> searchResult = mock(StripeSearchResult.class);
+        when(searchResult.getData()).thenReturn(List.of(price));
+        when(priceServiceStripe.search(any(PriceSearchParams.class))).thenReturn(searchResult);
+
+        assertTrue(productService.getLastKnownPriceHistory(productId).isEmpty());
+        Optional<List<PriceHistoryDto>> history = productService.getPriceHistory(productId);
+
+        assertTrue(history.isPresent());
+        assertEquals(history.get(), productService.getLastKnownPriceHistory(productId).orElseThrow());
+    }
+
+    @Test
+    void addProduct_writesProductToMirror() throws StripeException {
+        ProductDto productDto = new ProductDto("Apfel", null, "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", null, null, true, "eur", true, null);
+        Product created = mock(Product.class);
+        when(created.getId()).thenReturn("prod_new");
+        when(created.getDefaultPrice()).thenReturn("price_new");
+        when(productServiceStripe.create(any())).thenReturn(created);
+        when(catalogRepository.count()).thenReturn(1L);
+        when(catalogRepository.existsByUpcCode("400123")).thenReturn(false);
+
+        productService.addProduct(productDto);
+
+        verify(catalogRepository).save(argThat(entry -> "prod_new".equals(entry.getProductId()) && "price_new".equals(entry.getPriceId())));
+    }
+
+    @Test
+    void addProduct_whenUpcInMirror_thenRejected() {
+        ProductDto productDto = new ProductDto("Apfel", null, "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", null, null, true, "eur", true, null);
+        when(catalogRepository.count()).thenReturn(1L);
+        when(catalogRepository.existsByUpcCode("400123")).thenReturn(true);
+
+        Optional<String> result = productService.addProduct(productDto);
+
+        assertTrue(result.isPresent());
+        assertTrue(result.get().startsWith("UpCode Already in use"));
+    }
+
+    @Test
+    void fetchProductsFromStripe_usesExpandedPricesAndOneSearchForMissingPrices() throws StripeException {
+        Price expanded = new Price();
+        expanded.setId("price_a");
+        expanded.setUnitAmount(250L);
+        expanded.setCurrency("eur");
+        expanded.setMetadata(Map.of("costPrice", "1.00"));
+
+        Product withPrice = new Product();
+        withPrice.setId("prod_a");
+        withPrice.setMetadata(Map.of("upcCode", "1"));
+        withPrice.setActive(true);
+        withPrice.setDefaultPriceObject(expanded);
+
+        List<Product> withoutPrice = new ArrayList<>();
+        List<Price> inactivePrices = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Product product = new Product();
+            product.setId("prod_" + i);
+            product.setMetadata(Map.of("upcCode", "u" + i));
+            product.setActive(false);
+            withoutPrice.add(product);
+
+            Price older = new Price();
+            older.setProduct("prod_" + i);
+            older.setActive(false);
+            older.setCreated(100L);
+            older.setUnitAmount(100L);
+            older.setMetadata(Map.of("costPrice", "0.10"));
+            Price newer = new Price();
+            newer.setProduct("prod_" + i);
+            newer.setActive(false);
+            newer.setCreated(200L);
+            newer.setUnitAmount(300L);
+            newer.setMetadata(Map.of("costPrice", "0.30"));
+            inactivePrices.add(older);
+            inactivePrices.add(newer);
+        }
+
+        List<Product> page = new ArrayList<>();
+        page.add(withPrice);
+        page.addAll(withoutPrice);
+        StripeCollection<Product> collection = mock(StripeCollection.class);
+        when(collection.getData()).thenReturn(page);
+        when(productServiceStripe.list(any(ProductListParams.class))).thenReturn(collection);
+
+        StripeSearchResult<Price> searchResult = mock(StripeSearchResult.class);
+        when(searchResult.getData()).thenReturn(inactivePrices);
+        when(priceServiceStripe.search(any(PriceSearchParams.class))).thenReturn(searchResult);
+
+        Optional<List<ProductDto>> result = productService.fetchProductsFromStripe();
+
+        assertTrue(result.isPresent());
+        assertEquals(4, result.get().size());
+        assertEquals(new BigDecimal("3"), result.get().get(1).getListPrice().stripTrailingZeros());
+        verify(priceServiceStripe, times(1)).search(any(PriceSearchParams.class));
+        verify(priceServiceStripe, never()).retrieve(anyString());
+        verify(productServiceStripe).list(argThat((ProductListParams params) -> params.getExpand().contains("data.default_price")));
+    }
+
+    @Test
+    void fetchPriceForProduct_secondCallServedFromCache() throws StripeException {
+        Price price = new Price();
+        price.setId("price_9");
+        price.setUnitAmount(500L);
+        when(priceServiceStripe.retrieve("price_9")).thenReturn(price);
+
+        Product product = new Product();
+        product.setId("prod_9");
+        product.setDefaultPrice("price_9");
+
+        assertEquals(price, productService.fetchPriceForProduct(product).orElseThrow());
+        assertEquals(price, productService.fetchPriceForProduct(product).orElseThrow());
+
+        verify(priceServiceStripe, times(1)).retrieve("price_9");
+    }
+
+    @Test
+    void createNewPrice_prePopulatesCache() throws StripeException {
+        Price created = new Price();
+        created.setId("price_new");
+        when(priceServiceStripe.create(any(com.stripe.param.PriceCreateParams.class))).thenReturn(created);
+        ProductDto dto = new ProductDto("Apfel", "prod_1", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", null, null, true, "eur", true, null);
+
+        assertEquals("price_new", productService.createNewPrice(dto, "prod_1"));
+
+        assertTrue(priceCache.getIfPresent("price_new").isPresent());
+    }
+
+    @Test
+    void fetchProductsFromStripe_walksAllPages() throws StripeException {
+        Price price = new Price();
+        price.setId("price_p");
+        price.setUnitAmount(100L);
+
+        StripeCollection<Product> firstPage = mock(StripeCollection.class);
+        StripeCollection<Product> secondPage = mock(StripeCollection.class);
+        List<Product> first = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            first.add(productWithPrice("prod_a" + i, price));
+        }
+        when(firstPage.getData()).thenReturn(first);
+        when(firstPage.getHasMore()).thenReturn(true);
+        when(secondPage.getData()).thenReturn(List.of(productWithPrice("prod_b", price)));
+        when(secondPage.getHasMore()).thenReturn(false);
+
+        when(productServiceStripe.list(any(ProductListParams.class))).thenAnswer(invocation -> {
+            ProductListParams params = invocation.getArgument(0);
+            return params.getStartingAfter() == null ? firstPage : secondPage;
+        });
+
+        Optional<List<ProductDto>> result = productService.fetchProductsFromStripe();
+
+        assertTrue(result.isPresent());
+        assertEquals(101, result.get().size());
+        verify(productServiceStripe).list(argThat((ProductListParams params) -> "prod_a99".equals(params.getStartingAfter())));
+    }
+
+    @Test
+    void reconcileCatalog_whenLaterPageFails_thenNothingRemoved() throws StripeException {
+        Price price = new Price();
+        price.setId("price_p");
+        StripeCollection<Product> firstPage = mock(StripeCollection.class);
+        when(firstPage.getData()).thenReturn(List.of(productWithPrice("prod_a", price)));
+        when(firstPage.getHasMore()).thenReturn(true);
+        when(productServiceStripe.list(any(ProductListParams.class))).thenAnswer(invocation -> {
+            ProductListParams params = invocation.getArgument(0);
+            if (params.getStartingAfter() == null) return firstPage;
+            throw mock(StripeException.class);
+        });
+
+        List<ProductDto> result = productService.reconcileCatalog();
+
+        assertEquals(1, result.size());
+        verify(catalogRepository).saveAll(any());
+        verify(catalogRepository, never()).deleteAllById(any());
+    }
+
+    @Test
+    void reconcileCatalog_productWithoutPriceIsNotRemoved() throws StripeException {
+        Product withoutPrice = new Product();
+        withoutPrice.setId("prod_noprice");
+        StripeCollection<Product> page = mock(StripeCollection.class);
+        when(page.getData()).thenReturn(List.of(withoutPrice));
+        when(productServiceStripe.list(any(ProductListParams.class))).thenReturn(page);
+        StripeSearchResult<Price> noPrices = mock(StripeSearchResult.class);
+        when(noPrices.getData()).thenReturn(List.of());
+        when(priceServiceStripe.search(any(PriceSearchParams.class))).thenReturn(noPrices);
+
+        CatalogProduct mirrored = new CatalogProduct();
+        mirrored.setProductId("prod_noprice");
+        mirrored.setSyncedAt(new Date(0));
+        when(catalogRepository.streamAllBy()).thenReturn(java.util.stream.Stream.of(mirrored));
+
+        productService.reconcileCatalog();
+
+        verify(catalogRepository, never()).deleteAllById(any());
+        assertFalse(productService.isCatalogStale());
+    }
+
+    @Test
+    void reconcileCatalog_whenPriceSearchFails_thenNothingRemoved() throws StripeException {
+        Product withoutPrice = new Product();
+        withoutPrice.setId("prod_noprice");
+        StripeCollection<Product> page = mock(StripeCollection.class);
+        when(page.getData()).thenReturn(List.of(withoutPrice));
+        when(productServiceStripe.list(any(ProductListParams.class))).thenReturn(page);
+        when(priceServiceStripe.search(any(PriceSearchParams.class))).thenThrow(mock(StripeException.class));
+
+        CatalogProduct stale = new CatalogProduct();
+        stale.setProductId("prod_gone");
+        stale.setSyncedAt(new Date(0));
+        when(catalogRepository.streamAllBy()).thenReturn(java.util.stream.Stream.of(stale));
+
+        productService.reconcileCatalog();
+
+        verify(catalogRepository, never()).deleteAllById(any());
+        assertTrue(productService.isCatalogStale());
+    }
+
+    @Test
+    void reconcileCatalog_keepsProductsWrittenAfterStart() throws StripeException {
+        StripeCollection<Product> emptyCollection = mock(StripeCollection.class);
+        when(emptyCollection.getData()).thenReturn(new ArrayList<>());
+        when(productServiceStripe.list(any(ProductListParams.class))).thenReturn(emptyCollection);
+
+        CatalogProduct stale = new CatalogProduct();
+        stale.setProductId("prod_gone");
+        stale.setSyncedAt(new Date(0));
+        CatalogProduct added = new CatalogProduct();
+        added.setProductId("prod_new");
+        added.setSyncedAt(new Date(System.currentTimeMillis() + 60_000));
+        when(catalogRepository.streamAllBy()).thenReturn(java.util.stream.Stream.of(stale, added));
+
+        productService.reconcileCatalog();
+
+        verify(catalogRepository).deleteAllById(List.of("prod_gone"));
+    }
+
+    @Test
+    void streamProducts_readsActiveProductsFromMirror() {
+        CatalogProduct entry = new CatalogProduct("prod_1", "Apfel", "Gala", new BigDecimal("1.20"), new BigDecimal("0.50"), "400123", 1L, 2L, true, "eur", true, "price_1", new Date());
+        when(catalogRepository.count()).thenReturn(1L);
+        when(catalogRepository.streamAllByActiveTrue()).thenReturn(java.util.stream.Stream.of(entry));
+
+        List<ProductDto> streamed = new ArrayList<>();
+        productService.streamProducts(true, streamed::add);
+
+        assertEquals(1, streamed.size());
+        assertEquals("prod_1", streamed.get(0).getProductId());
+        verify(catalogRepository, never()).streamAllBy();
+    }
+
+    private Product productWithPrice(String id, Price price) {
+        Product product = new Product();
+        product.setId(id);
+        product.setMetadata(Map.of("upcCode", id));
+        product.setActive(true);
+        product.setDefaultPriceObject(price);
+        return product;
     }
 
 }
@@ -0,0 +1,142 @@
+package ip.project.backend.backend.service;
+
+import com.mongodb.client.result.UpdateResult;
+import ip.project.backend.backend.model.Order;
+import ip.project.backend.backend.model.OrderLineItem;
+import ip.project.backend.backend.model.SalesDaily;
+import ip.project.backend.backend.modeldto.RespBestSellingProductDto;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SalesRollupServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulk;
+
+    private SalesRollupService salesRollupService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        salesRollupService = new SalesRollupService(mongoTemplate, "Europe/Berlin", 2);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SalesDaily.class)).thenReturn(bulk);
+    }
+
+    @Test
+    void startOfDay_usesShopZone() {
+        // 23:30 UTC is already the next day in Berlin
+        Date day = salesRollupService.startOfDay(Date.from(Instant.parse("2026-03-01T23:30:00Z")));
+
+        assertEquals(Date.from(Instant.parse("2026-03-01T23:00:00Z")), day);
+    }
+
+    @Test
+    void record_sumsSameProductAndDayIntoOneUpsert() {
+        Date date = Date.from(Instant.parse("2026-03-02T10:00:00Z"));
+        Order first = order(date, new OrderLineItem("prod_1", "Apfel", 2, 50L, 20L), new OrderLineItem(null, "Unbekannt", 1, null, null));
+        Order second = order(date, new OrderLineItem("prod_1", "Apfel", 3, 50L, 20L));
+
+        salesRollupService.record(List.of(first, second));
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulk, times(1)).upsert(any(Query.class), update.capture());
+        Document inc = update.getValue().getUpdateObject().get("$inc", Document.class);
+        assertEquals(5L, inc.get("quantity"));
+        assertEquals(250L, inc.get("revenueCents"));
+        verify(bulk).execute();
+    }
+
+    @Test
+    void record_bulkWriteFails_resetsRollupMark() {
+        Order order = order(new Date(), new OrderLineItem("prod_1", "Apfel", 1, 50L, 20L));
+        when(bulk.execute()).thenThrow(new DataAccessResourceFailureException("mongo down"));
+
+        salesRollupService.record(List.of(order));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateMulti(query.capture(), update.capture(), eq(Order.class));
+        assertEquals(new Document("$in", List.of(order.getId())), query.getValue().getQueryObject().get("_id"));
+        assertEquals(new Document("rolledUp", false), update.getValue().getUpdateObject().get("$set"));
+    }
+
+    @Test
+    void record_withoutLineItems_writesNothing() {
+        salesRollupService.record(List.of(new Order("k1", List.of("Apfel"), null, new Date(), 1)));
+
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(SalesDaily.class));
+    }
+
+    @Test
+    void rollUpPending_addsOnlyClaimedOrders() {
+        Date date = new Date();
+        when(mongoTemplate.find(any(Query.class), eq(Order.class))).thenReturn(List.of(
+                order(date, new OrderLineItem("prod_1", "Apfel", 1, 50L, 20L)),
+                order(date, new OrderLineItem("prod_2", "Brot", 1, 250L, 100L))))
+                .thenReturn(List.of());
+        // the second order was claimed by another instance in the meantime
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Order.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        int added = salesRollupService.rollUpPending();
+
+        assertEquals(1, added);
+        verify(bulk, times(1)).upsert(any(Query.class), any(Update.class));
+        // a full batch is followed by a second query
+        verify(mongoTemplate, times(2)).find(any(Query.class), eq(Order.class));
+    }
+
+    @Test
+    void getBestSelling_mapsTopRow() {
+        Date day = Date.from(Instant.parse("2026-03-01T23:00:00Z"));
+        Document row = new Document("_id", "prod_1").append("quantity", 7L).append("days", List.of(day)).append("productName", "Apfel");
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(SalesDaily.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(row), new Document()));
+
+        RespBestSellingProductDto best = salesRollupService.getBestSelling(new Date(0), new Date());
+
+        assertEquals("prod_1", best.getProductId());
+        assertEquals("Apfel", best.getProductName());
+        assertEquals(7, best.getTotalQuantity());
+        assertEquals(List.of(day), best.getDates());
+    }
+
+    @Test
+    void getBestSelling_noSales_returnsNull() {
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(SalesDaily.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(), new Document()));
+
+        assertNull(salesRollupService.getBestSelling(new Date(0), new Date()));
+        verifyNoInteractions(bulk);
+    }
+
+    private static Order order(Date date, OrderLineItem... lineItems) {
+        Order order = new Order(new ObjectId().toHexString(), List.of(), null, date, 1, List.of(lineItems));
+        order.setId(new ObjectId());
+        return order;
+    }
+}
@@ -0,0 +1,101 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.model.Stock;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StockIndexMigrationTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private IndexOperations indexOps;
+
+    private StockIndexMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.indexOps(Stock.class)).thenReturn(indexOps);
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Stock.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(), new Document()));
+        migration = new StockIndexMigration(mongoTemplate);
+    }
+
+    @Test
+    void createUniqueIndex_replacesOldNonUniqueIndex() {
+        when(indexOps.getIndexInfo()).thenReturn(List.of(index(false)));
+
+        migration.createUniqueIndex();
+
+        verify(indexOps).dropIndex(StockIndexMigration.INDEX_NAME);
+        ArgumentCaptor<Index> created = ArgumentCaptor.forClass(Index.class);
+        verify(indexOps).ensureIndex(created.capture());
+        assertEquals(Boolean.TRUE, created.getValue().getIndexOptions().get("unique"));
+    }
+
+    @Test
+    void createUniqueIndex_alreadyUnique_doesNothing() {
+        when(indexOps.getIndexInfo()).thenReturn(List.of(index(true)));
+
+        migration.createUniqueIndex();
+
+        verify(indexOps, never()).ensureIndex(any());
+        verify(mongoTemplate, never()).aggregate(any(Aggregation.class), eq(Stock.class), eq(Document.class));
+    }
+
+    @Test
+    void mergeDuplicates_keepsOldestDocumentWithSummedQuantity() {
+        ObjectId oldest = new ObjectId();
+        ObjectId newer = new ObjectId();
+        Document duplicate = new Document("_id", "prod_1")
+                .append("count", 2)
+                .append("ids", List.of(oldest, newer))
+                .append("quantity", 7)
+                .append("repurchased", false)
+                .append("shouldBeRepurchased", true);
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Stock.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(duplicate), new Document()));
+
+        int removed = migration.mergeDuplicates();
+
+        assertEquals(1, removed);
+        ArgumentCaptor<Query> kept = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(kept.capture(), update.capture(), eq(Stock.class));
+        assertEquals(oldest, kept.getValue().getQueryObject().get("_id"));
+        Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+        assertEquals(7, set.get("quantity"));
+        assertEquals(true, set.get("shouldBeRepurchased"));
+        ArgumentCaptor<Query> removedQuery = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removedQuery.capture(), eq(Stock.class));
+        assertEquals(new Document("$in", List.of(newer)), removedQuery.getValue().getQueryObject().get("_id"));
+    }
+
+    private static IndexInfo index(boolean unique) {
+        return new IndexInfo(List.of(IndexField.create("productId", Sort.Direction.ASC)),
+                StockIndexMigration.INDEX_NAME, unique, false, "");
+    }
+}
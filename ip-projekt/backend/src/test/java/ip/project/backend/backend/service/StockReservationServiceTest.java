@@ -0,0 +1,92 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.model.Stock;
+import ip.project.backend.backend.model.StockReservation;
+import ip.project.backend.backend.modeldto.ProductWithQuantity;
+import ip.project.backend.backend.repository.StockRepository;
+import ip.project.backend.backend.repository.StockReservationRepository;
+import ip.project.backend.backend.util.InsufficientStockException;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StockReservationServiceTest {
+
+    @Mock
+    private StockReservationRepository stockReservationRepository;
+
+    @Mock
+    private StockRepository stockRepository;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private StockReservationService stockReservationService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        stockReservationService = new StockReservationService(stockReservationRepository, stockRepository, mongoTemplate);
+    }
+
+    @Test
+    void reserve_enoughStock_keepsReservation() {
+        reserved(Map.of("p1", 3));
+        when(stockRepository.findByProductIdIn(any())).thenReturn(List.of(new Stock(null, "p1", 5, false, false)));
+
+        String reservationId = stockReservationService.reserve(List.of(
+                new ProductWithQuantity("p1", 1, "price_1"),
+                new ProductWithQuantity("p1", 2, "price_1")), new Date());
+
+        assertNotNull(reservationId);
+        verify(stockReservationRepository).insert(argThat((List<StockReservation> reservations) ->
+                reservations.size() == 1 && reservations.get(0).getQuantity() == 3));
+        verify(stockReservationRepository, never()).deleteByReservationId(any());
+    }
+
+    @Test
+    void reserve_notEnoughStock_releasesAndThrows() {
+        // another checkout holds 4 of 5 units, this one wants 2
+        reserved(Map.of("p1", 6));
+        when(stockRepository.findByProductIdIn(any())).thenReturn(List.of(new Stock(null, "p1", 5, false, false)));
+
+        InsufficientStockException e = assertThrows(InsufficientStockException.class,
+                () -> stockReservationService.reserve(List.of(new ProductWithQuantity("p1", 2, "price_1")), new Date()));
+
+        assertEquals(List.of("p1"), e.getProductIds());
+        verify(stockReservationRepository).deleteByReservationId(any());
+    }
+
+    @Test
+    void getAvailableToSell_subtractsLiveReservations() {
+        reserved(Map.of("p1", 2));
+        when(stockRepository.findByProductIdIn(any())).thenReturn(List.of(
+                new Stock(null, "p1", 5, false, false),
+                new Stock(null, "p2", 1, false, false)));
+
+        Map<String, Integer> available = stockReservationService.getAvailableToSell(List.of("p1", "p2", "p3"));
+
+        assertEquals(Map.of("p1", 3, "p2", 1), available);
+    }
+
+    private void reserved(Map<String, Integer> quantities) {
+        List<Document> rows = quantities.entrySet().stream()
+                .map(entry -> new Document("_id", entry.getKey()).append("reserved", entry.getValue()))
+                .toList();
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(StockReservation.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(rows, new Document()));
+    }
+}
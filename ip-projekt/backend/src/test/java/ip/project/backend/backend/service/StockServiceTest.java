@@ -5,9 +5,11 @@ import com.stripe.model.Product;
 import com.stripe.service.ProductService;
 import ip.project.backend.backend.mapper.StockMapper;
 import ip.project.backend.backend.model.Stock;
+import ip.project.backend.backend.modeldto.ChangeEventDto;
 import ip.project.backend.backend.modeldto.StockDto;
 import ip.project.backend.backend.repository.StockRepository;
 import ip.project.backend.backend.util.StripeConnection;
+import ip.project.backend.backend.util.StripeGateway;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -18,6 +20,7 @@ import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -31,6 +34,12 @@ class StockServiceTest {
     @Mock
     private StockRepository stockRepository;
 
+    @Mock
+    private ChangeFeedService changeFeedService;
+
+    @Mock
+    private StockReservationService stockReservationService;
+
     @Mock
     private StripeConnection stripeConnection;
 
@@ -62,7 +71,7 @@ class StockServiceTest {
 
         lenient().when(stripeClient.products()).thenReturn(productService);
 
-        stockService = new StockService(stockRepository, stripeConnection);
+        stockService = new StockService(stockRepository, new StripeGateway(stripeConnection, 1000, 1000, 1, 0, 0, 5, 30000), changeFeedService, stockReservationService);
     }
 
     @Test
@@ -122,16 +131,58 @@ class StockServiceTest {
             when(dto.isRepurchased()).thenReturn(true);
             when(dto.isShouldBeRepurchased()).thenReturn(false);
 
-            Stock stock = mock(Stock.class);
-            when(stockRepository.findStockByProductId("prod123")).thenReturn(Optional.of(stock));
-
             Optional<String> result = stockService.updateStock(dto);
 
             assertTrue(result.isEmpty());
-            verify(stock).setQuantity(5);
-            verify(stock).setRepurchased(true);
-            verify(stock).setShouldBeRepurchased(false);
-            verify(stockRepository).save(stock);
+            verify(stockRepository).upsertStock("prod123", 5, true, false);
+            verify(stockRepository, never()).findStockByProductId(any());
+            verify(stockRepository, never()).save(any());
+            verify(changeFeedService).publish(ChangeEventDto.STOCK_UPDATED, "prod123", dto);
+        }
+
+        @Test
+        void testDecreaseStock_enoughUnits_returnsNewStock() {
+            when(stockRepository.decrementQuantity("prod123", 2)).thenReturn(Optional.of(new Stock(null, "prod123", 3, false, false)));
+
+            Optional<StockDto> result = stockService.decreaseStock("prod123", 2);
+
+            assertTrue(result.isPresent());
+            assertEquals(3, result.get().getQuantity());
+            verify(changeFeedService).publish(eq(ChangeEventDto.STOCK_UPDATED), eq("prod123"), any(StockDto.class));
+        }
+
+        @Test
+        void testDecreaseStock_notEnoughUnits_returnsEmpty() {
+            when(stockRepository.decrementQuantity("prod123", 2)).thenReturn(Optional.empty());
+
+            assertTrue(stockService.decreaseStock("prod123", 2).isEmpty());
+            verify(changeFeedService, never()).publish(any(), any(), any());
+        }
+
+        @Test
+        void testDecreaseStock_unitsReservedForCheckout_givesUnitsBack() {
+            when(stockRepository.decrementQuantity("prod123", 2)).thenReturn(Optional.of(new Stock(null, "prod123", 1, false, false)));
+            when(stockReservationService.getReservedQuantities(List.of("prod123"))).thenReturn(Map.of("prod123", 3));
+
+            assertTrue(stockService.decreaseStock("prod123", 2).isEmpty());
+            verify(stockRepository).incrementQuantity("prod123", 2);
+            verify(changeFeedService, never()).publish(any(), any(), any());
+        }
+
+        @Test
+        void testDecreaseStock_enoughUnitsBesideReservations_keepsSale() {
+            when(stockRepository.decrementQuantity("prod123", 2)).thenReturn(Optional.of(new Stock(null, "prod123", 3, false, false)));
+            when(stockReservationService.getReservedQuantities(List.of("prod123"))).thenReturn(Map.of("prod123", 3));
+
+            assertTrue(stockService.decreaseStock("prod123", 2).isPresent());
+            verify(stockRepository, never()).incrementQuantity(any(), anyInt());
+        }
+
+        @Test
+        void testIncreaseStock_returnsNewStock() {
+            when(stockRepository.incrementQuantity("prod123", 4)).thenReturn(new Stock(null, "prod123", 9, false, false));
+
+            assertEquals(9, stockService.increaseStock("prod123", 4).getQuantity());
         }
 
 
@@ -0,0 +1,192 @@
+package ip.project.backend.backend.service;
+
+import com.stripe.exception.SignatureVerificationException;
+import ip.project.backend.backend.model.ProcessedStripeEvent;
+import ip.project.backend.backend.repository.ProcessedStripeEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StripeWebhookServiceTest {
+
+    private static final String SECRET = "whsec_test";
+
+    private ProcessedStripeEventRepository processedStripeEventRepository;
+    private CheckoutService checkoutService;
+    private StripeWebhookService stripeWebhookService;
+
+    @BeforeEach
+    void setUp() {
+        processedStripeEventRepository = mock(ProcessedStripeEventRepository.class);
+        checkoutService = mock(CheckoutService.class);
+        stripeWebhookService = new StripeWebhookService(Runnable::run, processedStripeEventRepository, checkoutService, SECRET, 3);
+    }
+
+    private static String event(String id, String type, String paymentStatus) {
+        return "{\"id\":\"" + id + "\",\"object\":\"event\",\"type\":\"" + type + "\",\"api_version\":\"2025-02-24.acacia\","
+                + "\"data\":{\"object\":{\"id\":\"cs_1\",\"object\":\"checkout.session\",\"payment_status\":\"" + paymentStatus + "\"}}}";
+    }
+
+    private static String sign(String payload, String secret, long timestamp) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] hash = mac.doFinal((timestamp + "." + payload).getBytes(StandardCharsets.UTF_8));
+        return "t=" + timestamp + ",v1=" + HexFormat.of().formatHex(hash);
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    @Test
+    void accept_completedAndPaid_commitsCheckout() throws Exception {
+        String payload = event("evt_1", "checkout.session.completed", "paid");
+
+        assertTrue(stripeWebhookService.accept(payload, sign(payload, SECRET, now())));
+
+        verify(processedStripeEventRepository).insert(any(ProcessedStripeEvent.class));
+        verify(checkoutService).commitCheckout("cs_1");
+    }
+
+    @Test
+    void accept_completedButUnpaid_doesNotCommit() throws Exception {
+        String payload = event("evt_1", "checkout.session.completed", "unpaid");
+
+        stripeWebhookService.accept(payload, sign(payload, SECRET, now()));
+
+        verify(checkoutService, never()).commitCheckout(any());
+    }
+
+    @Test
+    void accept_asyncPaymentSucceeded_commitsCheckout() throws Exception {
+        String payload = event("evt_1", "checkout.session.async_payment_succeeded", "paid");
+
+        stripeWebhookService.accept(payload, sign(payload, SECRET, now()));
+
+        verify(checkoutService).commitCheckout("cs_1");
+    }
+
+    @Test
+    void accept_expired_releasesReservation() throws Exception {
+        String payload = event("evt_1", "checkout.session.expired", "unpaid");
+
+        stripeWebhookService.accept(payload, sign(payload, SECRET, now()));
+
+        verify(checkoutService).expireCheckout("cs_1");
+    }
+
+    @Test
+    void accept_duplicateEvent_isSkipped() throws Exception {
+        String payload = event("evt_1", "checkout.session.completed", "paid");
+        when(processedStripeEventRepository.insert(any(ProcessedStripeEvent.class))).thenThrow(new DuplicateKeyException("dup"));
+
+        assertTrue(stripeWebhookService.accept(payload, sign(payload, SECRET, now())));
+
+        verifyNoInteractions(checkoutService);
+    }
+
+    @Test
+    void accept_handlingFails_keepsEventForRetry() throws Exception {
+        String payload = event("evt_1", "checkout.session.completed", "paid");
+        String signature = sign(payload, SECRET, now());
+        when(checkoutService.commitCheckout("cs_1")).thenThrow(new IllegalStateException("db down"));
+
+        stripeWebhookService.accept(payload, signature);
+
+        verify(processedStripeEventRepository).scheduleRetry(eq("evt_1"), eq(payload), eq(signature), eq(1), any(Date.class));
+        verify(processedStripeEventRepository, never()).deleteById(any());
+    }
+
+    @Test
+    void retryFailedEvents_handledEvent_isMarkedHandled() throws Exception {
+        ProcessedStripeEvent failed = failedEvent(1);
+        when(processedStripeEventRepository.findTop100ByRetryAtLessThanEqualOrderByRetryAtAsc(any())).thenReturn(List.of(failed));
+        when(processedStripeEventRepository.claimRetry(eq("evt_1"), eq(failed.getRetryAt()), any())).thenReturn(true);
+
+        stripeWebhookService.retryFailedEvents();
+
+        verify(checkoutService).commitCheckout("cs_1");
+        verify(processedStripeEventRepository).markHandled("evt_1");
+    }
+
+    @Test
+    void retryFailedEvents_claimedByOtherInstance_isSkipped() throws Exception {
+        when(processedStripeEventRepository.findTop100ByRetryAtLessThanEqualOrderByRetryAtAsc(any())).thenReturn(List.of(failedEvent(1)));
+        when(processedStripeEventRepository.claimRetry(any(), any(), any())).thenReturn(false);
+
+        stripeWebhookService.retryFailedEvents();
+
+        verifyNoInteractions(checkoutService);
+    }
+
+    @Test
+    void retryFailedEvents_lastAttemptFails_removesMarker() throws Exception {
+        when(processedStripeEventRepository.findTop100ByRetryAtLessThanEqualOrderByRetryAtAsc(any())).thenReturn(List.of(failedEvent(2)));
+        when(processedStripeEventRepository.claimRetry(any(), any(), any())).thenReturn(true);
+        when(checkoutService.commitCheckout("cs_1")).thenThrow(new IllegalStateException("db down"));
+
+        stripeWebhookService.retryFailedEvents();
+
+        verify(processedStripeEventRepository).deleteById("evt_1");
+        verify(processedStripeEventRepository, never()).scheduleRetry(any(), any(), any(), anyInt(), any());
+    }
+
+    private static ProcessedStripeEvent failedEvent(int attempts) throws Exception {
+        String payload = event("evt_1", "checkout.session.completed", "paid");
+        ProcessedStripeEvent failed = new ProcessedStripeEvent("evt_1", "checkout.session.completed", new Date());
+        failed.setPayload(payload);
+        // old signatures are accepted, the timestamp was checked on arrival
+        failed.setSignature(sign(payload, SECRET, now() - 3600));
+        failed.setAttempts(attempts);
+        failed.setRetryAt(new Date(0));
+        return failed;
+    }
+
+    @Test
+    void accept_wrongSecret_throws() throws Exception {
+        String payload = event("evt_1", "checkout.session.completed", "paid");
+        String signature = sign(payload, "whsec_other", now());
+
+        assertThrows(SignatureVerificationException.class, () -> stripeWebhookService.accept(payload, signature));
+        verifyNoInteractions(processedStripeEventRepository, checkoutService);
+    }
+
+    @Test
+    void accept_oldTimestamp_throws() throws Exception {
+        String payload = event("evt_1", "checkout.session.completed", "paid");
+        String signature = sign(payload, SECRET, now() - 3600);
+
+        assertThrows(SignatureVerificationException.class, () -> stripeWebhookService.accept(payload, signature));
+    }
+
+    @Test
+    void accept_noSecretConfigured_throws() throws Exception {
+        StripeWebhookService unconfigured = new StripeWebhookService(Runnable::run, processedStripeEventRepository, checkoutService, "", 3);
+        String payload = event("evt_1", "checkout.session.completed", "paid");
+        String signature = sign(payload, SECRET, now());
+
+        assertThrows(SignatureVerificationException.class, () -> unconfigured.accept(payload, signature));
+    }
+
+    @Test
+    void accept_queueFull_returnsFalse() throws Exception {
+        StripeWebhookService full = new StripeWebhookService(task -> {
+            throw new RejectedExecutionException();
+        }, processedStripeEventRepository, checkoutService, SECRET, 3);
+        String payload = event("evt_1", "checkout.session.completed", "paid");
+
+        assertFalse(full.accept(payload, sign(payload, SECRET, now())));
+        verifyNoInteractions(processedStripeEventRepository, checkoutService);
+    }
+}
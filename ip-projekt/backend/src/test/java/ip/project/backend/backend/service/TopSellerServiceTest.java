@@ -0,0 +1,146 @@
+package ip.project.backend.backend.service;
+
+import ip.project.backend.backend.model.OrderLineItem;
+import ip.project.backend.backend.modeldto.TopSellerDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopSellerServiceTest {
+
+    private MutableClock clock;
+    private TopSellerService topSellerService;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2026-03-02T10:00:00Z"));
+        topSellerService = new TopSellerService(clock, 10);
+    }
+
+    @Test
+    void recordSale_countsLineItemsByProductId() {
+        topSellerService.recordSale(Date.from(clock.instant()), List.of(
+                new OrderLineItem("prod_1", "Apfel", 3, 50L, 20L),
+                new OrderLineItem("prod_2", "Brot", 1, 250L, 100L)), List.of("Apfel", "Apfel", "Apfel", "Brot"));
+        topSellerService.recordSale(Date.from(clock.instant()), List.of(new OrderLineItem("prod_2", "Brot", 1, 250L, 100L)), null);
+
+        List<TopSellerDto> top = topSellerService.getTopSellers(TopSellerService.Window.QUARTER_HOUR, 10);
+
+        assertEquals(List.of("prod_1", "prod_2"), top.stream().map(TopSellerDto::getProductId).toList());
+        assertEquals("Apfel", top.get(0).getProductName());
+        assertEquals(3, top.get(0).getQuantity());
+    }
+
+    @Test
+    void recordSale_withoutLineItems_countsNames() {
+        topSellerService.recordSale(Date.from(clock.instant()), null, List.of("Apfel", "Brot", "Apfel"));
+
+        TopSellerDto top = topSellerService.getTopSellers(TopSellerService.Window.HOUR, 1).get(0);
+
+        assertNull(top.getProductId());
+        assertEquals("Apfel", top.getProductName());
+        assertEquals(2, top.getQuantity());
+    }
+
+    @Test
+    void getTopSellers_salesLeaveWindowsOverTime() {
+        topSellerService.recordSale(Date.from(clock.instant()), null, List.of("Apfel"));
+
+        clock.advance(Duration.ofMinutes(20));
+        assertTrue(topSellerService.getTopSellers(TopSellerService.Window.QUARTER_HOUR, 10).isEmpty());
+        assertEquals(1, topSellerService.getTopSellers(TopSellerService.Window.HOUR, 10).size());
+
+        clock.advance(Duration.ofMinutes(45));
+        assertTrue(topSellerService.getTopSellers(TopSellerService.Window.HOUR, 10).isEmpty());
+        assertEquals(1, topSellerService.getTopSellers(TopSellerService.Window.TODAY, 10).size());
+    }
+
+    @Test
+    void getTopSellers_todayStartsEmptyAtMidnight() {
+        topSellerService.recordSale(Date.from(clock.instant()), null, List.of("Apfel"));
+
+        // 23:00 UTC is midnight in Berlin
+        clock.advance(Duration.ofHours(13));
+
+        assertTrue(topSellerService.getTopSellers(TopSellerService.Window.TODAY, 10).isEmpty());
+    }
+
+    @Test
+    void recordSale_lateSale_onlyCountedInWindowsItBelongsTo() {
+        topSellerService.recordSale(Date.from(clock.instant().minus(Duration.ofMinutes(30))), null, List.of("Apfel", "Apfel"));
+        topSellerService.recordSale(Date.from(clock.instant().minus(Duration.ofHours(2))), null, List.of("Brot"));
+
+        assertTrue(topSellerService.getTopSellers(TopSellerService.Window.QUARTER_HOUR, 10).isEmpty());
+        assertEquals(List.of("Apfel"), names(topSellerService.getTopSellers(TopSellerService.Window.HOUR, 10)));
+        assertEquals(List.of("Apfel", "Brot"), names(topSellerService.getTopSellers(TopSellerService.Window.TODAY, 10)));
+
+        // the late minute must not be subtracted from the quarter hour a second time
+        clock.advance(Duration.ofMinutes(31));
+        assertTrue(topSellerService.getTopSellers(TopSellerService.Window.HOUR, 10).isEmpty());
+    }
+
+    @Test
+    void getTopSellers_moreProductsThanCapacity_evictedCountsLeaveWindow() {
+        for (int i = 0; i < 30; i++) {
+            topSellerService.recordSale(Date.from(clock.instant()), null, List.of("Produkt " + i));
+        }
+        clock.advance(Duration.ofMinutes(5));
+        topSellerService.recordSale(Date.from(clock.instant()), null, List.of("Brot", "Brot", "Brot"));
+
+        clock.advance(Duration.ofMinutes(11));
+        List<TopSellerDto> quarterHour = topSellerService.getTopSellers(TopSellerService.Window.QUARTER_HOUR, 10);
+        assertEquals(List.of("Brot"), names(quarterHour));
+        assertEquals(3, quarterHour.get(0).getQuantity());
+        assertEquals(0, quarterHour.get(0).getMaxError());
+
+        clock.advance(Duration.ofMinutes(45));
+        assertEquals(List.of("Brot"), names(topSellerService.getTopSellers(TopSellerService.Window.HOUR, 10)));
+    }
+
+    @Test
+    void window_fromParam() {
+        assertEquals(TopSellerService.Window.QUARTER_HOUR, TopSellerService.Window.fromParam("15m"));
+        assertEquals(TopSellerService.Window.HOUR, TopSellerService.Window.fromParam("1h"));
+        assertEquals(TopSellerService.Window.TODAY, TopSellerService.Window.fromParam("TODAY"));
+        assertThrows(IllegalArgumentException.class, () -> TopSellerService.Window.fromParam("2h"));
+    }
+
+    private static List<String> names(List<TopSellerDto> top) {
+        return top.stream().map(TopSellerDto::getProductName).toList();
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("Europe/Berlin");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ip.project.backend.backend.util;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import ip.project.backend.backend.modeldto.ProductDto;
+import ip.project.backend.backend.service.CatalogSnapshot;
+import ip.project.backend.backend.service.ProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CacheConfigTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = nanos::get;
+
+    private ProductService productService;
+    private CaffeineCacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        productService = mock(ProductService.class);
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("cache.all-products.refresh-seconds", "60")
+                .withProperty("cache.all-products.expire-seconds", "3600")
+                .withProperty("cache.price-history.expire-seconds", "600");
+        // refreshes run on the calling thread, so the test does not depend on timing
+        cacheManager = CacheConfig.createCacheManager(productService, environment, ticker, Runnable::run);
+    }
+
+    private void advanceSeconds(long seconds) {
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    @Test
+    void allConfiguredCachesExistAndRecordStats() {
+        for (String name : List.of(CacheConfig.ALL_PRODUCTS, CacheConfig.ACTIVE_PRODUCTS, CacheConfig.PRICE_HISTORY,
+                CacheConfig.ALL_STOCK, CacheConfig.PRICE_TO_PRODUCT_ID)) {
+            CaffeineCache cache = (CaffeineCache) cacheManager.getCache(name);
+            assertNotNull(cache, name);
+            assertTrue(cache.getNativeCache().policy().isRecordingStats(), name);
+        }
+    }
+
+    @Test
+    void unknownCacheIsNotCreated() {
+        assertNull(cacheManager.getCache("SomethingElse"));
+    }
+
+    @Test
+    void allProducts_loadedOnFirstAccessAndRefreshedAfterInterval() {
+        List<ProductDto> first = List.of(mock(ProductDto.class));
+        List<ProductDto> second = List.of(mock(ProductDto.class), mock(ProductDto.class));
+        when(productService.getAllProducts()).thenReturn(first).thenReturn(second);
+        Cache cache = cacheManager.getCache(CacheConfig.ALL_PRODUCTS);
+
+        assertEquals(first, cache.get(CacheConfig.ALL_KEY, CatalogSnapshot.class).getProducts());
+        assertEquals(first, cache.get(CacheConfig.ALL_KEY, CatalogSnapshot.class).getProducts());
+        verify(productService, times(1)).getAllProducts();
+
+        advanceSeconds(61);
+        // the read after the refresh interval triggers the reload, the entry itself never expired
+        cache.get(CacheConfig.ALL_KEY, CatalogSnapshot.class);
+        assertEquals(second, cache.get(CacheConfig.ALL_KEY, CatalogSnapshot.class).getProducts());
+        verify(productService, times(2)).getAllProducts();
+    }
+
+    @Test
+    void activeProducts_holdsPlainListOfActiveProducts() {
+        List<ProductDto> products = List.of(mock(ProductDto.class));
+        when(productService.getActiveProducts()).thenReturn(products);
+
+        assertSame(products, cacheManager.getCache(CacheConfig.ACTIVE_PRODUCTS).get(CacheConfig.ALL_KEY, List.class));
+        verify(productService, never()).getAllProducts();
+    }
+
+    @Test
+    void allProducts_singleProductMissIsNotLoaded() {
+        Cache cache = cacheManager.getCache(CacheConfig.ALL_PRODUCTS);
+
+        assertNull(cache.get("prod_1"));
+        verify(productService, never()).getProductById(any());
+    }
+
+    @Test
+    void priceHistory_expiresAfterTtl() {
+        Cache cache = cacheManager.getCache(CacheConfig.PRICE_HISTORY);
+        cache.put("prod_1", List.of());
+
+        advanceSeconds(599);
+        assertNotNull(cache.get("prod_1"));
+
+        advanceSeconds(2);
+        assertNull(cache.get("prod_1"));
+    }
+}
@@ -0,0 +1,72 @@
+package ip.project.backend.backend.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SerializedSnapshotTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void of_sameContent_sameEtag() throws Exception {
+        SerializedSnapshot first = SerializedSnapshot.of(new Object(), List.of("a", "b"), objectMapper);
+        SerializedSnapshot second = SerializedSnapshot.of(new Object(), List.of("a", "b"), objectMapper);
+        SerializedSnapshot other = SerializedSnapshot.of(new Object(), List.of("a"), objectMapper);
+
+        assertEquals(first.getEtag(), second.getEtag());
+        assertNotEquals(first.getEtag(), other.getEtag());
+        assertNotEquals(first.getEtag(), first.getGzipEtag());
+    }
+
+    @Test
+    void isFor_comparesIdentity() throws Exception {
+        List<String> source = List.of("a");
+        SerializedSnapshot snapshot = SerializedSnapshot.of(source, source, objectMapper);
+
+        assertTrue(snapshot.isFor(source));
+        assertFalse(snapshot.isFor(List.of("a")));
+    }
+
+    @Test
+    void toResponse_plainJson() throws Exception {
+        SerializedSnapshot snapshot = SerializedSnapshot.of("x", List.of("a"), objectMapper);
+
+        ResponseEntity<byte[]> response = snapshot.toResponse(new HttpHeaders(), null, null);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals("[\"a\"]", new String(response.getBody()));
+        assertEquals(snapshot.getEtag(), response.getHeaders().getETag());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("no-cache", response.getHeaders().getCacheControl());
+    }
+
+    @Test
+    void toResponse_ifNoneMatch_returns304WithExtraHeaders() throws Exception {
+        SerializedSnapshot snapshot = SerializedSnapshot.of("x", List.of("a"), objectMapper);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(StripeGateway.STALE_DATA_HEADER, "true");
+
+        ResponseEntity<byte[]> plain = snapshot.toResponse(headers, "\"other\", " + snapshot.getEtag(), null);
+        ResponseEntity<byte[]> weak = snapshot.toResponse(headers, "W/" + snapshot.getGzipEtag(), "gzip");
+
+        assertEquals(304, plain.getStatusCode().value());
+        assertNull(plain.getBody());
+        assertEquals("true", plain.getHeaders().getFirst(StripeGateway.STALE_DATA_HEADER));
+        assertEquals(304, weak.getStatusCode().value());
+    }
+
+    @Test
+    void acceptsGzip_respectsQualityZero() {
+        assertTrue(SerializedSnapshot.acceptsGzip("gzip, deflate"));
+        assertTrue(SerializedSnapshot.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertFalse(SerializedSnapshot.acceptsGzip("gzip;q=0"));
+        assertFalse(SerializedSnapshot.acceptsGzip("identity"));
+        assertFalse(SerializedSnapshot.acceptsGzip(null));
+    }
+}
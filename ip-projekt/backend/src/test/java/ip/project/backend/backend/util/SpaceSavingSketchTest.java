@@ -0,0 +1,85 @@
+package ip.project.backend.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpaceSavingSketchTest {
+
+    @Test
+    void add_belowCapacity_countsExactly() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(3);
+        sketch.add("a", 2);
+        sketch.add("b", 5);
+        sketch.add("a", 1);
+
+        assertEquals(List.of(
+                new SpaceSavingSketch.Counter("b", 5, 0),
+                new SpaceSavingSketch.Counter("a", 3, 0)), sketch.top(10));
+    }
+
+    @Test
+    void add_atCapacity_replacesSmallestAndKeepsItsCountAsError() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(2);
+        sketch.add("a", 5);
+        sketch.add("b", 1);
+        sketch.add("c", 2);
+
+        assertEquals(2, sketch.size());
+        assertEquals(List.of(
+                new SpaceSavingSketch.Counter("a", 5, 0),
+                new SpaceSavingSketch.Counter("c", 3, 1)), sketch.top(10));
+    }
+
+    @Test
+    void add_frequentItemSurvivesManyRareItems() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(5);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("rare" + i, 1);
+            if (i % 2 == 0) {
+                sketch.add("frequent", 1);
+            }
+        }
+
+        SpaceSavingSketch.Counter top = sketch.top(1).get(0);
+        assertEquals("frequent", top.item());
+        assertTrue(top.count() >= 500);
+        assertTrue(top.count() - top.error() <= 500);
+    }
+
+    @Test
+    void merge_addsCountsAndKeepsErrors() {
+        SpaceSavingSketch first = new SpaceSavingSketch(2);
+        first.add("a", 4);
+        first.add("b", 1);
+        first.add("c", 1);
+        SpaceSavingSketch second = new SpaceSavingSketch(2);
+        second.add("a", 2);
+        second.add("c", 3);
+
+        SpaceSavingSketch merged = new SpaceSavingSketch(2);
+        merged.merge(first);
+        merged.merge(second);
+
+        assertEquals(List.of(
+                new SpaceSavingSketch.Counter("a", 6, 0),
+                new SpaceSavingSketch.Counter("c", 5, 1)), merged.top(10));
+    }
+
+    @Test
+    void top_limitsResult() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(10);
+        sketch.add("a", 1);
+        sketch.add("b", 2);
+        sketch.add("c", 3);
+
+        assertEquals(List.of("c", "b"), sketch.top(2).stream().map(SpaceSavingSketch.Counter::item).toList());
+    }
+
+    @Test
+    void constructor_rejectsInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new SpaceSavingSketch(0));
+    }
+}
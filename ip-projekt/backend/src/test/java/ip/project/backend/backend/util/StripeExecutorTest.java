@@ -0,0 +1,77 @@
+package ip.project.backend.backend.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripeExecutorTest {
+
+    private StripeExecutor stripeExecutor;
+
+    @BeforeEach
+    void setUp() {
+        stripeExecutor = new StripeExecutor(2, true);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        stripeExecutor.shutdown();
+    }
+
+    @Test
+    void submit_neverRunsMoreCallsThanAllowed() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(stripeExecutor.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                release.await(5, TimeUnit.SECONDS);
+                running.decrementAndGet();
+                return 1;
+            }));
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stripeExecutor.getActiveCalls() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, stripeExecutor.getActiveCalls());
+        assertEquals(4, stripeExecutor.getQueuedCalls());
+
+        release.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, maxRunning.get());
+        assertEquals(0, stripeExecutor.getActiveCalls());
+        assertEquals(0, stripeExecutor.getQueuedCalls());
+        assertEquals(6, stripeExecutor.getCompletedCalls());
+    }
+
+    @Test
+    void submit_wrapsCheckedExceptions() {
+        CompletableFuture<Object> future = stripeExecutor.submit(() -> {
+            throw new Exception("stripe down");
+        });
+
+        CompletionException e = assertThrows(CompletionException.class, future::join);
+        assertEquals("stripe down", e.getCause().getMessage());
+    }
+
+    @Test
+    void constructor_rejectsZeroConcurrency() {
+        assertThrows(IllegalArgumentException.class, () -> new StripeExecutor(0, true));
+    }
+}
@@ -0,0 +1,257 @@
+package ip.project.backend.backend.util;
+
+import com.stripe.StripeClient;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.ApiException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Product;
+import com.stripe.param.ProductUpdateParams;
+import com.stripe.service.ProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class StripeGatewayTest {
+
+    private ProductService productService;
+    private StripeGateway stripeGateway;
+
+    @BeforeEach
+    void setUp() {
+        StripeConnection stripeConnection = mock(StripeConnection.class);
+        StripeClient stripeClient = mock(StripeClient.class);
+        productService = mock(ProductService.class);
+        when(stripeConnection.getStripeClient()).thenReturn(stripeClient);
+        when(stripeClient.products()).thenReturn(productService);
+
+        stripeGateway = new StripeGateway(stripeConnection, 1000, 1000, 3, 0, 0, 5, 30000);
+    }
+
+    private Product product(String id) {
+        Product product = new Product();
+        product.setId(id);
+        return product;
+    }
+
+    @Test
+    void read_retriesOnRateLimitAndServerError() throws StripeException {
+        when(productService.retrieve("prod_1"))
+                .thenThrow(new RateLimitException("slow down", "req_1", "rate_limit", null, 429, null))
+                .thenThrow(new ApiException("internal", "req_2", null, 500, null))
+                .thenReturn(product("prod_1"));
+
+        Product result = stripeGateway.read(client -> client.products().retrieve("prod_1"));
+
+        assertEquals("prod_1", result.getId());
+        verify(productService, times(3)).retrieve("prod_1");
+    }
+
+    @Test
+    void read_givesUpAfterMaxAttempts() throws StripeException {
+        when(productService.retrieve("prod_1")).thenThrow(new ApiConnectionException("connection reset"));
+
+        assertThrows(ApiConnectionException.class, () -> stripeGateway.read(client -> client.products().retrieve("prod_1")));
+        verify(productService, times(3)).retrieve("prod_1");
+    }
+
+    @Test
+    void read_doesNotRetryClientErrors() throws StripeException {
+        when(productService.retrieve("prod_1"))
+                .thenThrow(new InvalidRequestException("no such product", "id", "req_1", "resource_missing", 404, null));
+
+        assertThrows(InvalidRequestException.class, () -> stripeGateway.read(client -> client.products().retrieve("prod_1")));
+        verify(productService, times(1)).retrieve("prod_1");
+    }
+
+    @Test
+    void write_doesNotRetryServerErrors() throws StripeException {
+        when(productService.update(eq("prod_1"), any(ProductUpdateParams.class)))
+                .thenThrow(new ApiException("internal", "req_1", null, 500, null));
+
+        ProductUpdateParams params = ProductUpdateParams.builder().setActive(false).build();
+        assertThrows(ApiException.class, () -> stripeGateway.write(client -> client.products().update("prod_1", params)));
+        verify(productService, times(1)).update(eq("prod_1"), any(ProductUpdateParams.class));
+    }
+
+    @Test
+    void retrieveProduct_concurrentCallsShareOneRequest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(productService.retrieve("prod_1")).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return product("prod_1");
+        });
+
+        CompletableFuture<Product> first = CompletableFuture.supplyAsync(() -> retrieve("prod_1"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Product> second = CompletableFuture.supplyAsync(() -> retrieve("prod_1"));
+
+        // give the second caller time to attach to the running request
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals("prod_1", first.get(5, TimeUnit.SECONDS).getId());
+        assertEquals("prod_1", second.get(5, TimeUnit.SECONDS).getId());
+        verify(productService, times(1)).retrieve("prod_1");
+    }
+
+    @Test
+    void retrieveProduct_sequentialCallsAreNotCached() throws StripeException {
+        when(productService.retrieve("prod_1")).thenReturn(product("prod_1"));
+
+        stripeGateway.retrieveProduct("prod_1");
+        stripeGateway.retrieveProduct("prod_1");
+
+        verify(productService, times(2)).retrieve("prod_1");
+    }
+
+    @Test
+    void circuit_opensAfterConsecutiveFailuresAndFailsFast() throws StripeException {
+        StripeConnection stripeConnection = mock(StripeConnection.class);
+        StripeClient stripeClient = mock(StripeClient.class);
+        when(stripeConnection.getStripeClient()).thenReturn(stripeClient);
+        when(stripeClient.products()).thenReturn(productService);
+        StripeGateway gateway = new StripeGateway(stripeConnection, 1000, 1000, 1, 0, 0, 2, 60000);
+        when(productService.retrieve("prod_1")).thenThrow(new ApiException("internal", "req_1", null, 503, null));
+
+        assertThrows(ApiException.class, () -> gateway.retrieveProduct("prod_1"));
+        assertThrows(ApiException.class, () -> gateway.retrieveProduct("prod_1"));
+        assertThrows(StripeUnavailableException.class, () -> gateway.retrieveProduct("prod_1"));
+
+        assertFalse(gateway.isAvailable());
+        assertEquals(StripeGateway.CircuitState.OPEN, gateway.getCircuitState());
+        verify(productService, times(2)).retrieve("prod_1");
+    }
+
+    @Test
+    void circuit_clientErrorsDoNotOpen() throws StripeException {
+        StripeConnection stripeConnection = mock(StripeConnection.class);
+        StripeClient stripeClient = mock(StripeClient.class);
+        when(stripeConnection.getStripeClient()).thenReturn(stripeClient);
+        when(stripeClient.products()).thenReturn(productService);
+        StripeGateway gateway = new StripeGateway(stripeConnection, 1000, 1000, 1, 0, 0, 1, 60000);
+        when(productService.retrieve("prod_1"))
+                .thenThrow(new InvalidRequestException("no such product", "id", "req_1", "resource_missing", 404, null));
+
+        assertThrows(InvalidRequestException.class, () -> gateway.retrieveProduct("prod_1"));
+
+        assertTrue(gateway.isAvailable());
+        assertEquals(StripeGateway.CircuitState.CLOSED, gateway.getCircuitState());
+    }
+
+    @Test
+    void circuit_successfulProbeClosesCircuit() throws StripeException {
+        StripeConnection stripeConnection = mock(StripeConnection.class);
+        StripeClient stripeClient = mock(StripeClient.class);
+        when(stripeConnection.getStripeClient()).thenReturn(stripeClient);
+        when(stripeClient.products()).thenReturn(productService);
+        // open time of 0 ms: the next call after opening is the probe
+        StripeGateway gateway = new StripeGateway(stripeConnection, 1000, 1000, 1, 0, 0, 1, 0);
+        when(productService.retrieve("prod_1"))
+                .thenThrow(new ApiConnectionException("connection reset"))
+                .thenReturn(product("prod_1"));
+
+        assertThrows(ApiConnectionException.class, () -> gateway.retrieveProduct("prod_1"));
+        assertEquals(StripeGateway.CircuitState.OPEN, gateway.getCircuitState());
+
+        assertEquals("prod_1", gateway.retrieveProduct("prod_1").getId());
+        assertEquals(StripeGateway.CircuitState.CLOSED, gateway.getCircuitState());
+    }
+
+    @Test
+    void circuit_probeFailingWithRuntimeException_freesProbeSlot() throws StripeException {
+        StripeGateway gateway = gateway(1, 0);
+        when(productService.retrieve("prod_1"))
+                .thenThrow(new ApiConnectionException("connection reset"))
+                .thenThrow(new IllegalStateException("broken json"))
+                .thenReturn(product("prod_1"));
+
+        assertThrows(ApiConnectionException.class, () -> gateway.read(client -> client.products().retrieve("prod_1")));
+        assertThrows(IllegalStateException.class, () -> gateway.read(client -> client.products().retrieve("prod_1")));
+
+        // without the finally the next call would be rejected with "probe call is running" forever
+        assertEquals("prod_1", gateway.read(client -> client.products().retrieve("prod_1")).getId());
+        assertEquals(StripeGateway.CircuitState.CLOSED, gateway.getCircuitState());
+    }
+
+    @Test
+    void circuit_lateCallDoesNotEndProbe() throws Exception {
+        StripeGateway gateway = gateway(1, 0);
+        CountDownLatch lateRelease = new CountDownLatch(1);
+        CountDownLatch lateStarted = new CountDownLatch(1);
+        CountDownLatch probeRelease = new CountDownLatch(1);
+        CountDownLatch probeStarted = new CountDownLatch(1);
+        when(productService.retrieve("late")).thenAnswer(invocation -> {
+            lateStarted.countDown();
+            lateRelease.await(5, TimeUnit.SECONDS);
+            return product("late");
+        });
+        when(productService.retrieve("fail")).thenThrow(new ApiConnectionException("connection reset"));
+        when(productService.retrieve("probe")).thenAnswer(invocation -> {
+            probeStarted.countDown();
+            probeRelease.await(5, TimeUnit.SECONDS);
+            return product("probe");
+        });
+
+        // started while the circuit is closed
+        CompletableFuture<Product> late = CompletableFuture.supplyAsync(() -> readUnchecked(gateway, "late"));
+        assertTrue(lateStarted.await(5, TimeUnit.SECONDS));
+        assertThrows(ApiConnectionException.class, () -> gateway.read(client -> client.products().retrieve("fail")));
+        CompletableFuture<Product> probe = CompletableFuture.supplyAsync(() -> readUnchecked(gateway, "probe"));
+        assertTrue(probeStarted.await(5, TimeUnit.SECONDS));
+
+        lateRelease.countDown();
+        late.get(5, TimeUnit.SECONDS);
+        assertEquals(StripeGateway.CircuitState.HALF_OPEN, gateway.getCircuitState());
+        assertThrows(StripeUnavailableException.class, () -> gateway.read(client -> client.products().retrieve("other")));
+
+        probeRelease.countDown();
+        probe.get(5, TimeUnit.SECONDS);
+        assertEquals(StripeGateway.CircuitState.CLOSED, gateway.getCircuitState());
+    }
+
+    private StripeGateway gateway(int failureThreshold, long openMs) {
+        StripeConnection stripeConnection = mock(StripeConnection.class);
+        StripeClient stripeClient = mock(StripeClient.class);
+        when(stripeConnection.getStripeClient()).thenReturn(stripeClient);
+        when(stripeClient.products()).thenReturn(productService);
+        return new StripeGateway(stripeConnection, 1000, 1000, 1, 0, 0, failureThreshold, openMs);
+    }
+
+    private static Product readUnchecked(StripeGateway gateway, String productId) {
+        try {
+            return gateway.read(client -> client.products().retrieve(productId));
+        } catch (StripeException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void backoffDelay_staysBelowMaxDelay() {
+        StripeGateway gateway = new StripeGateway(mock(StripeConnection.class), 1000, 1000, 5, 100, 1000, 5, 30000);
+
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            long delay = gateway.backoffDelay(attempt);
+            assertTrue(delay >= 0 && delay <= Math.min(1000, 100L << (attempt - 1)));
+        }
+    }
+
+    private Product retrieve(String productId) {
+        try {
+            return stripeGateway.retrieveProduct(productId);
+        } catch (StripeException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
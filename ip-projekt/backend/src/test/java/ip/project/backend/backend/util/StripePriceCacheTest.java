@@ -0,0 +1,66 @@
+package ip.project.backend.backend.util;
+
+import com.stripe.StripeClient;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Price;
+import com.stripe.service.PriceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StripePriceCacheTest {
+
+    private PriceService priceService;
+    private StripePriceCache priceCache;
+
+    @BeforeEach
+    void setUp() {
+        StripeConnection stripeConnection = mock(StripeConnection.class);
+        StripeClient stripeClient = mock(StripeClient.class);
+        priceService = mock(PriceService.class);
+        when(stripeConnection.getStripeClient()).thenReturn(stripeClient);
+        when(stripeClient.prices()).thenReturn(priceService);
+
+        priceCache = new StripePriceCache(new StripeGateway(stripeConnection, 1000, 1000, 1, 0, 0, 5, 30000), 2);
+    }
+
+    private Price price(String id) {
+        Price price = new Price();
+        price.setId(id);
+        return price;
+    }
+
+    @Test
+    void get_loadsOnceAndThenServesFromCache() throws StripeException {
+        when(priceService.retrieve("price_1")).thenReturn(price("price_1"));
+
+        priceCache.get("price_1");
+        priceCache.get("price_1");
+
+        verify(priceService, times(1)).retrieve("price_1");
+    }
+
+    @Test
+    void get_doesNotCacheMissingPrice() throws StripeException {
+        when(priceService.retrieve("price_x")).thenReturn(null);
+
+        assertNull(priceCache.get("price_x"));
+
+        assertEquals(0, priceCache.size());
+    }
+
+    @Test
+    void put_evictsLeastRecentlyUsedWhenFull() {
+        priceCache.put(price("price_1"));
+        priceCache.put(price("price_2"));
+        priceCache.getIfPresent("price_1"); // price_2 is now the eldest
+        priceCache.put(price("price_3"));
+
+        assertEquals(2, priceCache.size());
+        assertTrue(priceCache.getIfPresent("price_1").isPresent());
+        assertFalse(priceCache.getIfPresent("price_2").isPresent());
+        assertTrue(priceCache.getIfPresent("price_3").isPresent());
+    }
+}
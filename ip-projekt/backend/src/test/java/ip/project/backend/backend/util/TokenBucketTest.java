@@ -0,0 +1,37 @@
+package ip.project.backend.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void tryAcquire_allowsBurstThenRejects() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void acquire_waitsForRefill() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(20, 1);
+        bucket.acquire();
+
+        long start = System.nanoTime();
+        bucket.acquire();
+        long waitedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // one token every 50 ms
+        assertTrue(waitedMs >= 30, "waited only " + waitedMs + " ms");
+    }
+
+    @Test
+    void constructor_rejectsInvalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+}